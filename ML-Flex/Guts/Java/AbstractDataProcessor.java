@@ -27,7 +27,7 @@ import java.util.concurrent.Callable;
 
 public abstract class AbstractDataProcessor
 {
-    private RawDataInstanceCollection _rawDataInstances = new RawDataInstanceCollection();
+    private RawDataInstanceCollection _rawDataInstances = new RawDataInstanceCollection(this);
 
     public Boolean ProcessRawData() throws Exception
     {
@@ -42,7 +42,7 @@ public abstract class AbstractDataProcessor
             RawDataInstanceCollection rawInstances = GetRawInstances();
 
             Utilities.Log.Debug("Transforming/summarizing raw instances for " + GetDescription());
-            DataInstanceCollection instances = rawInstances.GetTransformedSummarizedCollection(this);
+            DataInstanceCollection instances = rawInstances.GetTransformedSummarizedCollection();
             rawInstances = null; // Saves memory?
             ClearRawIinstances(); // Saves memory?
 
@@ -51,8 +51,8 @@ public abstract class AbstractDataProcessor
             transformedInstances.FormatDataPointNames();
 
             Utilities.Log.Debug("Saving transformed instances for " + GetDescription());
-            transformedInstances.SerializeToFile(GetDataFilePath());
-            DataInstanceCollection.DeserializeFromFile(GetDataFilePath()); // This verifies that you can read the file after writing it
+            long checksum = BinaryDataFile.Write(transformedInstances, GetDataFilePath());
+            BinaryDataFile.Verify(GetDataFilePath(), checksum); // This verifies that the file was saved correctly
 
             success = Boolean.TRUE;
         }
@@ -103,22 +103,22 @@ public abstract class AbstractDataProcessor
         return this.getClass().getSimpleName().replace("DataProcessor", "");
     }
 
-    /** This method supports custom specification of how much sparsity is allowed per data instance. If a given data instance is missing more data than the specified proportion (0.00 - 1.00), it will be filtered out and not used in machine-learning analysis steps.
+    /** This method supports custom specification of how much sparsity is allowed per data instance. If a given data instance is missing more data than the specified proportion (0.00 - 1.00), it will be filtered out and not used in machine-learning analysis steps. By default, the proportion is 1.00, so no data instances are filtered out.
      *
      * @return Proportion of missing values allowed for a given data instance
      */
     protected double GetProportionMissingPerInstanceOK()
     {
-        return 0.5;
+        return 1.00;
     }
 
-    /** This method supports custom specification of how much sparsity is allowed per data point. If a given data point is missing more data than the specified proportion (0.00 - 1.00) across all instances, it will be filtered out and not used in machine-learning analysis steps.
+    /** This method supports custom specification of how much sparsity is allowed per data point. If a given data point is missing more data than the specified proportion (0.00 - 1.00) across all instances, it will be filtered out and not used in machine-learning analysis steps. By default, the proportion is 1.00, so no data points are filtered out.
      *
      * @return Proportion of missing values allowed for a given data point
      */
     protected double GetProportionMissingPerDataPointOK()
     {
-        return 0.5;
+        return 1.00;
     }
 
     /** If the "PriorKnowledge" feature-selection approach is used, a hand-selected list of features for each data processor must be specified. In this case, this method should be overridden, and the values should be returned.
@@ -202,6 +202,17 @@ public abstract class AbstractDataProcessor
         _rawDataInstances.Add(dataPointName, instanceID, value);
     }
 
+    /** This method stores raw data values that have already been parsed into a matrix (for example, when a file has been parsed in parallel). It is equivalent to calling SaveRawDataPoint for each value in the matrix.
+     *
+     * @param matrix Matrix that contains the values (the columns are named after the data points)
+     * @param instanceIDs The instance ID associated with each row of the matrix
+     * @throws Exception
+     */
+    public void SaveRawDataPoints(DataMatrix matrix, ArrayList<String> instanceIDs) throws Exception
+    {
+        _rawDataInstances.Add(matrix, instanceIDs);
+    }
+
     /** This method retrieves raw data instances after the initial processing has occured.
      *
      * @return Collection of raw data instances
@@ -234,7 +245,7 @@ public abstract class AbstractDataProcessor
      */
     public void ClearRawIinstances() throws Exception
     {
-        _rawDataInstances = new RawDataInstanceCollection();
+        _rawDataInstances = new RawDataInstanceCollection(this);
     }
 
 //    private DataValues GetRawDataPointValues(String dataPointName) throws Exception
@@ -300,12 +311,20 @@ public abstract class AbstractDataProcessor
 
         Utilities.Log.Info("Transforming data points for " + GetDescription());
         ArrayList<String> dataPointNames = transformedInstances.GetDataPointNames();
-        for (String dataPointName : dataPointNames)
-        {
-            DataValues transformed = TransformDataPoint(transformedInstances.GetDataPointValues(dataPointName));
-            transformedInstances.UpdateDataPoints(dataPointName, transformed);
-        }
 
+        // These methods do nothing by default, so the values for each data point are retrieved only when they have been overridden
+        if (OverridesMethod("TransformDataPointColumn", String.class, double[].class))
+            TransformDataPointColumns(transformedInstances, dataPointNames);
+
+        // The values for each data point must be converted to text for this method
+        if (OverridesMethod("TransformDataPoint", DataValues.class))
+            for (String dataPointName : dataPointNames)
+            {
+                DataValues transformed = TransformDataPoint(transformedInstances.GetDataPointValues(dataPointName));
+                transformedInstances.UpdateDataPoints(dataPointName, transformed);
+            }
+
+        // Renaming a data point changes only the name of its column, so the instances themselves are not modified
         Utilities.Log.Info("Updating data point names for " + GetDescription());
         for (String dataPointName : dataPointNames)
             transformedInstances.UpdateDataPointName(dataPointName, TransformDataPointName(dataPointName));
@@ -349,6 +368,61 @@ public abstract class AbstractDataProcessor
         return data;
     }
 
+    /** Numeric data points can be transformed before data are stored in the ML-Flex final format. This method supports that functionality. All values for a data point are passed at once (in the order of the data instances), so no values need to be converted to text. This method is executed in parallel for different data points, so it must be thread safe. By default, no transformation is performed.
+     *
+     * @param dataPointName Data point name
+     * @param values Values for each data instance (NaN indicates a missing value); these may be modified and returned
+     * @return Transformed values for each data instance, or null if no transformation is performed
+     * @throws Exception
+     */
+    protected double[] TransformDataPointColumn(String dataPointName, double[] values) throws Exception
+    {
+        return null;
+    }
+
+    private void TransformDataPointColumns(final DataInstanceCollection instances, ArrayList<String> dataPointNames) throws Exception
+    {
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (final String dataPointName : dataPointNames)
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    double[] values = instances.GetNumericDataPointValues(dataPointName);
+
+                    if (values != null)
+                    {
+                        double[] transformed = TransformDataPointColumn(dataPointName, values);
+
+                        if (transformed != null)
+                            instances.UpdateNumericDataPointValues(dataPointName, transformed);
+                    }
+
+                    return null;
+                }
+            });
+
+        taskHandler.Execute();
+    }
+
+    private boolean OverridesMethod(String methodName, Class<?>... parameterTypes)
+    {
+        for (Class<?> c = getClass(); c != AbstractDataProcessor.class; c = c.getSuperclass())
+        {
+            try
+            {
+                c.getDeclaredMethod(methodName, parameterTypes);
+                return true;
+            }
+            catch (NoSuchMethodException ex)
+            {
+            }
+        }
+
+        return false;
+    }
+
     /** The name of a data point can be changed using this method. By default, no transformation is performed.
      *
      * @param dataPointName Raw data point name
@@ -380,6 +454,36 @@ public abstract class AbstractDataProcessor
         return Boolean.TRUE;
     }
 
+    /** This method removes any sparse data points and then any sparse instances, so they will not be used in machine-learning analyses. The result is the same as calling RemoveSparseDataPoints and then RemoveSparseInstances, but the values are counted in a single pass over the data.
+     *
+     * @param instances Data instances to be tested for sparsity
+     * @throws Exception
+     */
+    public void RemoveSparseData(DataInstanceCollection instances) throws Exception
+    {
+        if (GetProportionMissingPerDataPointOK() == 1.0 && GetProportionMissingPerInstanceOK() == 1.0)
+            return;
+
+        ArrayList<String> dataPointNames = instances.GetDataPointNames();
+        int[] instanceCounts = new int[instances.Size()];
+        int[] dataPointCounts = instances.CountValues(dataPointNames, instanceCounts);
+
+        ArrayList<String> sparseDataPoints = GetSparseDataPoints(instances, dataPointNames, dataPointCounts);
+
+        // The values of the sparse data points should not be counted when the instances are tested
+        if (sparseDataPoints.size() > 0)
+        {
+            int[] sparseCounts = new int[instances.Size()];
+            instances.CountValues(sparseDataPoints, sparseCounts);
+
+            for (int i = 0; i < instanceCounts.length; i++)
+                instanceCounts[i] -= sparseCounts[i];
+        }
+
+        instances.RemoveDataPointNames(sparseDataPoints);
+        instances.RemoveInstances(GetSparseInstances(instances, dataPointNames.size() - sparseDataPoints.size(), instanceCounts));
+    }
+
     /** This method removes any sparse instances, so they will not be used in machine-learning analyses.
      *
      * @param instances Data instances to be tested for sparsity
@@ -389,26 +493,30 @@ public abstract class AbstractDataProcessor
     {
         if (GetProportionMissingPerInstanceOK() == 1.0)
             return;
-        
-        ArrayList<String> toRemove = new ArrayList<String>();
 
-        for (DataValues instance : instances)
-            if (InstanceIsSparse(instance))
-                toRemove.add(instance.GetID());
+        ArrayList<String> dataPointNames = instances.GetDataPointNames();
+        int[] instanceCounts = new int[instances.Size()];
+        instances.CountValues(dataPointNames, instanceCounts);
 
-        instances.RemoveInstances(toRemove);
+        instances.RemoveInstances(GetSparseInstances(instances, dataPointNames.size(), instanceCounts));
     }
 
-    private boolean InstanceIsSparse(DataValues instance) throws Exception
+    private ArrayList<String> GetSparseInstances(DataInstanceCollection instances, int numDataPoints, int[] instanceCounts) throws Exception
     {
-        double numMissing = 0.0;
+        ArrayList<String> sparse = new ArrayList<String>();
+
+        if (GetProportionMissingPerInstanceOK() == 1.0 || numDataPoints == 0)
+            return sparse;
 
-        for (String dataPointName : instance.GetDataPointNames())
-            if (instance.GetDataPointValue(dataPointName).equals(Settings.MISSING_VALUE_STRING))
-                numMissing += 1.0;
+        for (int i = 0; i < instanceCounts.length; i++)
+        {
+            double proportionMissing = (double)(numDataPoints - instanceCounts[i]) / (double)numDataPoints;
+
+            if (proportionMissing > GetProportionMissingPerInstanceOK())
+                sparse.add(instances.Get(i).GetID());
+        }
 
-        double proportionMissing = (numMissing / (double) instance.GetDataPointNames().size());
-        return proportionMissing > GetProportionMissingPerInstanceOK();
+        return sparse;
     }
 
     /** This method removes any sparse data points, so they will not be used in machine-learning analyses.
@@ -421,48 +529,26 @@ public abstract class AbstractDataProcessor
         if (GetProportionMissingPerDataPointOK() == 1.0)
             return;
 
-        final DataInstanceCollection instances2 = instances.Clone();
-        final double numInstances = (double)instances.Size();
-
-        Collection<Callable<Object>> callables = new LinkedList<Callable<Object>>();
-
-        for (final String dataPointName : instances.GetDataPointNames())
-        {
-            callables.add(new Callable<Object>()
-            {
-                public Object call() throws Exception
-                {
-                    if (DataPointIsSparse(instances2, dataPointName, numInstances))
-                        return dataPointName;
-
-                    return null;
-                }
-            });
-        }
+        ArrayList<String> dataPointNames = instances.GetDataPointNames();
+        int[] dataPointCounts = instances.CountValues(dataPointNames, null);
 
-        //instances.RemoveDataPoints(Utilities.MultiThread(callables));
+        instances.RemoveDataPointNames(GetSparseDataPoints(instances, dataPointNames, dataPointCounts));
+    }
 
+    private ArrayList<String> GetSparseDataPoints(DataInstanceCollection instances, ArrayList<String> dataPointNames, int[] dataPointCounts) throws Exception
+    {
         ArrayList<String> sparse = new ArrayList<String>();
-        for (Callable callable : callables)
-        {
-            String result = (String)callable.call();
-            if (result != null)
-                sparse.add(result);
-        }
 
-        instances.RemoveDataPointNames(sparse);
-    }
+        if (GetProportionMissingPerDataPointOK() == 1.0 || instances.Size() == 0)
+            return sparse;
 
-    private boolean DataPointIsSparse(DataInstanceCollection instances, String dataPointName, double numInstances) throws Exception
-    {
-        ArrayList<String> values = instances.GetDataPointValues(dataPointName).GetAllValues();
-        HashMap<String, Integer> frequencyMap = Maps.GetFrequencyMap(values);
+        double numInstances = (double)instances.Size();
 
-        if (!frequencyMap.containsKey(Settings.MISSING_VALUE_STRING))
-            return false;
+        for (int i = 0; i < dataPointCounts.length; i++)
+            if (((numInstances - dataPointCounts[i]) / numInstances) > GetProportionMissingPerDataPointOK())
+                sparse.add(dataPointNames.get(i));
 
-        double numMissing = (double)frequencyMap.get(Settings.MISSING_VALUE_STRING);
-        return ((numMissing / numInstances) > GetProportionMissingPerDataPointOK());
+        return sparse;
     }
 
     /** This method can be used to convert data points that have more than two possible values into a series of binary data points.
@@ -18,6 +18,7 @@
 package mlflex;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
 /** This class provides a template for classes that perform general machine-learning tasks. It can be overridden with custom classes that implement these tasks for new third-party packages or for custom implementation.
  * @author Stephen Piccolo
@@ -44,4 +45,33 @@ public abstract class AbstractMachineLearner
      * @throws Exception
      */
     protected abstract ModelPredictions TrainTest(ArrayList<String> classificationParameters, DataInstanceCollection trainingData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception;
+
+    /** This method performs classification for several jobs at once (for example, for each number of features and each cross-validation fold). The data values are provided once for the whole batch, so custom machine learner classes can override this method to convert the data only once or to process all jobs with a single external process. By default, each job is performed with a separate call to TrainTest (the jobs are executed in parallel).
+     *
+     * @param classificationParameters General parameter values that are used by the machine learner to perform classification. These parameters are usually stored in the ClassificationParameters.txt file in the Config directory.
+     * @param data Data instances that contain all training and test instances and all features used by the jobs
+     * @param jobs Jobs that indicate which features, training instances and test instances should be used
+     * @param dependentVariableInstances Dependent variable data instances (one instance should exist for each training and test data instance)
+     * @return Predictions for each job (in the same order as the jobs)
+     * @throws Exception
+     */
+    protected ArrayList<ModelPredictions> TrainTestBatch(final ArrayList<String> classificationParameters, final DataInstanceCollection data, ArrayList<TrainTestJob> jobs, final DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (final TrainTestJob job : jobs)
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    return TrainTest(classificationParameters, job.GetTrainData(data), job.GetTestData(data), dependentVariableInstances.Clone());
+                }
+            });
+
+        ArrayList<ModelPredictions> results = new ArrayList<ModelPredictions>();
+        for (Object result : taskHandler.Execute())
+            results.add((ModelPredictions)result);
+
+        return results;
+    }
 }
@@ -31,4 +31,38 @@ public abstract class AbstractSummarizer
      * @throws Exception
      */
     public abstract String Summarize(ArrayList<String> values) throws Exception;
+
+    /** Indicates whether this summarizer can summarize values incrementally (see the Accumulate and Finish methods). When it can, raw data values are summarized as they are parsed, so it is not necessary to keep all of the values for a data point in memory.
+     *
+     * @return Whether values can be summarized incrementally
+     */
+    public boolean IsIncremental()
+    {
+        return false;
+    }
+
+    /** Combines a data value with the running summary of the values that were encountered previously for the same data point. This is only used when IsIncremental returns true.
+     *
+     * @param summary Running summary (this is the first value when only one value has been encountered); NaN if the value is not numeric
+     * @param value Data value to be combined with the running summary; NaN if the value is not numeric
+     * @return Updated running summary (if this differs from the previous summary, the data value is considered to be the selected value)
+     * @throws Exception
+     */
+    public double Accumulate(double summary, double value) throws Exception
+    {
+        throw new Exception(getClass().getName() + " does not support incremental summarization.");
+    }
+
+    /** Converts a running summary to a single summarized value. By default, the selected value is used.
+     *
+     * @param summary Running summary
+     * @param numValues Number of values that were summarized
+     * @param selectedValue The most recent value (as it was specified) that changed the running summary, or the first value if none changed it
+     * @return Summarized single value
+     * @throws Exception
+     */
+    public String Finish(double summary, int numValues, String selectedValue) throws Exception
+    {
+        return selectedValue;
+    }
 }
@@ -57,6 +57,8 @@ public class AnalysisFileCreator
     private DataInstanceCollection _dataInstances;
     private DataInstanceCollection _otherInstances;
     private DataInstanceCollection _dependentVariableInstances;
+    private HashMap<String, ArrayList<String>> _dataUniqueValues = null;
+    private HashMap<String, ArrayList<String>> _otherUniqueValues = null;
 
     /** Constructor
      *
@@ -80,43 +82,63 @@ public class AnalysisFileCreator
         return _dependentVariableInstances.Get(instanceID).GetDataPointValue(0);
     }
 
+    /** The unique values of each data point are identified once (in a single pass over the data) and then reused for each file format that is created.
+     * @param dataPointName Data point name
+     * @param includeOtherInstances Whether to include values from the other data instances (if any)
+     * @return Unique values (this list may be modified by the caller)
+     * @throws Exception
+     */
+    private ArrayList<String> GetUniqueValues(String dataPointName, boolean includeOtherInstances) throws Exception
+    {
+        synchronized (this)
+        {
+            if (_dataUniqueValues == null)
+                _dataUniqueValues = _dataInstances.GetDataPointUniqueValues();
+            if (includeOtherInstances && _otherInstances != null && _otherUniqueValues == null)
+                _otherUniqueValues = _otherInstances.GetDataPointUniqueValues();
+        }
+
+        HashSet<String> uniqueValues = new HashSet<String>();
+
+        if (_dataUniqueValues.containsKey(dataPointName))
+            uniqueValues.addAll(_dataUniqueValues.get(dataPointName));
+        if (includeOtherInstances && _otherUniqueValues != null && _otherUniqueValues.containsKey(dataPointName))
+            uniqueValues.addAll(_otherUniqueValues.get(dataPointName));
+
+        return new ArrayList<String>(uniqueValues);
+    }
+
     /** Generates files in the ARFF format.
      * @return This instance
      * @throws Exception
      */
     public AnalysisFileCreator CreateArffFile() throws Exception
     {
-        String outFilePath = GetFilePath(Extension.ARFF);
-
         StringBuilder output = new StringBuilder();
         output.append("@relation thedata\n\n");
 
-        ArrayList<String> dataPointNames = Lists.Sort(_dataInstances.GetDataPointNames());
+        final ArrayList<String> dataPointNames = Lists.Sort(_dataInstances.GetDataPointNames());
 
         for (String dataPointName : dataPointNames)
-        {
-            HashSet<String> uniqueValues = new HashSet<String>(_dataInstances.GetUniqueValues(dataPointName));
-
-            if (_otherInstances != null)
-                uniqueValues.addAll(_otherInstances.GetUniqueValues(dataPointName));
-
-            AppendArffAttribute(new ArrayList<String>(uniqueValues), dataPointName, output);
-        }
+            AppendArffAttribute(GetUniqueValues(dataPointName, true), dataPointName, output);
 
         if (_dependentVariableInstances != null)
             AppendArffAttribute(Lists.Sort(Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues()), Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName(), output);
 
-        output.append("\n@data");
+        output.append("\n@data\n");
 
-        for (DataValues instance : _dataInstances)
+        WriteFile(GetFilePath(Extension.ARFF), output.toString(), new StreamingFileWriter.LineFormatter<DataValues>()
         {
-            output.append("\n" + Lists.Join(FormatOutputValues(instance.GetDataPointValues(dataPointNames)), ","));
+            public String FormatLine(DataValues instance) throws Exception
+            {
+                String line = Lists.Join(FormatOutputValues(instance.GetDataPointValues(dataPointNames)), ",");
 
-            if (_dependentVariableInstances != null)
-                output.append("," + FormatOutputValue(GetDependentVariableValue(instance.GetID())));
-        }
+                if (_dependentVariableInstances != null)
+                    line += "," + FormatOutputValue(GetDependentVariableValue(instance.GetID()));
 
-        Files.WriteTextToFile(outFilePath, output.toString());
+                return line;
+            }
+        });
 
         return this;
     }
@@ -146,35 +168,64 @@ public class AnalysisFileCreator
      * @throws Exception
      */
     public AnalysisFileCreator CreateTabDelimitedFile(boolean includeInstanceIDs) throws Exception
+    {
+        final ArrayList<String> dataPoints = _dataInstances.GetDataPointNames();
+        final boolean includeIDs = includeInstanceIDs;
+
+        WriteFile(GetTabDelimitedFilePath(), GetTabDelimitedHeader(dataPoints, includeInstanceIDs) + "\n", new StreamingFileWriter.LineFormatter<DataValues>()
+        {
+            public String FormatLine(DataValues instance) throws Exception
+            {
+                return FormatTabDelimitedLine(instance, dataPoints, includeIDs);
+            }
+        });
+
+        return this;
+    }
+
+    /** This method generates the lines of a basic tab-delimited file (with variables as columns and instances as rows), without saving them to a file. The first line is the header.
+     * @param includeInstanceIDs Whether to include the ID of each instance
+     * @return Lines of tab-delimited text
+     * @throws Exception
+     */
+    public ArrayList<String> GetTabDelimitedLines(boolean includeInstanceIDs) throws Exception
     {
         ArrayList<String> dataPoints = _dataInstances.GetDataPointNames();
 
+        ArrayList<String> lines = new ArrayList<String>();
+        lines.add(GetTabDelimitedHeader(dataPoints, includeInstanceIDs));
+
+        for (DataValues instance : _dataInstances)
+            lines.add(FormatTabDelimitedLine(instance, dataPoints, includeInstanceIDs));
+
+        return lines;
+    }
+
+    private String GetTabDelimitedHeader(ArrayList<String> dataPoints, boolean includeInstanceIDs) throws Exception
+    {
         ArrayList<String> headerDataPoints = Utilities.UnformatNames(new ArrayList<String>(dataPoints));
 
         if (includeInstanceIDs)
             headerDataPoints.add(0, "ID");
 
-        String filePath = GetTabDelimitedFilePath();
-        Files.WriteLineToFile(filePath, Lists.Join(headerDataPoints, "\t") + (_dependentVariableInstances == null ? "" : "\t" + Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName()));
-
-        for (DataValues instance : _dataInstances)
-        {
-            ArrayList<String> values = instance.GetDataPointValues(dataPoints);
+        return Lists.Join(headerDataPoints, "\t") + (_dependentVariableInstances == null ? "" : "\t" + Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName());
+    }
 
-            if (includeInstanceIDs)
-                values.add(0, instance.GetID());
+    private String FormatTabDelimitedLine(DataValues instance, ArrayList<String> dataPoints, boolean includeInstanceIDs) throws Exception
+    {
+        ArrayList<String> values = instance.GetDataPointValues(dataPoints);
 
-            if (_dependentVariableInstances != null)
-                values.add(GetDependentVariableValue(instance.GetID()));
+        if (includeInstanceIDs)
+            values.add(0, instance.GetID());
 
-            values = Lists.ReplaceAllExactMatches(values, Settings.MISSING_VALUE_STRING, "NA");
+        if (_dependentVariableInstances != null)
+            values.add(GetDependentVariableValue(instance.GetID()));
 
-            FormatOutputValues(values);
+        values = Lists.ReplaceAllExactMatches(values, Settings.MISSING_VALUE_STRING, "NA");
 
-            Files.AppendTextToFile(filePath, Lists.Join(values, "\t") + "\n");
-        }
+        FormatOutputValues(values);
 
-        return this;
+        return Lists.Join(values, "\t");
     }
 
 //    public AnalysisFileCreator CreateGenePatternFiles() throws Exception
@@ -213,41 +264,64 @@ public class AnalysisFileCreator
      */
     public AnalysisFileCreator CreateOrangeFile() throws Exception
     {
-        DataInstanceCollection instances = _dataInstances.Clone();
+        final ArrayList<String> dataPointNames = _dataInstances.GetDataPointNames();
 
-        String outFilePath = GetFilePath(Extension.ORANGE);
-        ArrayList<String> dataPointNames = instances.GetDataPointNames();
+        WriteFile(GetFilePath(Extension.ORANGE), GetOrangeHeader(dataPointNames) + "\n", new StreamingFileWriter.LineFormatter<DataValues>()
+        {
+            public String FormatLine(DataValues instance) throws Exception
+            {
+                return FormatOrangeLine(instance, dataPointNames);
+            }
+        });
+
+        return this;
+    }
 
+    /** This method generates the lines of a text file in the format required by the Orange machine-learning framework, without saving them to a file. The first three lines are the header.
+     * @return Lines of text in the Orange format
+     * @throws Exception
+     */
+    public ArrayList<String> GetOrangeLines() throws Exception
+    {
+        ArrayList<String> dataPointNames = _dataInstances.GetDataPointNames();
+
+        ArrayList<String> lines = Lists.CreateStringList(GetOrangeHeader(dataPointNames).split("\n", -1));
+
+        for (DataValues instance : _dataInstances)
+            lines.add(FormatOrangeLine(instance, dataPointNames));
+
+        return lines;
+    }
+
+    private String GetOrangeHeader(ArrayList<String> dataPointNames) throws Exception
+    {
         String header = Lists.Join(dataPointNames, "\t");
         header += _dependentVariableInstances != null ? "\t" + Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName() : "";
-        header += "\n" + Lists.Join(GetOrangeAttributeHeader(instances, dataPointNames), "\t");
+        header += "\n" + Lists.Join(GetOrangeAttributeHeader(dataPointNames), "\t");
         header += _dependentVariableInstances != null ? "\td" : "";
         header += "\n" + Lists.Join(Lists.CreateStringList("", dataPointNames.size() + 1), "\t");
         header += _dependentVariableInstances != null ? "class" : "";
-        header += "\n";
-
-        Files.WriteTextToFile(outFilePath, header);
 
-        for (DataValues instance : instances)
-        {
-            String line = Lists.Join(FormatOutputValues(instance.GetDataPointValues(dataPointNames)), "\t");
+        return header;
+    }
 
-            if (_dependentVariableInstances != null)
-                line += "\t" + FormatOutputValue(GetDependentVariableValue(instance.GetID()));
+    private String FormatOrangeLine(DataValues instance, ArrayList<String> dataPointNames) throws Exception
+    {
+        String line = Lists.Join(FormatOutputValues(instance.GetDataPointValues(dataPointNames)), "\t");
 
-            Files.AppendTextToFile(outFilePath, line + "\n");
-        }
+        if (_dependentVariableInstances != null)
+            line += "\t" + FormatOutputValue(GetDependentVariableValue(instance.GetID()));
 
-        return this;
+        return line;
     }
 
-    private ArrayList<String> GetOrangeAttributeHeader(DataInstanceCollection instances, ArrayList<String> dataPointNames)
+    private ArrayList<String> GetOrangeAttributeHeader(ArrayList<String> dataPointNames) throws Exception
     {
         ArrayList<String> results = new ArrayList<String>();
 
         for (String dataPointName : dataPointNames)
         {
-            ArrayList<String> uniqueValues = instances.GetUniqueValues(dataPointName);
+            ArrayList<String> uniqueValues = GetUniqueValues(dataPointName, false);
             results.add((DataTypes.HasOnlyNumeric(uniqueValues) && !DataTypes.HasOnlyBinary(uniqueValues)) ? "c" : "d");
         }
 
@@ -259,6 +333,17 @@ public class AnalysisFileCreator
      * @throws Exception
      */
     public AnalysisFileCreator CreateC5NamesFile() throws Exception
+    {
+        WriteFile(GetC5NamesFilePath(), GetC5Names(), null);
+
+        return this;
+    }
+
+    /** This method generates the text of a .names file (in the format required by the C5.0 software), without saving it to a file.
+     * @return Text of the .names file
+     * @throws Exception
+     */
+    public String GetC5Names() throws Exception
     {
         StringBuilder output = new StringBuilder();
 
@@ -267,7 +352,7 @@ public class AnalysisFileCreator
         for (String dataPointName : _dataInstances.GetDataPointNames())
         {
             output.append(dataPointName + ":\t");
-            ArrayList<String> uniqueDataValues = _dataInstances.GetUniqueValues(dataPointName);
+            ArrayList<String> uniqueDataValues = GetUniqueValues(dataPointName, false);
 
             if (DataTypes.HasOnlyNumeric(uniqueDataValues) && !DataTypes.HasOnlyBinary(uniqueDataValues))
                 output.append("continuous");
@@ -280,9 +365,7 @@ public class AnalysisFileCreator
             output.append(".\n");
         }
 
-        Files.WriteTextToFile(GetC5NamesFilePath(), output.toString());
-
-        return this;
+        return output.toString();
     }
 
     /** This method creates text files in the format required by the C5.0 software. Specifically, it generates a .data file to be used for training a model.
@@ -303,18 +386,20 @@ public class AnalysisFileCreator
         return CreateC5DataFile(GetC5TestDataFilePath(), true);
     }
 
-    private AnalysisFileCreator CreateC5DataFile(String filePath, boolean areTestInstances) throws Exception
+    private AnalysisFileCreator CreateC5DataFile(String filePath, final boolean areTestInstances) throws Exception
     {
-        StringBuilder output = new StringBuilder();
+        final ArrayList<String> dataPointNames = _dataInstances.GetDataPointNames();
+        final String dependentVariableDataPointName = Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName();
 
-        for (DataValues instance : _dataInstances)
+        WriteFile(filePath, "", new StreamingFileWriter.LineFormatter<DataValues>()
         {
-            ArrayList<String> values = instance.GetDataPointValues(_dataInstances.GetDataPointNames());
-            values.add(areTestInstances ? "?" : _dependentVariableInstances.Get(instance.GetID()).GetDataPointValue(Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName()));
-            output.append(Lists.Join(values, ",") + "\n");
-        }
-
-        Files.WriteTextToFile(filePath, output.toString());
+            public String FormatLine(DataValues instance) throws Exception
+            {
+                ArrayList<String> values = instance.GetDataPointValues(dataPointNames);
+                values.add(areTestInstances ? "?" : _dependentVariableInstances.Get(instance.GetID()).GetDataPointValue(dependentVariableDataPointName));
+                return Lists.Join(values, ",");
+            }
+        });
 
         return this;
     }
@@ -325,20 +410,50 @@ public class AnalysisFileCreator
      */
     public AnalysisFileCreator CreateSurvivalFile() throws Exception
     {
-        ArrayList<String> predictors = _dataInstances.GetDataPointNames();
+        final ArrayList<String> predictors = _dataInstances.GetDataPointNames();
 
-        Files.WriteTextToFile(GetFilePath(Extension.SURVIVAL), "case id\t" + Lists.Join(predictors, "\t") + "\tstatus\ttime\n");
+        WriteFile(GetFilePath(Extension.SURVIVAL), "case id\t" + Lists.Join(predictors, "\t") + "\tstatus\ttime\n", new StreamingFileWriter.LineFormatter<DataValues>()
+        {
+            public String FormatLine(DataValues instance) throws Exception
+            {
+                ArrayList<String> predictorValues = instance.GetDataPointValues(predictors);
+                predictorValues = Lists.ReplaceAllExactMatches(predictorValues, Settings.MISSING_VALUE_STRING, "NA");
+                FormatOutputValues(predictorValues);
 
-        for (DataValues instance : _dataInstances)
+                return instance.GetID() + "\t" + Lists.Join(predictorValues, "\t") + "\t1\t" + GetDependentVariableValue(instance.GetID());
+            }
+        });
+
+        return this;
+    }
+
+    /** Writes an analysis file through a single stream. The header is written first, followed by one line for each data instance (the lines are formatted in parallel but written in order).
+     * @param filePath Absolute file path
+     * @param header Text that precedes the data instances
+     * @param formatter Object that formats the line for each data instance (if null, only the header is written)
+     * @throws Exception
+     */
+    private void WriteFile(String filePath, String header, StreamingFileWriter.LineFormatter<DataValues> formatter) throws Exception
+    {
+        StreamingFileWriter writer = new StreamingFileWriter(filePath);
+
+        try
         {
-            ArrayList<String> predictorValues = instance.GetDataPointValues(predictors);
-            predictorValues = Lists.ReplaceAllExactMatches(predictorValues, Settings.MISSING_VALUE_STRING, "NA");
-            FormatOutputValues(predictorValues);
+            writer.Write(header);
 
-            Files.AppendTextToFile(GetFilePath(Extension.SURVIVAL), instance.GetID() + "\t" + Lists.Join(predictorValues, "\t") + "\t1\t" + GetDependentVariableValue(instance.GetID()) + "\n");
+            if (formatter != null)
+            {
+                ArrayList<DataValues> instances = new ArrayList<DataValues>(_dataInstances.Size());
+                for (DataValues instance : _dataInstances)
+                    instances.add(instance);
+
+                writer.WriteLines(instances, formatter);
+            }
+        }
+        finally
+        {
+            writer.Close();
         }
-        
-        return this;
     }
 
     /** Deletes an analysis file that has already been created.
@@ -453,15 +568,17 @@ public class AnalysisFileCreator
      */
     public static void WriteAucInputFile(Predictions predictions, String filePath) throws Exception
     {
-        String output = "";
+        ArrayList<String> dependentVariableValues = Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues();
+        StreamingFileWriter writer = new StreamingFileWriter(filePath);
 
-        for (Prediction prediction : predictions)
+        try
         {
-            output += Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues().indexOf(prediction.DependentVariableValue) + "\t";
-            output += Lists.Join(Lists.CreateStringList(prediction.ClassProbabilities), "\t");
-            output += "\n";
+            for (Prediction prediction : predictions)
+                writer.WriteLine(dependentVariableValues.indexOf(prediction.DependentVariableValue) + "\t" + Lists.Join(Lists.CreateStringList(prediction.ClassProbabilities), "\t"));
+        }
+        finally
+        {
+            writer.Close();
         }
-
-        Files.WriteTextToFile(filePath, output);
     }
 }
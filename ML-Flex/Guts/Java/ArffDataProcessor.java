@@ -64,61 +64,11 @@ public class ArffDataProcessor extends AbstractDataProcessor
 
         for (String filePath : _filePaths)
         {
-            ArrayList<String> fileLines = Files.ReadLinesFromFile(filePath, "%");
-            ArrayList<String> metaRows = Lists.GetValuesStartingWith(fileLines, "@");
-            ArrayList<String> dataRows = Lists.RemoveAll(fileLines, metaRows);
-            metaRows = Lists.Replace(metaRows, "\t", " ");
+            ArrayList<String> instanceIDs = new ArrayList<String>();
+            DataMatrix matrix = new ArffFileReader(filePath).ReadData(false, overallInstanceCount, instanceIDs);
+            overallInstanceCount += instanceIDs.size();
 
-            if (dataRows.size() == 0)
-                throw new Exception("No data rows could be identified in " + filePath + ".");
-
-            ArrayList<String> attributeNames = ParseAttributeNames(metaRows, filePath);
-
-            int idIndex = Lists.ToLowerCase(attributeNames).indexOf("id");
-
-            for (int i=0; i<dataRows.size(); i++)
-            {
-                overallInstanceCount++;
-
-                ArrayList<String> dataRowItems = Lists.CreateStringList(dataRows.get(i).trim().split(","));
-                String instanceID = idIndex == -1 ? "Instance" + overallInstanceCount : dataRowItems.get(idIndex);
-
-                for (int j=0; j<dataRowItems.size() - 1; j++)
-                    if (j != idIndex)
-                        SaveRawDataPoint(attributeNames.get(j), instanceID, dataRowItems.get(j));
-            }
+            SaveRawDataPoints(matrix, instanceIDs);
         }
     }
-
-    /** Parses attribute names from the metadata rows in an ARFF file.
-     *
-     * @param metaRows Metadata rows (those that start with @)
-     * @param filePath Path where the ARFF file was stored
-     * @return Attribute names
-     * @throws Exception
-     */
-    public static ArrayList<String> ParseAttributeNames(ArrayList<String> metaRows, String filePath) throws Exception
-    {
-        ArrayList<String> attributeNames = new ArrayList<String>();
-
-        for (String metaRow : metaRows)
-        {
-            ArrayList<String> metaRowItems = Lists.CreateStringList(metaRow.split(" "));
-            metaRowItems = Lists.RemoveAll(metaRowItems, " ");
-
-            String descriptor = metaRowItems.get(0).toLowerCase();
-
-            if (!descriptor.equals("@attribute"))
-                continue;
-
-            String attributeName = metaRowItems.get(1).trim();
-            if (!attributeName.equals("class"))
-                attributeNames.add(attributeName);
-        }
-
-        if (attributeNames.size() == 0 || (attributeNames.size() == 1 && attributeNames.get(0).toLowerCase().equals("id")))
-            throw new Exception("No attributes could be identified in " + filePath + ".");
-
-        return attributeNames;
-    }
 }
\ No newline at end of file
@@ -52,28 +52,14 @@ public class ArffDependentVariableDataProcessor extends AbstractDependentVariabl
 
         for (String filePath : _filePaths)
         {
-            ArrayList<String> fileLines = Files.ReadLinesFromFile(filePath, "%");
+            ArffFileReader reader = new ArffFileReader(filePath);
 
-            ArrayList<String> metaRows = Lists.GetValuesStartingWith(fileLines, "@");
-            ArrayList<String> dataRows = Lists.RemoveAll(fileLines, metaRows);
-            metaRows = Lists.Replace(metaRows, "\t", " ");
+            ArrayList<String> instanceIDs = new ArrayList<String>();
+            DataMatrix matrix = reader.ReadData(true, overallInstanceCount, instanceIDs);
+            overallInstanceCount += instanceIDs.size();
 
-            if (dataRows.size() == 0)
-                throw new Exception("No data rows could be identified in " + filePath + ".");
-
-            ArrayList<String> attributeNames = ArffDataProcessor.ParseAttributeNames(metaRows, filePath);
-
-            int idIndex = Lists.ToLowerCase(attributeNames).indexOf("id");
-
-            for (int i=0; i<dataRows.size(); i++)
-            {
-                overallInstanceCount++;
-
-                String[] dataRowItems = dataRows.get(i).trim().split(",");
-                String instanceID = idIndex == -1 ? "Instance" + overallInstanceCount : dataRowItems[idIndex];
-
-                SaveRawDataPoint(GetDependentVariableDataPointName(), instanceID, dataRowItems[dataRowItems.length - 1]);
-            }
+            matrix.RenameColumn(reader.GetClassAttributeName(), GetDependentVariableDataPointName());
+            SaveRawDataPoints(matrix, instanceIDs);
         }
     }
 
@@ -0,0 +1,274 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/** This class parses text files in the ARFF format. The header is read once, when the reader is created. The data rows are then parsed in parallel (different parts of the file are parsed by different threads), so the file never needs to be stored in memory as text. Compressed (gzip) files are decompressed as they are read, but they are parsed by a single thread. Rows may be specified in the standard format (comma-separated values) or in the sparse format ({index value, ...}). The last attribute is assumed to be the class; if an attribute named "id" exists, its values are used as data instance IDs.
+ * @author Stephen Piccolo
+ */
+public class ArffFileReader
+{
+    private static final long MIN_BYTES_PER_RANGE = 1 << 20;
+
+    private String _filePath;
+    private ArrayList<String> _attributeNames = new ArrayList<String>();
+    private ArrayList<String> _sparseDefaultValues = new ArrayList<String>();
+    private long _dataStartPosition = -1;
+    private int _idIndex = -1;
+
+    /** Constructor. The header of the file is parsed at this point.
+     *
+     * @param filePath Absolute path to the ARFF file
+     * @throws Exception
+     */
+    public ArffFileReader(String filePath) throws Exception
+    {
+        _filePath = Files.CheckFileExists(filePath);
+
+        InputStream stream = Files.OpenInputStream(filePath);
+
+        try
+        {
+            long position = 0;
+            ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+
+            int b;
+            while (_dataStartPosition == -1 && (b = stream.read()) != -1)
+            {
+                position++;
+
+                if (b != '\n')
+                {
+                    lineBytes.write(b);
+                    continue;
+                }
+
+                ParseHeaderLine(lineBytes.toString("UTF-8").replace("\t", " ").trim(), position);
+                lineBytes.reset();
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
+
+        if (_dataStartPosition == -1)
+            throw new Exception("No data rows could be identified in " + filePath + ".");
+
+        ArrayList<String> nonClassAttributeNames = Lists.RemoveAll(_attributeNames, "class");
+        if (nonClassAttributeNames.size() == 0 || (nonClassAttributeNames.size() == 1 && nonClassAttributeNames.get(0).toLowerCase().equals("id")))
+            throw new Exception("No attributes could be identified in " + filePath + ".");
+    }
+
+    private void ParseHeaderLine(String line, long endPosition)
+    {
+        if (line.length() == 0 || line.startsWith("%"))
+            return;
+
+        ArrayList<String> lineItems = Lists.RemoveAll(Lists.CreateStringList(line.split(" ")), "");
+        String descriptor = lineItems.get(0).toLowerCase();
+
+        if (descriptor.equals("@data"))
+            _dataStartPosition = endPosition;
+
+        if (!descriptor.equals("@attribute") || lineItems.size() < 2)
+            return;
+
+        String attributeName = lineItems.get(1).trim();
+
+        if (_idIndex == -1 && attributeName.toLowerCase().equals("id"))
+            _idIndex = _attributeNames.size();
+
+        _attributeNames.add(attributeName);
+
+        // In the sparse format, values that are not specified are zero (or the first value of a nominal attribute)
+        String type = line.substring(line.indexOf(attributeName, descriptor.length()) + attributeName.length()).trim();
+        if (type.startsWith("{"))
+            _sparseDefaultValues.add(type.substring(1, type.contains(",") ? type.indexOf(",") : type.indexOf("}")).trim());
+        else
+            _sparseDefaultValues.add("0");
+    }
+
+    /** Gets the names of the attributes in the file, including the ID and class attributes (if any).
+     *
+     * @return Attribute names
+     */
+    public ArrayList<String> GetAttributeNames()
+    {
+        return _attributeNames;
+    }
+
+    /** Gets the name of the class attribute (the last attribute).
+     *
+     * @return Class attribute name
+     */
+    public String GetClassAttributeName()
+    {
+        return _attributeNames.get(_attributeNames.size() - 1);
+    }
+
+    /** Parses the data rows in the file. Different parts of the file are parsed in parallel, and the results are combined in the order in which they appear in the file.
+     *
+     * @param classOnly Whether to parse only the class values (otherwise, values for all attributes except the ID and class are parsed)
+     * @param firstInstanceNumber When the file has no ID attribute, instances are named sequentially, starting after this number
+     * @param instanceIDs List to which the ID of each data instance (row of the matrix) is added
+     * @return Matrix that contains the parsed values (columns are named after the attributes)
+     * @throws Exception
+     */
+    public DataMatrix ReadData(final boolean classOnly, int firstInstanceNumber, ArrayList<String> instanceIDs) throws Exception
+    {
+        long dataLength = new File(_filePath).length() - _dataStartPosition;
+        int numRanges = (int)Math.max(1, Math.min(Settings.NUM_THREADS * 4, dataLength / MIN_BYTES_PER_RANGE));
+        final long[] positions = BigFileReader.GetLineAlignedPositions(_filePath, _dataStartPosition, numRanges);
+
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (int i = 0; i < numRanges; i++)
+        {
+            final int range = i;
+
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    return ParseRange(positions[range], positions[range + 1], classOnly);
+                }
+            });
+        }
+
+        DataMatrix matrix = null;
+        int instanceNumber = firstInstanceNumber;
+        int numInstancesBefore = instanceIDs.size();
+
+        for (Object x : taskHandler.Execute())
+        {
+            ParsedRange parsedRange = (ParsedRange)x;
+
+            for (String id : parsedRange.InstanceIDs)
+                instanceIDs.add(id == null ? "Instance" + (++instanceNumber) : id);
+
+            if (matrix == null)
+            {
+                matrix = parsedRange.Matrix;
+                continue;
+            }
+
+            int[] rows = new int[parsedRange.InstanceIDs.size()];
+            for (int i = 0; i < rows.length; i++)
+                rows[i] = i;
+
+            matrix.AppendRows(parsedRange.Matrix, rows);
+        }
+
+        if (instanceIDs.size() == numInstancesBefore)
+            throw new Exception("No data rows could be identified in " + _filePath + ".");
+
+        return matrix;
+    }
+
+    /** This class stores the values that were parsed from one part of the file. */
+    private static class ParsedRange
+    {
+        DataMatrix Matrix = new DataMatrix();
+        ArrayList<String> InstanceIDs = new ArrayList<String>();
+    }
+
+    private ParsedRange ParseRange(long startPosition, long endPosition, boolean classOnly) throws Exception
+    {
+        ParsedRange parsedRange = new ParsedRange();
+
+        int classIndex = _attributeNames.size() - 1;
+        String[] values = new String[_attributeNames.size()];
+
+        for (String line : new BigFileReader(_filePath, startPosition, endPosition))
+        {
+            if (line.length() == 0 || line.startsWith("%"))
+                continue;
+
+            if (line.startsWith("{"))
+                ParseSparseRow(line, values);
+            else
+                ParseRow(line, values);
+
+            int row = parsedRange.Matrix.AddRow();
+            parsedRange.InstanceIDs.add(_idIndex == -1 ? null : values[_idIndex]);
+
+            if (classOnly)
+            {
+                parsedRange.Matrix.SetValue(row, _attributeNames.get(classIndex), values[classIndex]);
+                continue;
+            }
+
+            for (int j = 0; j < classIndex; j++)
+                if (j != _idIndex)
+                    parsedRange.Matrix.SetValue(row, _attributeNames.get(j), values[j]);
+        }
+
+        return parsedRange;
+    }
+
+    private void ParseRow(String line, String[] values) throws Exception
+    {
+        int start = 0;
+
+        for (int i = 0; i < values.length; i++)
+        {
+            if (start > line.length())
+                throw new Exception("Expected " + values.length + " values in " + _filePath + " but found " + i + ": " + line);
+
+            int end = line.indexOf(',', start);
+            if (end == -1)
+                end = line.length();
+
+            values[i] = line.substring(start, end).trim();
+            start = end + 1;
+        }
+    }
+
+    private void ParseSparseRow(String line, String[] values) throws Exception
+    {
+        for (int i = 0; i < values.length; i++)
+            values[i] = _sparseDefaultValues.get(i);
+
+        int end = line.indexOf('}');
+        if (end == -1)
+            throw new Exception("Invalid sparse row in " + _filePath + ": " + line);
+
+        for (String entry : line.substring(1, end).split(","))
+        {
+            entry = entry.trim();
+            if (entry.length() == 0)
+                continue;
+
+            int separator = entry.indexOf(' ');
+            if (separator == -1)
+                throw new Exception("Invalid sparse row in " + _filePath + ": " + line);
+
+            int index = Integer.parseInt(entry.substring(0, separator));
+            if (index < 0 || index >= values.length)
+                throw new Exception("Invalid attribute index (" + index + ") in " + _filePath + ": " + line);
+
+            values[index] = entry.substring(separator + 1).trim();
+        }
+    }
+}
@@ -20,7 +20,7 @@ package mlflex;
 import java.util.*;
 import java.io.*;
 
-/** This utility class is designed to aid in the process of parsing (potentially large) text files. It stores little data in memory, thus making it possible to parse very large files.
+/** This utility class is designed to aid in the process of parsing (potentially large) text files. It stores little data in memory, thus making it possible to parse very large files. Files that have been compressed in the gzip format are decompressed as they are read.
  * @author Stephen Piccolo
  */
 public class BigFileReader implements Iterable<String>
@@ -44,7 +44,92 @@ public class BigFileReader implements Iterable<String>
      */
     public BigFileReader(String filePath) throws Exception
     {
-        _reader = new BufferedReader(new FileReader(filePath));
+        _reader = new BufferedReader(new InputStreamReader(Files.OpenInputStream(filePath)), Files.INPUT_BUFFER_SIZE);
+    }
+
+    /** Constructor that reads only part of a file. This makes it possible for multiple threads to read different parts of the same file.
+     *
+     * @param filePath Absolute file path of file to be read
+     * @param startPosition Byte position where reading should start (for compressed files, this refers to the uncompressed contents)
+     * @param endPosition Byte position where reading should stop (exclusive)
+     * @throws Exception
+     */
+    public BigFileReader(String filePath, long startPosition, long endPosition) throws Exception
+    {
+        if (endPosition <= startPosition)
+        {
+            _reader = new BufferedReader(new StringReader(""));
+            return;
+        }
+
+        InputStream stream = Files.OpenInputStream(filePath, startPosition);
+        _reader = new BufferedReader(new InputStreamReader(new RangeInputStream(stream, endPosition - startPosition)), Files.INPUT_BUFFER_SIZE);
+    }
+
+    /** Divides a file into ranges of approximately equal size. Each range (except possibly the first) begins at the start of a line, so each line falls completely within one range.
+     *
+     * @param filePath Absolute file path
+     * @param numRanges Number of ranges
+     * @return Byte positions that delimit the ranges (range i starts at position i and ends at position i+1); this list contains one more value than the number of ranges
+     * @throws Exception
+     */
+    public static long[] GetLineAlignedPositions(String filePath, int numRanges) throws Exception
+    {
+        return GetLineAlignedPositions(filePath, 0, numRanges);
+    }
+
+    /** Divides the part of a file that follows the specified position into ranges of approximately equal size. Each range (except possibly the first) begins at the start of a line, so each line falls completely within one range. Compressed files cannot be divided without decompressing them, so the first range includes the entire file, and the remaining ranges are empty.
+     *
+     * @param filePath Absolute file path
+     * @param startPosition Byte position where the first range starts
+     * @param numRanges Number of ranges
+     * @return Byte positions that delimit the ranges (range i starts at position i and ends at position i+1); this list contains one more value than the number of ranges
+     * @throws Exception
+     */
+    public static long[] GetLineAlignedPositions(String filePath, long startPosition, int numRanges) throws Exception
+    {
+        if (Files.IsGzipFile(filePath))
+        {
+            long[] positions = new long[numRanges + 1];
+            Arrays.fill(positions, Long.MAX_VALUE);
+            positions[0] = startPosition;
+            return positions;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(filePath, "r");
+
+        try
+        {
+            long length = file.length();
+            long[] positions = new long[numRanges + 1];
+            positions[0] = startPosition;
+            positions[numRanges] = length;
+
+            for (int i = 1; i < numRanges; i++)
+            {
+                long position = Math.max(positions[i - 1], startPosition + ((length - startPosition) * i) / numRanges);
+
+                if (position > 0 && position < length)
+                {
+                    file.seek(position - 1);
+
+                    // Move forward to the first position after a line break
+                    int b = file.read();
+                    while (b != -1 && b != '\n')
+                        b = file.read();
+
+                    position = file.getFilePointer();
+                }
+
+                positions[i] = Math.min(position, length);
+            }
+
+            return positions;
+        }
+        finally
+        {
+            file.close();
+        }
     }
 
     private void Close()
@@ -64,6 +149,48 @@ public class BigFileReader implements Iterable<String>
         return new BigFileIterator();
     }
 
+    /** This class limits the number of bytes that can be read from an input stream. */
+    private static class RangeInputStream extends FilterInputStream
+    {
+        private long _remaining;
+
+        RangeInputStream(InputStream stream, long numBytes)
+        {
+            super(stream);
+            _remaining = numBytes;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (_remaining <= 0)
+                return -1;
+
+            int b = super.read();
+            if (b != -1)
+                _remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (_remaining <= 0)
+                return -1;
+
+            int numRead = super.read(bytes, offset, (int)Math.min(length, _remaining));
+            if (numRead > 0)
+                _remaining -= numRead;
+            return numRead;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int)Math.min(super.available(), _remaining);
+        }
+    }
+
     /** Reads a single line of the file
      *
      * @return Text of line
@@ -125,8 +252,8 @@ public class BigFileReader implements Iterable<String>
         {
             _count++;
 
-            if (_count % 10000 == 0)
-                Utilities.Log.Info("Lines read: " + _count);
+            if (_count % 100000 == 0)
+                Utilities.Log.Debug("Lines read: " + _count);
 
             return _currentLine.trim();
         }
@@ -0,0 +1,386 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/** This class reads and writes data instance collections in a binary, column-oriented file format. The file begins with a header that describes the data instance IDs, the data point names and types, the nominal values, and the original text of any numeric values whose text does not match the formatted number. A block of encoded values follows for each column (one value per data instance). The file ends with a checksum of all preceding bytes. Files are read via memory mapping, so large files can be loaded quickly.
+ * @author Stephen Piccolo
+ */
+public class BinaryDataFile
+{
+    private static final int MAGIC_NUMBER = 0x4D4C4658; // "MLFX"
+    private static final int VERSION = 2;
+    private static final int MAX_MAPPED_BYTES = 1 << 28;
+
+    /** Indicates whether the specified file is stored in this format.
+     *
+     * @param filePath Absolute file path
+     * @return Whether the file is stored in this format
+     * @throws Exception
+     */
+    public static boolean IsBinaryDataFile(String filePath) throws Exception
+    {
+        if (new File(filePath).length() < 4)
+            return false;
+
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(filePath));
+
+        try
+        {
+            return inputStream.readInt() == MAGIC_NUMBER;
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    /** Saves the specified data instances to a file.
+     *
+     * @param instances Data instances to be saved
+     * @param filePath Absolute file path
+     * @return Checksum of the file contents
+     * @throws Exception
+     */
+    public static long Write(DataInstanceCollection instances, String filePath) throws Exception
+    {
+        DataMatrix matrix = instances.GetMatrix();
+        int numRows = instances.Size();
+
+        int[] rows = new int[numRows];
+        for (int i = 0; i < numRows; i++)
+            rows[i] = instances.GetMatrixRow(i);
+
+        // Only the nominal values that are actually used get saved, so the codes are renumbered
+        HashMap<Integer, Integer> nominalCodes = new HashMap<Integer, Integer>();
+        ArrayList<String> nominalValues = new ArrayList<String>();
+
+        for (int column = 0; column < matrix.GetNumColumns(); column++)
+            if (matrix.GetColumnType(column) == DataMatrix.ColumnType.Nominal)
+                for (int row : rows)
+                {
+                    double code = matrix.GetEncodedValue(row, column);
+
+                    if (!Double.isNaN(code) && !nominalCodes.containsKey((int)code))
+                    {
+                        nominalCodes.put((int)code, nominalValues.size());
+                        nominalValues.add(matrix.GetNominalValues().GetValue((int)code));
+                    }
+                }
+
+        FileOutputStream fileStream = new FileOutputStream(filePath);
+        CheckedOutputStream checkedStream = new CheckedOutputStream(fileStream, new CRC32());
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(checkedStream, 1 << 20));
+
+        try
+        {
+            outputStream.writeInt(MAGIC_NUMBER);
+            outputStream.writeInt(VERSION);
+
+            outputStream.writeInt(numRows);
+            for (DataValues instance : instances)
+                WriteString(outputStream, instance.GetID());
+
+            outputStream.writeInt(matrix.GetNumColumns());
+            for (int column = 0; column < matrix.GetNumColumns(); column++)
+            {
+                WriteString(outputStream, matrix.GetColumnName(column));
+                outputStream.writeByte(matrix.GetColumnType(column).ordinal());
+            }
+
+            outputStream.writeInt(nominalValues.size());
+            for (String value : nominalValues)
+                WriteString(outputStream, value);
+
+            ArrayList<int[]> textPositions = new ArrayList<int[]>();
+            for (int column = 0; column < matrix.GetNumColumns(); column++)
+                if (matrix.GetColumnType(column) != DataMatrix.ColumnType.Nominal)
+                    for (int i = 0; i < numRows; i++)
+                        if (matrix.HasText(rows[i], column))
+                            textPositions.add(new int[] {column, i});
+
+            outputStream.writeInt(textPositions.size());
+            for (int[] position : textPositions)
+            {
+                outputStream.writeInt(position[0]);
+                outputStream.writeInt(position[1]);
+                WriteString(outputStream, matrix.GetValue(rows[position[1]], position[0]));
+            }
+
+            for (int column = 0; column < matrix.GetNumColumns(); column++)
+            {
+                boolean isNominal = matrix.GetColumnType(column) == DataMatrix.ColumnType.Nominal;
+
+                for (int row : rows)
+                {
+                    double value = matrix.GetEncodedValue(row, column);
+
+                    if (isNominal && !Double.isNaN(value))
+                        value = nominalCodes.get((int)value);
+
+                    outputStream.writeDouble(value);
+                }
+            }
+
+            outputStream.flush();
+
+            long checksum = checkedStream.getChecksum().getValue();
+            new DataOutputStream(fileStream).writeLong(checksum);
+
+            return checksum;
+        }
+        finally
+        {
+            outputStream.close();
+        }
+    }
+
+    /** Loads data instances from a file.
+     *
+     * @param filePath Absolute file path
+     * @return Data instances
+     * @throws Exception
+     */
+    public static DataInstanceCollection Read(String filePath) throws Exception
+    {
+        MappedReader reader = new MappedReader(filePath);
+
+        try
+        {
+            if (reader.ReadInt() != MAGIC_NUMBER)
+                throw new Exception(filePath + " is not a binary data file.");
+
+            // Version 1 files do not contain the original text of numeric values
+            int version = reader.ReadInt();
+            if (version != 1 && version != VERSION)
+                throw new Exception("Version " + version + " of the binary data file format (in " + filePath + ") is not supported.");
+
+            int numRows = reader.ReadInt();
+            ArrayList<String> ids = new ArrayList<String>(numRows);
+            for (int i = 0; i < numRows; i++)
+                ids.add(reader.ReadString());
+
+            int numColumns = reader.ReadInt();
+            ArrayList<String> names = new ArrayList<String>(numColumns);
+            ArrayList<DataMatrix.ColumnType> types = new ArrayList<DataMatrix.ColumnType>(numColumns);
+            for (int i = 0; i < numColumns; i++)
+            {
+                names.add(reader.ReadString());
+                types.add(DataMatrix.ColumnType.values()[reader.ReadByte()]);
+            }
+
+            // The dictionary is new, so each value gets the same code that it has in the file
+            ValueDictionary nominalValues = new ValueDictionary();
+            int numNominalValues = reader.ReadInt();
+            for (int i = 0; i < numNominalValues; i++)
+                nominalValues.GetCode(reader.ReadString());
+
+            ArrayList<HashMap<Integer, String>> texts = new ArrayList<HashMap<Integer, String>>(numColumns);
+            for (int i = 0; i < numColumns; i++)
+                texts.add(null);
+
+            int numTexts = version == 1 ? 0 : reader.ReadInt();
+            for (int i = 0; i < numTexts; i++)
+            {
+                int column = reader.ReadInt();
+                int row = reader.ReadInt();
+
+                if (texts.get(column) == null)
+                    texts.set(column, new HashMap<Integer, String>());
+                texts.get(column).put(row, reader.ReadString());
+            }
+
+            long expectedLength = reader.GetPosition() + (long)numColumns * numRows * 8 + 8;
+            if (reader.GetLength() != expectedLength)
+                throw new Exception("The length of " + filePath + " is " + reader.GetLength() + " bytes, but " + expectedLength + " bytes were expected.");
+
+            DataMatrix matrix = new DataMatrix(nominalValues);
+            for (int i = 0; i < numRows; i++)
+                matrix.AddRow();
+
+            double[] values = new double[numRows];
+            for (int i = 0; i < numColumns; i++)
+            {
+                reader.ReadDoubles(values);
+                matrix.AddEncodedColumn(names.get(i), types.get(i), values, texts.get(i));
+            }
+
+            return new DataInstanceCollection(matrix, ids);
+        }
+        finally
+        {
+            reader.Close();
+        }
+    }
+
+    /** Confirms that the checksum stored in a file matches its contents. This is much faster than reading the file back in after it has been written.
+     *
+     * @param filePath Absolute file path
+     * @param expectedChecksum The checksum that was calculated when the file was written
+     * @throws Exception
+     */
+    public static void Verify(String filePath, long expectedChecksum) throws Exception
+    {
+        MappedReader reader = new MappedReader(filePath);
+
+        try
+        {
+            if (reader.GetLength() < 8)
+                throw new Exception(filePath + " is too short to be a binary data file.");
+
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[1 << 16];
+            long remaining = reader.GetLength() - 8;
+
+            while (remaining > 0)
+            {
+                int numBytes = (int)Math.min(buffer.length, remaining);
+                reader.ReadBytes(buffer, numBytes);
+                crc.update(buffer, 0, numBytes);
+                remaining -= numBytes;
+            }
+
+            long storedChecksum = reader.ReadLong();
+
+            if (storedChecksum != crc.getValue() || storedChecksum != expectedChecksum)
+                throw new Exception("The checksum for " + filePath + " does not match its contents. The file may not have been saved correctly.");
+        }
+        finally
+        {
+            reader.Close();
+        }
+    }
+
+    private static void WriteString(DataOutputStream outputStream, String value) throws Exception
+    {
+        byte[] bytes = value.getBytes("UTF-8");
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    /** This class reads a file sequentially through memory-mapped windows, so files larger than a single mapping allows can be read. */
+    private static class MappedReader
+    {
+        private RandomAccessFile _file;
+        private FileChannel _channel;
+        private MappedByteBuffer _buffer;
+        private long _bufferStart = 0;
+        private long _length;
+
+        MappedReader(String filePath) throws Exception
+        {
+            _file = new RandomAccessFile(Files.CheckFileExists(filePath), "r");
+            _channel = _file.getChannel();
+            _length = _channel.size();
+            Map(0);
+        }
+
+        long GetLength()
+        {
+            return _length;
+        }
+
+        long GetPosition()
+        {
+            return _bufferStart + _buffer.position();
+        }
+
+        int ReadInt() throws Exception
+        {
+            return Require(4).getInt();
+        }
+
+        long ReadLong() throws Exception
+        {
+            return Require(8).getLong();
+        }
+
+        byte ReadByte() throws Exception
+        {
+            return Require(1).get();
+        }
+
+        String ReadString() throws Exception
+        {
+            byte[] bytes = new byte[ReadInt()];
+            ReadBytes(bytes, bytes.length);
+            return new String(bytes, "UTF-8");
+        }
+
+        void ReadBytes(byte[] bytes, int numBytes) throws Exception
+        {
+            int offset = 0;
+
+            while (offset < numBytes)
+            {
+                int chunk = Math.min(numBytes - offset, MAX_MAPPED_BYTES);
+                Require(chunk).get(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void ReadDoubles(double[] values) throws Exception
+        {
+            int offset = 0;
+
+            while (offset < values.length)
+            {
+                int chunk = Math.min(values.length - offset, MAX_MAPPED_BYTES / 8);
+                Require(chunk * 8).asDoubleBuffer().get(values, offset, chunk);
+                _buffer.position(_buffer.position() + chunk * 8);
+                offset += chunk;
+            }
+        }
+
+        /** Makes sure the specified number of bytes can be read from the current mapping, remapping at the current position if necessary. */
+        private ByteBuffer Require(int numBytes) throws Exception
+        {
+            if (_buffer.remaining() < numBytes)
+            {
+                long position = GetPosition();
+
+                if (position + numBytes > _length)
+                    throw new EOFException("Unexpected end of binary data file.");
+
+                Map(position);
+            }
+
+            return _buffer;
+        }
+
+        private void Map(long position) throws Exception
+        {
+            _bufferStart = position;
+            _buffer = _channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPED_BYTES, _length - position));
+        }
+
+        void Close() throws Exception
+        {
+            _channel.close();
+            _file.close();
+        }
+    }
+}
@@ -18,12 +18,18 @@
 package mlflex;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /** This class provides functionality for interfacing with the C5.0 Decision Trees software package.
+ *
+ * The data files for a set of training and test instances are written once, for all of the features that are needed. Each model is then restricted to its own features with an "attributes included" line in the .names file, so models that use different numbers of features share the same data files. The commands that build and apply the models for the same training and test instances are executed in a single shell invocation, because starting the C5.0 processes often takes longer than building the models. Before each model is built, the model files of the previous one are removed, and a model is applied only if it was built successfully; otherwise, the output of C5.0 is reported in an exception.
  * @author Stephen Piccolo
  */
 public class C5Learner extends AbstractMachineLearner
 {
+    private static final String JOB_SEPARATOR = "#C5LearnerJob";
+    private static final String JOB_ERROR = "#C5LearnerError";
+
     @Override
     protected ArrayList<String> SelectOrRankFeatures(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection dependentVariableInstances) throws Exception
     {
@@ -32,29 +38,169 @@ public class C5Learner extends AbstractMachineLearner
 
     @Override
     protected ModelPredictions TrainTest(ArrayList<String> classificationParameters, DataInstanceCollection trainingData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        ArrayList<ArrayList<String>> featureSets = new ArrayList<ArrayList<String>>();
+        featureSets.add(trainingData.GetDataPointNames());
+
+        return TrainTest(classificationParameters, trainingData, testData, featureSets, dependentVariableInstances).get(0);
+    }
+
+    /** The jobs that use the same training and test instances are performed in a single shell invocation, using the same data files. Jobs that use different instances are performed in parallel. */
+    @Override
+    protected ArrayList<ModelPredictions> TrainTestBatch(final ArrayList<String> classificationParameters, final DataInstanceCollection data, ArrayList<TrainTestJob> jobs, final DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        LinkedHashMap<String, ArrayList<TrainTestJob>> foldJobs = new LinkedHashMap<String, ArrayList<TrainTestJob>>();
+
+        for (TrainTestJob job : jobs)
+        {
+            String foldKey = Lists.Join(job.TrainIDs, "\t") + "\n" + Lists.Join(job.TestIDs, "\t");
+
+            if (!foldJobs.containsKey(foldKey))
+                foldJobs.put(foldKey, new ArrayList<TrainTestJob>());
+
+            foldJobs.get(foldKey).add(job);
+        }
+
+        final HashMap<TrainTestJob, ModelPredictions> results = new HashMap<TrainTestJob, ModelPredictions>();
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (final ArrayList<TrainTestJob> jobsForFold : foldJobs.values())
+        {
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    ArrayList<String> features = new ArrayList<String>();
+                    ArrayList<ArrayList<String>> featureSets = new ArrayList<ArrayList<String>>();
+
+                    for (TrainTestJob job : jobsForFold)
+                    {
+                        features = Lists.Union(features, job.Features);
+                        featureSets.add(job.Features);
+                    }
+
+                    TrainTestJob firstJob = jobsForFold.get(0);
+                    ArrayList<ModelPredictions> foldResults = TrainTest(classificationParameters, data.CreateView(firstJob.TrainIDs, features), data.CreateView(firstJob.TestIDs, features), featureSets, dependentVariableInstances);
+
+                    synchronized (results)
+                    {
+                        for (int i = 0; i < jobsForFold.size(); i++)
+                            results.put(jobsForFold.get(i), foldResults.get(i));
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        taskHandler.Execute();
+
+        ArrayList<ModelPredictions> orderedResults = new ArrayList<ModelPredictions>();
+        for (TrainTestJob job : jobs)
+            orderedResults.add(results.get(job));
+
+        return orderedResults;
+    }
+
+    /** Builds and applies one model for each set of features, using the same training and test instances.
+     *
+     * @param classificationParameters Paths of (and arguments for) the C5.0 executables
+     * @param trainingData Training instances (these must include all of the features in the feature sets)
+     * @param testData Test instances (these must include all of the features in the feature sets)
+     * @param featureSets Features that should be used for each model
+     * @param dependentVariableInstances Dependent-variable instances
+     * @return Predictions for each feature set
+     * @throws Exception
+     */
+    private ArrayList<ModelPredictions> TrainTest(ArrayList<String> classificationParameters, DataInstanceCollection trainingData, DataInstanceCollection testData, ArrayList<ArrayList<String>> featureSets, DataInstanceCollection dependentVariableInstances) throws Exception
     {
         String uniqueID = Utilities.GetUniqueID();
+        String tempFileDescription = Settings.TEMP_DATA_DIR + uniqueID;
 
-        new AnalysisFileCreator(Settings.TEMP_DATA_DIR, uniqueID, trainingData, trainingData, dependentVariableInstances).CreateC5NamesFile();
-        new AnalysisFileCreator(Settings.TEMP_DATA_DIR, uniqueID, trainingData, trainingData, dependentVariableInstances).CreateC5TrainDataFile();
+        AnalysisFileCreator trainingCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, uniqueID, trainingData, trainingData, dependentVariableInstances);
+        String names = trainingCreator.GetC5Names();
+        trainingCreator.CreateC5TrainDataFile();
         new AnalysisFileCreator(Settings.TEMP_DATA_DIR, uniqueID, testData, trainingData, dependentVariableInstances).CreateC5TestDataFile();
 
-        String tempFileDescription = Settings.TEMP_DATA_DIR + uniqueID;
+        String trainCommand = GetShellCommand(classificationParameters, 0, tempFileDescription);
+        String testCommand = GetShellCommand(classificationParameters, 3, tempFileDescription);
+        String modelFileStem = classificationParameters.get(2).replace("{fileDescription}", tempFileDescription);
+        String logFilePath = tempFileDescription + ".log";
 
-        ArrayList<String> commandArgs = Lists.CreateStringList(classificationParameters.get(0).replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR));
-        ArrayList<String> parameters = Lists.CreateStringList(classificationParameters.get(1), classificationParameters.get(2).replace("{fileDescription}", tempFileDescription));
+        StringBuilder script = new StringBuilder();
 
-        CommandLineClient.RunAnalysis(commandArgs, parameters);
+        for (int i = 0; i < featureSets.size(); i++)
+        {
+            ArrayList<String> features = featureSets.get(i);
+
+            // The .names file is the same for each model, except for the features that are included
+            String jobNames = names;
+            if (features.size() < trainingData.GetDataPointNames().size())
+                jobNames += "\nattributes included:\n" + Lists.Join(features, ",\n") + ".\n";
+
+            String jobNamesFilePath = tempFileDescription + ".names" + i;
+            Files.WriteTextToFile(jobNamesFilePath, jobNames);
+
+            // The model of the previous job must not be applied if this one cannot be built
+            script.append("rm -f " + QuoteShellArgument(modelFileStem + ".tree") + " " + QuoteShellArgument(modelFileStem + ".rules") + "\n");
+            script.append("cp " + QuoteShellArgument(jobNamesFilePath) + " " + QuoteShellArgument(trainingCreator.GetC5NamesFilePath()));
+            script.append(" && " + trainCommand + " > " + QuoteShellArgument(logFilePath) + " 2>&1");
+            script.append(" && " + testCommand);
+            script.append(" || { echo " + QuoteShellArgument(JOB_ERROR) + "; cat " + QuoteShellArgument(logFilePath) + "; }\n");
+            script.append("echo " + QuoteShellArgument(JOB_SEPARATOR) + "\n");
+        }
 
-        commandArgs = Lists.CreateStringList(classificationParameters.get(3).replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR));
-        parameters = Lists.CreateStringList(classificationParameters.get(4), classificationParameters.get(5).replace("{fileDescription}", tempFileDescription));
+        String scriptFilePath = tempFileDescription + ".sh";
+        Files.WriteTextToFile(scriptFilePath, script.toString());
 
-        HashMap<String, String> results = CommandLineClient.RunAnalysis(commandArgs, parameters);
+        HashMap<String, String> results = CommandLineClient.RunAnalysis(Lists.CreateStringList("/bin/sh"), Lists.CreateStringList(scriptFilePath));
         String output = CommandLineClient.GetCommandResult(results, CommandLineClient.OUTPUT_RESULTS_KEY);
-        
+
         Files.DeleteFilesInDirectory(Settings.TEMP_DATA_DIR, uniqueID + ".*");
 
-        ArrayList<String> outputLines = Lists.CreateStringList(CommandLineClient.GetCommandResult(results, CommandLineClient.OUTPUT_RESULTS_KEY).split("\n"));
+        ArrayList<ModelPredictions> modelPredictions = new ArrayList<ModelPredictions>();
+        StringBuilder jobOutput = new StringBuilder();
+        boolean jobFailed = false;
+
+        for (String outputLine : output.split("\n"))
+        {
+            if (outputLine.equals(JOB_ERROR))
+                jobFailed = true;
+            else if (outputLine.equals(JOB_SEPARATOR))
+            {
+                if (jobFailed)
+                    throw new Exception("C5.0 failed for model " + (modelPredictions.size() + 1) + " of " + featureSets.size() + " (" + featureSets.get(modelPredictions.size()).size() + " features):\n" + jobOutput);
+
+                modelPredictions.add(new ModelPredictions(jobOutput.toString(), ParsePredictions(jobOutput.toString(), testData, dependentVariableInstances)));
+                jobOutput = new StringBuilder();
+            }
+            else
+                jobOutput.append(outputLine + "\n");
+        }
+
+        if (modelPredictions.size() != featureSets.size())
+            throw new Exception("C5.0 output was found for " + modelPredictions.size() + " of " + featureSets.size() + " models.");
+
+        return modelPredictions;
+    }
+
+    private String GetShellCommand(ArrayList<String> classificationParameters, int startIndex, String tempFileDescription)
+    {
+        String executable = classificationParameters.get(startIndex).replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR);
+        String flag = classificationParameters.get(startIndex + 1);
+        String fileDescription = classificationParameters.get(startIndex + 2).replace("{fileDescription}", tempFileDescription);
+
+        return QuoteShellArgument(executable) + " " + QuoteShellArgument(flag) + " " + QuoteShellArgument(fileDescription);
+    }
+
+    private String QuoteShellArgument(String argument)
+    {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+
+    private Predictions ParsePredictions(String output, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        ArrayList<String> outputLines = Lists.CreateStringList(output.split("\n"));
         outputLines.remove(0);
         outputLines.remove(0);
         outputLines.remove(0);
@@ -78,6 +224,6 @@ public class C5Learner extends AbstractMachineLearner
             predictions.Add(new Prediction(instance.GetID(), dependentVariableInstances.Get(instance.GetID()).GetDataPointValue(0), prediction, classProbabilities));
         }
 
-        return new ModelPredictions(output, predictions);
+        return predictions;
     }
-}
\ No newline at end of file
+}
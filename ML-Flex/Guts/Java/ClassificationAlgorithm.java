@@ -19,6 +19,7 @@ package mlflex;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /** This class acts as a wrapper for performing classification tasks. It interprets parameters for executing these tasks, based on what has been configured in ML-Flex's configuration files.
  * @author Stephen Piccolo
@@ -43,7 +44,7 @@ public class ClassificationAlgorithm
         _algorithmParameters = algorithmParameters;
     }
 
-    /** This is a pass-through method to perform training and testing. It throws a detailed exception if it cannot be performed.
+    /** This is a pass-through method to perform training and testing. It throws a detailed exception if it cannot be performed. If the same predictions have already been made (and cached), they are reused.
      *
      * @param trainData Training data instances
      * @param testData Testing data instances
@@ -53,20 +54,160 @@ public class ClassificationAlgorithm
      */
     public ModelPredictions TrainTest(DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
     {
+        if (!CanTrainTest(trainData, testData))
+            return new ModelPredictions("", new Predictions());
+
+        // Data points are stored in the order they were added, which may differ between the training and test data; the learners expect the same order
         if (!Lists.AreEqual(trainData.GetDataPointNames(), testData.GetDataPointNames()))
+            testData = testData.CreateView(testData.GetIDs(), trainData.GetDataPointNames());
+
+        String cacheKey = GetCacheKey(trainData, testData, dependentVariableInstances);
+
+        if (cacheKey != null)
         {
-            Utilities.Log.Debug("Data points in training but not in testing data:");
-            Utilities.Log.Debug(Lists.GetDifference(trainData.GetDataPointNames(), testData.GetDataPointNames()));
-            Utilities.Log.Debug("Data points in testing but not in training data:");
-            Utilities.Log.Debug(Lists.GetDifference(testData.GetDataPointNames(), trainData.GetDataPointNames()));
+            ModelPredictions cachedResult = PredictionCache.Get(cacheKey);
+            if (cachedResult != null)
+                return cachedResult;
+        }
 
-            throw new Exception("The data points in the training data don't match those in the test data.");
+        try
+        {
+            ModelPredictions result = _learner.TrainTest(_algorithmParameters, trainData, testData, dependentVariableInstances);
+
+            if (cacheKey != null)
+                PutInCache(cacheKey, result);
+
+            return result;
         }
+        catch (Exception ex)
+        {
+            Utilities.Log.Info("Algorithm: " + Description);
+            Utilities.Log.Info("Training data (first five instances):");
+            Utilities.Log.Info(trainData.toShortString());
+            Utilities.Log.Info("Test data (first five instances):");
+            Utilities.Log.Info(testData.toShortString());
+            Utilities.Log.Info("Dependent variable data (first five instances):");
+            Utilities.Log.Info(dependentVariableInstances.toShortString());
+            throw ex;
+        }
+    }
+
+    /** This is a pass-through method to perform training and testing for several jobs at once. The machine learner may process the jobs as a batch (for example, converting the data only once). Jobs that have no training or test data are not passed to the learner; empty predictions are returned for them. Jobs whose predictions have already been made (and cached) are not passed to the learner either.
+     *
+     * @param data Data instances that contain all training and test instances and all features used by the jobs
+     * @param jobs Jobs that indicate which features, training instances and test instances should be used
+     * @param dependentVariableInstances Dependent-variable instances
+     * @return Predictions and model information for each job (in the same order as the jobs)
+     * @throws Exception
+     */
+    public ArrayList<ModelPredictions> TrainTest(DataInstanceCollection data, ArrayList<TrainTestJob> jobs, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        ArrayList<TrainTestJob> jobsToExecute = new ArrayList<TrainTestJob>();
+        ArrayList<String> cacheKeys = new ArrayList<String>();
+        HashMap<TrainTestJob, ModelPredictions> cachedResults = new HashMap<TrainTestJob, ModelPredictions>();
+
+        for (TrainTestJob job : jobs)
+        {
+            DataInstanceCollection trainData = job.GetTrainData(data);
+            DataInstanceCollection testData = job.GetTestData(data);
+
+            if (!CanTrainTest(trainData, testData))
+                continue;
+
+            String cacheKey = GetCacheKey(trainData, testData, dependentVariableInstances);
+            ModelPredictions cachedResult = cacheKey == null ? null : PredictionCache.Get(cacheKey);
+
+            if (cachedResult != null)
+                cachedResults.put(job, cachedResult);
+            else
+            {
+                jobsToExecute.add(job);
+                cacheKeys.add(cacheKey);
+            }
+        }
+
+        ArrayList<ModelPredictions> executedResults = new ArrayList<ModelPredictions>();
+
+        if (jobsToExecute.size() > 0)
+        {
+            try
+            {
+                executedResults = _learner.TrainTestBatch(_algorithmParameters, data, jobsToExecute, dependentVariableInstances);
+            }
+            catch (Exception ex)
+            {
+                Utilities.Log.Info("Algorithm: " + Description);
+                Utilities.Log.Info("Number of jobs: " + jobsToExecute.size());
+                Utilities.Log.Info("Data (first five instances):");
+                Utilities.Log.Info(data.toShortString());
+                Utilities.Log.Info("Dependent variable data (first five instances):");
+                Utilities.Log.Info(dependentVariableInstances.toShortString());
+                throw ex;
+            }
+        }
+
+        if (executedResults.size() != jobsToExecute.size())
+            throw new Exception("The " + Description + " algorithm returned " + executedResults.size() + " results for " + jobsToExecute.size() + " jobs.");
+
+        for (int i = 0; i < cacheKeys.size(); i++)
+            if (cacheKeys.get(i) != null)
+                PutInCache(cacheKeys.get(i), executedResults.get(i));
+
+        ArrayList<ModelPredictions> results = new ArrayList<ModelPredictions>();
 
+        for (TrainTestJob job : jobs)
+        {
+            int index = jobsToExecute.indexOf(job);
+
+            if (index != -1)
+                results.add(executedResults.get(index));
+            else if (cachedResults.containsKey(job))
+                results.add(cachedResults.get(job));
+            else
+                results.add(new ModelPredictions("", new Predictions()));
+        }
+
+        return results;
+    }
+
+    private String GetCacheKey(DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        if (!PredictionCache.IsEnabled())
+            return null;
+
+        return PredictionCache.GetKey(_learner.getClass(), _algorithmParameters, trainData, testData, dependentVariableInstances);
+    }
+
+    /** The predictions have already been made, so they are returned even if they cannot be stored in the cache. */
+    private void PutInCache(String cacheKey, ModelPredictions modelPredictions)
+    {
+        try
+        {
+            PredictionCache.Put(cacheKey, modelPredictions);
+        }
+        catch (Exception ex)
+        {
+            Utilities.Log.Debug("Predictions could not be stored in the prediction cache.");
+            Utilities.Log.Debug(ex);
+        }
+    }
+
+    private boolean CanTrainTest(DataInstanceCollection trainData, DataInstanceCollection testData) throws Exception
+    {
         if (trainData.Size() == 0 || testData.Size() == 0)
         {
             Utilities.Log.Info("No predictions will be made because the training and/or test set have no data");
-            return new ModelPredictions("", new Predictions());
+            return false;
+        }
+
+        if (!Lists.AreEqual(Lists.SortStringList(trainData.GetDataPointNames()), Lists.SortStringList(testData.GetDataPointNames())))
+        {
+            Utilities.Log.Debug("Data points in training but not in testing data:");
+            Utilities.Log.Debug(Lists.GetDifference(trainData.GetDataPointNames(), testData.GetDataPointNames()));
+            Utilities.Log.Debug("Data points in testing but not in training data:");
+            Utilities.Log.Debug(Lists.GetDifference(testData.GetDataPointNames(), trainData.GetDataPointNames()));
+
+            throw new Exception("The data points in the training data don't match those in the test data.");
         }
 
         if (Lists.Intersect(trainData.GetIDs(), testData.GetIDs()).size() > 0)
@@ -83,21 +224,7 @@ public class ClassificationAlgorithm
         if (trainData.GetNumDataPoints() == 0)
             throw new Exception("The training data had no data points");
 
-        try
-        {
-            return _learner.TrainTest(_algorithmParameters, trainData, testData, dependentVariableInstances);
-        }
-        catch (Exception ex)
-        {
-            Utilities.Log.Info("Algorithm: " + Description);
-            Utilities.Log.Info("Training data (first five instances):");
-            Utilities.Log.Info(trainData.toShortString());
-            Utilities.Log.Info("Test data (first five instances):");
-            Utilities.Log.Info(testData.toShortString());
-            Utilities.Log.Info("Dependent variable data (first five instances):");
-            Utilities.Log.Info(dependentVariableInstances.toShortString());
-            throw ex;
-        }
+        return true;
     }
 
     @Override
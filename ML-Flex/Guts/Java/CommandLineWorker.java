@@ -0,0 +1,382 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** This class is used to execute commands in a long-running external process (for example, an R script), so the cost of starting the process is paid only once. Idle workers are kept in a pool (at most one per thread for each command) so they can be reused.
+ *
+ * Workers communicate over standard input and output using a simple line-based protocol. When a worker has started, it prints a line containing READY. Each request consists of a header line (tab-delimited), which ends with the number of lines in each of the data blocks that follow; the data blocks are then sent line by line. The worker responds with a line containing RESULT and the number of output lines (separated by a tab), followed by the output lines. If an error occurs, the worker responds with a line containing ERROR and a description of the error (separated by a tab). Any other output from the worker is logged and otherwise ignored. If a worker process stops unexpectedly, or if it does not start or respond within the thread timeout, it is shut down and replaced by a new one.
+ * @author Stephen Piccolo
+ */
+public class CommandLineWorker
+{
+    private static final String READY_MESSAGE = "READY";
+    private static final String RESULT_PREFIX = "RESULT\t";
+    private static final String ERROR_PREFIX = "ERROR\t";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_START_FAILURES = 3;
+
+    private static final HashMap<String, ArrayList<CommandLineWorker>> _idleWorkers = new HashMap<String, ArrayList<CommandLineWorker>>();
+    private static final HashMap<String, Integer> _startFailures = new HashMap<String, Integer>();
+    private static final HashSet<String> _unsupportedCommands = new HashSet<String>();
+
+    // Workers are read from on separate threads, so a worker that stops responding does not block the caller indefinitely
+    private static final ExecutorService _readerService = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        private int _numThreadsCreated = 0;
+
+        public synchronized Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "MLFlex-Worker-" + (++_numThreadsCreated));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private String _key;
+    private Process _process;
+    private BufferedReader _reader;
+    private BufferedWriter _writer;
+
+    private CommandLineWorker(String key, ArrayList<String> commandArgs) throws Exception
+    {
+        _key = key;
+
+        Utilities.Log.Debug("Starting worker process: " + key);
+
+        ProcessBuilder processBuilder = new ProcessBuilder(commandArgs);
+        processBuilder.redirectErrorStream(true);
+        _process = processBuilder.start();
+
+        _reader = new BufferedReader(new InputStreamReader(_process.getInputStream(), "UTF-8"));
+        _writer = new BufferedWriter(new OutputStreamWriter(_process.getOutputStream(), "UTF-8"), 1 << 16);
+
+        try
+        {
+            WaitForWorker(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    String line;
+                    while (!READY_MESSAGE.equals(line = ReadLine()))
+                        Utilities.Log.Debug("Worker output: " + line);
+
+                    return null;
+                }
+            });
+        }
+        catch (Exception ex)
+        {
+            // The process may still be running (for example, if it did not finish starting in time), so it must be shut down
+            Destroy();
+            throw ex;
+        }
+    }
+
+    /** Gets an idle worker that executes the specified command, starting a new worker if none is idle. After it has been used, the worker should be passed to the Release method.
+     *
+     * @param commandArgs Command (and arguments) that starts the worker process
+     * @return Worker, or null if the command could not be started in worker mode (in which case the caller should use another approach); a command is no longer tried in worker mode after it has failed to start several times in a row
+     * @throws Exception
+     */
+    public static CommandLineWorker Acquire(ArrayList<String> commandArgs) throws Exception
+    {
+        String key = Lists.Join(commandArgs, " ");
+
+        synchronized (_idleWorkers)
+        {
+            if (_unsupportedCommands.contains(key))
+                return null;
+
+            ArrayList<CommandLineWorker> idleWorkers = _idleWorkers.get(key);
+
+            // Workers that have stopped while they were idle are discarded
+            while (idleWorkers != null && idleWorkers.size() > 0)
+            {
+                CommandLineWorker worker = idleWorkers.remove(idleWorkers.size() - 1);
+
+                if (worker.IsRunning())
+                    return worker;
+
+                Utilities.Log.Debug("Idle worker process " + key + " has stopped, so it will not be reused.");
+                worker.Destroy();
+            }
+        }
+
+        try
+        {
+            CommandLineWorker worker = new CommandLineWorker(key, commandArgs);
+
+            synchronized (_idleWorkers)
+            {
+                _startFailures.remove(key);
+            }
+
+            return worker;
+        }
+        catch (Exception ex)
+        {
+            Utilities.Log.Debug(ex);
+
+            synchronized (_idleWorkers)
+            {
+                int numFailures = _startFailures.containsKey(key) ? _startFailures.get(key) + 1 : 1;
+                _startFailures.put(key, numFailures);
+
+                if (numFailures >= MAX_START_FAILURES)
+                {
+                    Utilities.Log.Debug("A worker process could not be started for " + key + " (" + numFailures + " consecutive failures), so it will no longer be used in worker mode.");
+                    _unsupportedCommands.add(key);
+                }
+                else
+                    Utilities.Log.Debug("A worker process could not be started for " + key + ", so worker mode will not be used for this request.");
+            }
+
+            return null;
+        }
+    }
+
+    /** Returns a worker to the pool so it can be reused. Workers that have stopped (or are not needed because enough workers are idle) are shut down.
+     *
+     * @param worker Worker that was obtained from the Acquire method
+     */
+    public static void Release(CommandLineWorker worker)
+    {
+        if (worker == null || worker._process == null)
+            return;
+
+        synchronized (_idleWorkers)
+        {
+            ArrayList<CommandLineWorker> idleWorkers = _idleWorkers.get(worker._key);
+            if (idleWorkers == null)
+            {
+                idleWorkers = new ArrayList<CommandLineWorker>();
+                _idleWorkers.put(worker._key, idleWorkers);
+            }
+
+            if (idleWorkers.size() < Math.max(1, Settings.NUM_THREADS))
+            {
+                idleWorkers.add(worker);
+                return;
+            }
+        }
+
+        worker.Destroy();
+    }
+
+    /** Sends a request to an idle worker that executes the specified command (a new worker is started if none is idle) and returns the worker to the pool afterward. If the worker process stops unexpectedly (for example, because it crashed), a new worker is started and the request is sent again, up to a few times. Errors that are reported by the worker itself are not retried.
+     *
+     * @param commandArgs Command (and arguments) that starts the worker process
+     * @param headerItems Values that describe the request (these are sent on the header line, before the sizes of the data blocks)
+     * @param dataBlocks Blocks of lines that are sent after the header line
+     * @return Output lines from the worker, or null if the command could not be started in worker mode (in which case the caller should use another approach)
+     * @throws Exception
+     */
+    public static ArrayList<String> ExecuteRequest(ArrayList<String> commandArgs, ArrayList<String> headerItems, ArrayList<ArrayList<String>> dataBlocks) throws Exception
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            CommandLineWorker worker = Acquire(commandArgs);
+
+            if (worker == null)
+                return null;
+
+            try
+            {
+                return worker.Execute(headerItems, dataBlocks);
+            }
+            catch (Exception ex)
+            {
+                // When the worker reports an error, it is still running, and the same request would fail again
+                if (worker._process != null || attempt == MAX_ATTEMPTS)
+                    throw ex;
+
+                Utilities.Log.Info("The request will be sent to a new worker process: " + ex.getMessage());
+            }
+            finally
+            {
+                Release(worker);
+            }
+        }
+    }
+
+    /** Sends a request to the worker and waits (up to the thread timeout) for the response.
+     *
+     * @param headerItems Values that describe the request (these are sent on the header line, before the sizes of the data blocks)
+     * @param dataBlocks Blocks of lines that are sent after the header line
+     * @return Output lines from the worker
+     * @throws Exception
+     */
+    public ArrayList<String> Execute(final ArrayList<String> headerItems, final ArrayList<ArrayList<String>> dataBlocks) throws Exception
+    {
+        final ArrayList<String> output = new ArrayList<String>();
+        String response;
+
+        try
+        {
+            response = WaitForWorker(new Callable<String>()
+            {
+                public String call() throws Exception
+                {
+                    ArrayList<String> header = new ArrayList<String>(headerItems);
+                    for (ArrayList<String> dataBlock : dataBlocks)
+                        header.add(String.valueOf(dataBlock.size()));
+
+                    WriteLine(Lists.Join(header, "\t"));
+                    for (ArrayList<String> dataBlock : dataBlocks)
+                        for (String line : dataBlock)
+                            WriteLine(line);
+                    _writer.flush();
+
+                    String response;
+                    while (!(response = ReadLine()).startsWith(RESULT_PREFIX) && !response.startsWith(ERROR_PREFIX))
+                        Utilities.Log.Debug("Worker output: " + response);
+
+                    if (response.startsWith(RESULT_PREFIX))
+                    {
+                        int numLines = Integer.parseInt(response.substring(RESULT_PREFIX.length()).trim());
+
+                        for (int i = 0; i < numLines; i++)
+                            output.add(ReadLine());
+                    }
+
+                    return response;
+                }
+            });
+        }
+        catch (Exception ex)
+        {
+            // The worker is in an unknown state, so it cannot be reused
+            Destroy();
+            throw ex;
+        }
+
+        if (response.startsWith(ERROR_PREFIX))
+            throw new Exception("An error occurred in worker process " + _key + ": " + response.substring(ERROR_PREFIX.length()));
+
+        return output;
+    }
+
+    /** Communicates with the worker process on a separate thread and waits (up to the thread timeout) for the communication to finish. If the time runs out, the caller must shut down the worker.
+     *
+     * @param communication Task that writes to and/or reads from the worker process
+     * @return Result of the task
+     * @throws Exception
+     */
+    private <T> T WaitForWorker(Callable<T> communication) throws Exception
+    {
+        try
+        {
+            return _readerService.submit(communication).get(Settings.THREAD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        }
+        catch (TimeoutException ex)
+        {
+            throw new Exception("Worker process " + _key + " did not respond within " + Settings.THREAD_TIMEOUT_MINUTES + " minutes.");
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof Exception)
+                throw (Exception)ex.getCause();
+
+            throw ex;
+        }
+    }
+
+    private boolean IsRunning()
+    {
+        if (_process == null)
+            return false;
+
+        try
+        {
+            _process.exitValue();
+            return false;
+        }
+        catch (IllegalThreadStateException ex)
+        {
+            return true;
+        }
+    }
+
+    private String ReadLine() throws Exception
+    {
+        String line = _reader.readLine();
+
+        if (line == null)
+            throw new Exception("Worker process " + _key + " stopped unexpectedly.");
+
+        return line;
+    }
+
+    private void WriteLine(String line) throws Exception
+    {
+        _writer.write(line);
+        _writer.write("\n");
+    }
+
+    private void Destroy()
+    {
+        if (_process == null)
+            return;
+
+        _process.destroy();
+        _process = null;
+
+        // Another thread may still be waiting to read from (or write to) the process, for example if a child of the process keeps its output open, so the streams are closed without waiting for that thread
+        final BufferedReader reader = _reader;
+        final BufferedWriter writer = _writer;
+
+        _readerService.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    writer.close();
+                }
+                catch (Exception ex)
+                {
+                    Utilities.Log.Debug(ex);
+                }
+
+                try
+                {
+                    reader.close();
+                }
+                catch (Exception ex)
+                {
+                    Utilities.Log.Debug(ex);
+                }
+            }
+        });
+    }
+}
@@ -13,6 +13,15 @@ public class CrossValidationAssignments
     protected DataInstanceCollection DependentVariableInstances;
     protected boolean IsInner;
 
+    // These values are calculated once, the first time they are needed, after the instances have been assigned to folds
+    private int[] _foldOfInstance = null;
+    private HashMap<Integer, BitSet> _testInstances = null;
+    private HashMap<Integer, BitSet> _trainInstances = null;
+    private HashMap<Integer, ArrayList<String>> _trainIDs = null;
+    private HashMap<Integer, ArrayList<String>> _excludedTrainIDs = null;
+    private ConcurrentHashMap<AbstractDataProcessor, int[]> _numTestInstances = new ConcurrentHashMap<AbstractDataProcessor, int[]>();
+    private ConcurrentHashMap<AbstractDataProcessor, int[]> _numTrainInstances = new ConcurrentHashMap<AbstractDataProcessor, int[]>();
+
     /** Constructor
      *
      * @param numFolds Number of cross validation folds to use
@@ -109,11 +118,78 @@ public class CrossValidationAssignments
      */
     public int GetFoldNumber(String instanceID) throws Exception
     {
+        Materialize();
+
+        int index = InstanceIdRegistry.GetIndex(instanceID);
+
+        if (index >= _foldOfInstance.length || _foldOfInstance[index] == 0)
+            throw new Exception("The instance ID (" + instanceID + ") is not assigned to a fold");
+
+        return _foldOfInstance[index];
+    }
+
+    /** Calculates (once) which fold each data instance is assigned to and which instances are used for training and testing in each fold. Any training instances that are excluded randomly are selected at this point, so the same instances are excluded each time the training instances are requested.
+     *
+     * @throws Exception
+     */
+    private synchronized void Materialize() throws Exception
+    {
+        if (_foldOfInstance != null)
+            return;
+
+        HashMap<Integer, BitSet> testInstances = new HashMap<Integer, BitSet>();
+        HashMap<Integer, BitSet> trainInstances = new HashMap<Integer, BitSet>();
+        HashMap<Integer, ArrayList<String>> trainIDs = new HashMap<Integer, ArrayList<String>>();
+        HashMap<Integer, ArrayList<String>> excludedTrainIDs = new HashMap<Integer, ArrayList<String>>();
+
+        int maxIndex = -1;
+        for (String id : GetAllIDs())
+            maxIndex = Math.max(maxIndex, InstanceIdRegistry.GetIndex(id));
+
+        int[] foldOfInstance = new int[maxIndex + 1];
         for (Map.Entry<Integer, ArrayList<String>> entry : Assignments.entrySet())
-            if (entry.getValue().contains(instanceID))
-                return entry.getKey();
-        
-        throw new Exception("The instance ID (" + instanceID + ") is not assigned to a fold");
+            for (String id : entry.getValue())
+                foldOfInstance[InstanceIdRegistry.GetIndex(id)] = entry.getKey();
+
+        for (int fold : GetAllFoldNumbers())
+        {
+            ArrayList<String> unfilteredTrainIDs = GetUnfilteredTrainIDs(fold);
+            ArrayList<String> excluded = GetTrainIDsToExclude(new ArrayList<String>(unfilteredTrainIDs));
+            ArrayList<String> foldTrainIDs = InstanceIdRegistry.RemoveAll(unfilteredTrainIDs, excluded);
+
+            testInstances.put(fold, InstanceIdRegistry.ToBitSet(GetUnfilteredTestIDs(fold)));
+            trainInstances.put(fold, InstanceIdRegistry.ToBitSet(foldTrainIDs));
+            trainIDs.put(fold, foldTrainIDs);
+            excludedTrainIDs.put(fold, excluded);
+        }
+
+        _testInstances = testInstances;
+        _trainInstances = trainInstances;
+        _trainIDs = trainIDs;
+        _excludedTrainIDs = excludedTrainIDs;
+        _foldOfInstance = foldOfInstance;
+    }
+
+    /** Indicates which data instances are used for testing in a given fold.
+     *
+     * @param fold Number of cross validation fold
+     * @return Data instance IDs
+     * @throws Exception
+     */
+    protected ArrayList<String> GetUnfilteredTestIDs(int fold) throws Exception
+    {
+        return Assignments.get(fold);
+    }
+
+    /** Indicates which data instances are used for training in a given fold, before any are excluded randomly.
+     *
+     * @param fold Number of cross validation fold
+     * @return Data instance IDs
+     * @throws Exception
+     */
+    protected ArrayList<String> GetUnfilteredTrainIDs(int fold) throws Exception
+    {
+        return InstanceIdRegistry.RemoveAll(GetAllIDs(), Assignments.get(fold));
     }
 
     /** Indicates which folds have at least one data instance assigned to them, after filtering has occurred
@@ -167,7 +243,7 @@ public class CrossValidationAssignments
      */
     public ArrayList<String> GetTestIDs(int fold) throws Exception
     {
-        return new ArrayList<String>(Assignments.get(fold));
+        return new ArrayList<String>(GetUnfilteredTestIDs(fold));
     }
 
     /** Indicates training instance IDs for a given cross-validation fold
@@ -178,7 +254,8 @@ public class CrossValidationAssignments
      */
     public ArrayList<String> GetTrainIDs(int fold) throws Exception
     {
-        return FilterTrainIDs(Lists.RemoveAll(GetAllIDs(), GetTestIDs(fold)));
+        Materialize();
+        return new ArrayList<String>(_trainIDs.get(fold));
     }
 
     /** Returns a list of training instance IDs that have been excluded across all cross-validation folds.
@@ -188,13 +265,12 @@ public class CrossValidationAssignments
      */
     public ArrayList<String> GetAllExcludedTrainIDs() throws Exception
     {
+        Materialize();
+
         ArrayList<String> excluded = new ArrayList<String>();
 
         for (int fold : GetAllFoldNumbers())
-        {
-            ArrayList<String> trainIDs = Lists.RemoveAll(GetAllIDs(), GetTestIDs(fold));
-            excluded.addAll(GetTrainIDsToExclude(trainIDs));
-        }
+            excluded.addAll(_excludedTrainIDs.get(fold));
 
         return excluded;
     }
@@ -230,16 +306,6 @@ public class CrossValidationAssignments
         return new ArrayList<String>(testIDs);
     }
 
-    /** If the relevant configuration value is specified, this method randomly excludes a subset of training IDs.
-     *
-     * @param trainIDs List of training IDs to be filtered
-     * @throws Exception
-     */
-    protected ArrayList<String> FilterTrainIDs(ArrayList<String> trainIDs) throws Exception
-    {
-        return Lists.RemoveAll(trainIDs, GetTrainIDsToExclude(trainIDs));
-    }
-
     /** This method indicates which training instances, if any, should be excluded randomly from the analysis.
      * @param instanceIDs List of all instance IDs that may be excluded
      * @return List of instance IDs to exclude
@@ -306,7 +372,7 @@ public class CrossValidationAssignments
      */
     public int GetNumTrainInstances(AbstractDataProcessor processor, int fold) throws Exception
     {
-        return Utilities.InstanceVault.GetAnalysisInstancesSize(processor, GetTrainIDs(fold));
+        return GetNumInstances(processor, fold, false);
     }
 
     /** Indicates how many test instances are assigned to a given fold for a given data processor. This method is provided to improve performance.
@@ -318,7 +384,39 @@ public class CrossValidationAssignments
      */
     public int GetNumTestInstances(AbstractDataProcessor processor, int fold) throws Exception
     {
-        return GetTestInstances(processor, fold, new ArrayList<String>()).Size();
+        return GetNumInstances(processor, fold, true);
+    }
+
+    // The number of instances for each fold is counted once for each processor, by intersecting the fold's instances with the processor's analysis instances
+    private int GetNumInstances(AbstractDataProcessor processor, int fold, boolean test) throws Exception
+    {
+        Materialize();
+
+        ConcurrentHashMap<AbstractDataProcessor, int[]> cache = test ? _numTestInstances : _numTrainInstances;
+        int[] counts = cache.get(processor);
+
+        if (counts == null)
+        {
+            // Test instances are filtered in the same way as in GetTestInstances; training instances are counted as in InstanceVault.GetAnalysisInstancesSize
+            BitSet processorInstances = InstanceIdRegistry.ToBitSet(test ? Utilities.InstanceVault.GetAnalysisInstanceIDs(processor) : Utilities.InstanceVault.GetAnalysisInstanceIDs(processor, null, false));
+            HashMap<Integer, BitSet> foldInstances = test ? _testInstances : _trainInstances;
+
+            int maxFold = 0;
+            for (int f : foldInstances.keySet())
+                maxFold = Math.max(maxFold, f);
+
+            counts = new int[maxFold + 1];
+            for (Map.Entry<Integer, BitSet> entry : foldInstances.entrySet())
+            {
+                BitSet intersection = (BitSet)entry.getValue().clone();
+                intersection.and(processorInstances);
+                counts[entry.getKey()] = intersection.cardinality();
+            }
+
+            cache.put(processor, counts);
+        }
+
+        return fold >= 0 && fold < counts.length ? counts[fold] : 0;
     }
 
     /** Indicates whether a given combination of data processor and cross-validation fold have any test instances.
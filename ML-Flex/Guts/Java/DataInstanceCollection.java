@@ -17,21 +17,25 @@
 
 package mlflex;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.Callable;
 
-/** This class is designed to store all data for a set of data instances. It provides methods that make it easier to create, retrieve, update, and delete data values for these instances.
+/** This class is designed to store all data for a set of data instances. It provides methods that make it easier to create, retrieve, update, and delete data values for these instances. The values are stored in a DataMatrix; the data instances in this collection read and write their values directly from/to that matrix.
  * @author Stephen Piccolo
  */
 public class DataInstanceCollection implements Iterable<DataValues>
 {
     public static String END_OF_FILE_MARKER = "[EOF]";
-    private ArrayList<DataValues> _instances;
+    private DataMatrix _matrix;
+    private ArrayList<DataValues> _instances = new ArrayList<DataValues>();
+    private HashMap<String, Integer> _instanceIndices = new HashMap<String, Integer>();
+    private volatile int _firstStaleIndex = Integer.MAX_VALUE;
 
     /** Default constructor */
     public DataInstanceCollection()
     {
-        this(new ArrayList<DataValues>());
+        _matrix = new DataMatrix();
     }
 
     /** Constructor
@@ -40,8 +44,8 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public DataInstanceCollection(DataValues instance)
     {
-        _instances = new ArrayList<DataValues>();
-        _instances.add(instance);
+        this();
+        Add(instance);
     }
 
     /** Constructor
@@ -50,7 +54,9 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public DataInstanceCollection(ArrayList<DataValues> instances)
     {
-        _instances = instances;
+        this();
+        for (DataValues instance : instances)
+            Add(instance);
     }
 
     /** Constructor
@@ -60,8 +66,23 @@ public class DataInstanceCollection implements Iterable<DataValues>
     public DataInstanceCollection(DataInstanceCollection instances)
     {
         this();
-        for (DataValues instance : instances)
-            _instances.add(instance);
+        Add(instances);
+    }
+
+    /** Constructor
+     *
+     * @param matrix Matrix that stores the data values for this collection
+     * @param ids Data instance IDs that correspond to each row of the matrix
+     */
+    public DataInstanceCollection(DataMatrix matrix, ArrayList<String> ids)
+    {
+        _matrix = matrix;
+
+        for (int row = 0; row < ids.size(); row++)
+        {
+            _instances.add(_matrix.GetRow(row, ids.get(row)));
+            _instanceIndices.put(ids.get(row), row);
+        }
     }
 
     /** Adds a data instance to this collection
@@ -70,11 +91,13 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void Add(DataValues instance)
     {
-        if (!Contains(instance))
-            _instances.add(instance.CopyStructure());
-        
-        for (String dataPointName : instance)
-            Add(dataPointName, instance.GetID(), instance.GetDataPointValue(dataPointName));
+        DataValues existing = Get(instance.GetID());
+
+        if (existing == null)
+            existing = AddInstance(instance.GetID());
+
+        if (existing != instance)
+            existing.AddDataPoints(instance);
     }
 
     /** Adds a collection of data instances to this collection.
@@ -98,13 +121,43 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void Add(String dataPointName, String instanceID, String value)
     {
-        DataValues instance = new DataValues(instanceID);
+        DataValues instance = Get(instanceID);
 
-        if (this.Contains(instanceID))
-            instance = Get(instanceID);
+        if (instance == null)
+            instance = AddInstance(instanceID);
 
         instance.AddDataPoint(dataPointName, value);
-        UpdateInstance(instance);
+    }
+
+    private DataValues AddInstance(String instanceID)
+    {
+        DataValues instance = _matrix.GetRow(_matrix.AddRow(), instanceID);
+        _instances.add(instance);
+        _instanceIndices.put(instanceID, _instances.size() - 1);
+        return instance;
+    }
+
+    /** Finds the position of the specified data instance in this collection. An index of positions is maintained for this purpose. When instances are removed, the positions that follow are refreshed only when the next lookup occurs, so a series of removals requires only a single refresh.
+     *
+     * @param instanceID Query data instance ID
+     * @return Position of the instance or -1 if it is not in the collection
+     */
+    private int IndexOf(String instanceID)
+    {
+        if (_firstStaleIndex != Integer.MAX_VALUE)
+            UpdateInstanceIndices();
+
+        Integer index = _instanceIndices.get(instanceID);
+        return index == null ? -1 : index;
+    }
+
+    // Instances may be looked up from multiple threads (for example, when analysis files are formatted in parallel), so the index is updated by only one of them
+    private synchronized void UpdateInstanceIndices()
+    {
+        for (int i = _firstStaleIndex; i < _instances.size(); i++)
+            _instanceIndices.put(_instances.get(i).GetID(), i);
+
+        _firstStaleIndex = Integer.MAX_VALUE;
     }
 
     /** For a given data point, this method converts values to zero or one, depending on whether they coincide with the specified value.
@@ -128,7 +181,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
     public DataInstanceCollection ClearDataPoints()
     {
         for (DataValues instance : _instances)
-            UpdateInstance(instance.ClearDataPoints());
+            instance.ClearDataPoints();
 
         return this;
     }
@@ -143,7 +196,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
         return Clone(GetIDs(), GetDataPointNames());
     }
 
-    /** Creates a deep copy of this collection for the data instance IDs and data points specified
+    /** Creates a deep copy of this collection for the data instance IDs and data points specified. The copy is a view (see CreateView), so values are only duplicated if either collection is modified later.
      *
      * @param ids Data instance IDs to include in copy
      * @param dataPoints Data points to include in copy
@@ -152,22 +205,32 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public DataInstanceCollection Clone(ArrayList<String> ids, ArrayList<String> dataPoints) throws Exception
     {
-        DataInstanceCollection newInstances = new DataInstanceCollection();
+        return CreateView(ids, dataPoints);
+    }
+
+    /** Creates a collection that provides access to the specified data instances and data points of this collection without copying any values. The new collection can be used like any other collection. Values are copied only if one of the collections is modified, and such changes are never visible in the other collection.
+     *
+     * @param ids Data instance IDs to include in the view
+     * @param dataPoints Data points to include in the view
+     * @return View of this collection
+     * @throws Exception
+     */
+    public DataInstanceCollection CreateView(ArrayList<String> ids, ArrayList<String> dataPoints) throws Exception
+    {
+        HashSet<String> idsToKeep = new HashSet<String>(ids);
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        ArrayList<String> newIDs = new ArrayList<String>();
 
         for (DataValues instance : _instances)
         {
-            if (ids.contains(instance.GetID()))
+            if (idsToKeep.contains(instance.GetID()))
             {
-                DataValues newInstance = instance.CopyStructure();
-
-                for (String dataPoint : dataPoints)
-                    newInstance.AddDataPoint(dataPoint, instance.GetDataPointValue(dataPoint));
-
-                newInstances.Add(newInstance);
+                rows.add(_matrix.GetRowIndex(instance));
+                newIDs.add(instance.GetID());
             }
         }
 
-        return newInstances;
+        return new DataInstanceCollection(_matrix.CreateView(rows, dataPoints), newIDs);
     }
 
     /** Indicates whether this collection contains the specified data instance.
@@ -177,7 +240,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public boolean Contains(DataValues instance)
     {
-        return _instances.contains(instance);
+        return Contains(instance.GetID());
     }
 
     /** Indicates whether this collection contains the specified data instance.
@@ -187,7 +250,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public boolean Contains(String instanceID)
     {
-        return Contains(new DataValues(instanceID));
+        return IndexOf(instanceID) > -1;
     }
 
 //    public DataInstanceCollection FilterAnd(HashMap<String, String> namesAndValues)
@@ -252,8 +315,8 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void FormatDataPointNames()
     {
-        for (DataValues patient : this)
-            patient.FormatDataPointNames();
+        for (String dataPointName : GetDataPointNames())
+            UpdateDataPointName(dataPointName, Utilities.FormatName(dataPointName));
     }
 
     /** Gets the data instance at the specified index.
@@ -289,25 +352,49 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public DataValues Get(String id)
     {
-        int index = _instances.indexOf(new DataValues(id));
+        int index = IndexOf(id);
 
         if (index > -1)
             return _instances.get(index);
         return null;
     }
 
+    /** Gets the matrix that stores the data values for this collection.
+     *
+     * @return Data matrix
+     */
+    public DataMatrix GetMatrix()
+    {
+        return _matrix;
+    }
+
+    /** Indicates which row of the data matrix stores the values for the data instance at the specified position.
+     *
+     * @param index Position of the data instance in this collection
+     * @return Row index in the data matrix
+     */
+    public int GetMatrixRow(int index)
+    {
+        return _matrix.GetRowIndex(_instances.get(index));
+    }
+
+    private int[] GetMatrixRows()
+    {
+        int[] rows = new int[_instances.size()];
+
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = _matrix.GetRowIndex(_instances.get(i));
+
+        return rows;
+    }
+
     /** Gets a list of all data point names across all data instances in the collection.
      *
      * @return List of all data point names
      */
     public ArrayList<String> GetDataPointNames()
     {
-        HashSet<String> names = new HashSet<String>();
-
-        for (DataValues instance : _instances)
-            names.addAll(instance.GetDataPointNames());
-
-        return new ArrayList<String>(names);
+        return _matrix.GetColumnNames();
     }
 
     /** Gets a list of data point names that match the specified pattern, across all data instances in the collection.
@@ -326,16 +413,47 @@ public class DataInstanceCollection implements Iterable<DataValues>
         return matching;
     }
 
-    /** Gets a list of all unique data point names across all data instances in the collection.
+    /** Identifies all unique values for each data point, across all data instances in the collection. This requires only a single pass over the data; the data points are processed in parallel.
      *
-     * @return List of unique data point names
+     * @return Map with data point names as keys and lists of unique values as values
+     * @throws Exception
      */
-    public HashMap<String, ArrayList<String>> GetDataPointUniqueValues()
+    public HashMap<String, ArrayList<String>> GetDataPointUniqueValues() throws Exception
     {
-        HashMap<String, ArrayList<String>> dataPointUniqueValues = new HashMap<String, ArrayList<String>>();
+        final ArrayList<String> dataPointNames = GetDataPointNames();
+        final HashMap<String, ArrayList<String>> dataPointUniqueValues = new HashMap<String, ArrayList<String>>();
+        final int[] rows = GetMatrixRows();
 
-        for (String dataPointName : GetDataPointNames())
-            dataPointUniqueValues.put(dataPointName, GetUniqueValues(dataPointName));
+        int numChunks = Math.max(1, Math.min(dataPointNames.size(), Settings.NUM_THREADS * 4));
+        final int chunkSize = (dataPointNames.size() + numChunks - 1) / numChunks;
+
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (int chunk = 0; chunk < numChunks; chunk++)
+        {
+            final int start = chunk * chunkSize;
+            final int end = Math.min(dataPointNames.size(), start + chunkSize);
+
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    for (int i = start; i < end; i++)
+                    {
+                        ArrayList<String> uniqueValues = GetUniqueValues(_matrix.GetColumnIndex(dataPointNames.get(i)), rows);
+
+                        synchronized (dataPointUniqueValues)
+                        {
+                            dataPointUniqueValues.put(dataPointNames.get(i), uniqueValues);
+                        }
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        taskHandler.Execute();
 
         return dataPointUniqueValues;
     }
@@ -348,13 +466,30 @@ public class DataInstanceCollection implements Iterable<DataValues>
     public DataValues GetDataPointValues(String dataPointName)
     {
         DataValues values = new DataValues(dataPointName);
+        int columnIndex = _matrix.GetColumnIndex(dataPointName);
 
-        for (DataValues instance : _instances)
-            values.AddDataPoint(instance.GetID(), instance.GetDataPointValue(dataPointName));
+        if (columnIndex > -1)
+            for (DataValues instance : _instances)
+                values.AddDataPoint(instance.GetID(), _matrix.GetValue(_matrix.GetRowIndex(instance), columnIndex));
 
         return values;
     }
 
+    /** Gets the values of a numeric data point for each data instance in this collection (in the order of the instances). No values are converted to text.
+     *
+     * @param dataPointName Query data point name
+     * @return Values for each data instance (NaN indicates a missing value), or null if the data point does not exist or contains non-numeric values
+     */
+    public double[] GetNumericDataPointValues(String dataPointName)
+    {
+        int columnIndex = _matrix.GetColumnIndex(dataPointName);
+
+        if (columnIndex == -1)
+            return null;
+
+        return _matrix.GetNumericColumn(columnIndex, GetMatrixRows());
+    }
+
     /** Gets a list of data instance IDs for the instances in this collection.
      *
      * @return List of all data instance IDs in this collection
@@ -382,17 +517,72 @@ public class DataInstanceCollection implements Iterable<DataValues>
      *
      * @return Proportion of missing values.
      */
-    public double GetProportionMissingValues()
+    public double GetProportionMissingValues() throws Exception
     {
-        double numNotMissing = 0.0;
+        ArrayList<String> dataPointNames = GetDataPointNames();
 
-        for (DataValues instance : _instances)
-            numNotMissing += instance.GetNumNotMissingValues();
+        double numNotMissing = 0.0;
+        for (int count : CountValues(dataPointNames, null))
+            numNotMissing += count;
 
-        double proportionMissing = 1 - (numNotMissing / ((double) Size() * (double) GetNumDataPoints()));
+        double proportionMissing = 1 - (numNotMissing / ((double) Size() * (double) dataPointNames.size()));
         return MathUtility.Round(proportionMissing, 3);
     }
 
+    /** Counts the non-missing values for each of the specified data points and (optionally) for each data instance. This requires only a single pass over the data; the data points are processed in parallel.
+     *
+     * @param dataPointNames Data points for which values should be counted
+     * @param instanceCounts If not null, the number of non-missing values (for the specified data points) in each data instance is added to this array, in the order of the instances
+     * @return Number of non-missing values for each of the specified data points
+     * @throws Exception
+     */
+    public int[] CountValues(final ArrayList<String> dataPointNames, final int[] instanceCounts) throws Exception
+    {
+        final int[] dataPointCounts = new int[dataPointNames.size()];
+        final int[] rows = GetMatrixRows();
+
+        int numChunks = Math.max(1, Math.min(dataPointNames.size(), Settings.NUM_THREADS * 4));
+        final int chunkSize = (dataPointNames.size() + numChunks - 1) / numChunks;
+
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (int chunk = 0; chunk < numChunks; chunk++)
+        {
+            final int start = chunk * chunkSize;
+            final int end = Math.min(dataPointNames.size(), start + chunkSize);
+
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    // Each task counts the instance values separately, so no synchronization is necessary until the end
+                    int[] chunkInstanceCounts = instanceCounts == null ? null : new int[rows.length];
+
+                    for (int i = start; i < end; i++)
+                    {
+                        int columnIndex = _matrix.GetColumnIndex(dataPointNames.get(i));
+
+                        if (columnIndex > -1)
+                            dataPointCounts[i] = _matrix.CountValues(columnIndex, rows, chunkInstanceCounts);
+                    }
+
+                    if (instanceCounts != null)
+                        synchronized (instanceCounts)
+                        {
+                            for (int i = 0; i < rows.length; i++)
+                                instanceCounts[i] += chunkInstanceCounts[i];
+                        }
+
+                    return null;
+                }
+            });
+        }
+
+        taskHandler.Execute();
+
+        return dataPointCounts;
+    }
+
     /** Indicates which data points have all the same value across all data instances in the collection.
      *
      * @return List of data points that have all the same value across all data instances
@@ -429,12 +619,32 @@ public class DataInstanceCollection implements Iterable<DataValues>
      * @return List of all unique values for the specified data point
      */
     public ArrayList<String> GetUniqueValues(String dataPointName)
+    {
+        return GetUniqueValues(_matrix.GetColumnIndex(dataPointName), GetMatrixRows());
+    }
+
+    private ArrayList<String> GetUniqueValues(int columnIndex, int[] rows)
     {
         HashSet<String> values = new HashSet<String>();
 
-        for (DataValues instance : _instances)
+        if (columnIndex == -1)
+            return new ArrayList<String>(values);
+
+        // Values are compared as text. Values without separately stored text are converted to the same text whenever their encoded values are the same, so each of those is converted only once.
+        HashSet<Double> convertedValues = new HashSet<Double>();
+
+        for (int row : rows)
         {
-            String value = instance.GetDataPointValue(dataPointName);
+            double encodedValue = _matrix.GetEncodedValue(row, columnIndex);
+
+            if (Double.isNaN(encodedValue))
+                continue;
+
+            // A value whose original text is stored separately may have the same number as other values but different text
+            if (!_matrix.HasText(row, columnIndex) && !convertedValues.add(encodedValue))
+                continue;
+
+            String value = _matrix.GetValue(row, columnIndex);
             if (value != null && !value.equals(Settings.MISSING_VALUE_STRING))
                 values.add(value);
         }
@@ -587,8 +797,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public DataInstanceCollection RemoveDataPointNames(ArrayList<String> dataPointNames)
     {
-        for (String dataPointName : dataPointNames)
-            RemoveDataPointName(dataPointName);
+        _matrix.RemoveColumns(dataPointNames);
 
         return this;
     }
@@ -599,16 +808,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void RemoveDataPointName(String dataPointName)
     {
-        for (DataValues instance : _instances)
-        {
-            int index = _instances.indexOf(instance);
-
-            if (index > -1)
-            {
-                instance.RemoveDataPoint(dataPointName);
-                _instances.set(index, instance);
-            }
-        }
+        _matrix.RemoveColumns(Lists.CreateStringList(dataPointName));
     }
 
     /** Removes any data point matching the specified pattern.
@@ -626,8 +826,34 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void RemoveInstances(ArrayList<String> ids)
     {
+        HashSet<String> toRemove = new HashSet<String>();
+
         for (String id : ids)
-            RemoveInstance(id);
+        {
+            if (Contains(id))
+                toRemove.add(id);
+            else
+                Utilities.Log.Info("A data instance with ID " + id + " cannot be removed because it does not exist in the collection.");
+        }
+
+        if (toRemove.size() == 0)
+            return;
+
+        ArrayList<DataValues> instances = new ArrayList<DataValues>();
+
+        for (DataValues instance : _instances)
+        {
+            if (toRemove.contains(instance.GetID()))
+            {
+                _matrix.RemoveRow(_matrix.GetRowIndex(instance));
+                _instanceIndices.remove(instance.GetID());
+            }
+            else
+                instances.add(instance);
+        }
+
+        _instances = instances;
+        _firstStaleIndex = 0;
     }
 
     /** Removes the specified data instance.
@@ -636,8 +862,14 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void RemoveInstance(String id)
     {
-        if (Contains(id))
-            _instances.remove(_instances.indexOf(new DataValues(id)));
+        int index = IndexOf(id);
+
+        if (index > -1)
+        {
+            _matrix.RemoveRow(_matrix.GetRowIndex(_instances.remove(index)));
+            _instanceIndices.remove(id);
+            _firstStaleIndex = Math.min(_firstStaleIndex, index);
+        }
         else
             Utilities.Log.Info("A data instance with ID " + id + " cannot be removed because it does not exist in the collection.");
     }
@@ -650,7 +882,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
     public DataInstanceCollection ReplaceMissingValues(String newValue)
     {
         for (DataValues instance : this)
-            UpdateInstance(instance.ReplaceMissingValues(newValue));
+            instance.ReplaceMissingValues(newValue);
 
         return this;
     }
@@ -693,6 +925,22 @@ public class DataInstanceCollection implements Iterable<DataValues>
             UpdateDataPoint(dataPointName, instanceID, values.GetDataPointValue(instanceID));
     }
 
+    /** Updates a given numeric data point with the specified values.
+     *
+     * @param dataPointName Data point to be updated
+     * @param values New values for each data instance, in the order of the instances (NaN indicates a missing value)
+     * @throws Exception
+     */
+    public void UpdateNumericDataPointValues(String dataPointName, double[] values) throws Exception
+    {
+        int columnIndex = _matrix.GetColumnIndex(dataPointName);
+
+        if (columnIndex == -1)
+            throw new Exception("No data point named " + dataPointName + " exists.");
+
+        _matrix.SetNumericColumn(columnIndex, GetMatrixRows(), values);
+    }
+
     /** Updates a given data point for a given data instance with the specified value.
      *
      * @param dataPointName Data point to be updated
@@ -702,12 +950,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
     public void UpdateDataPoint(String dataPointName, String instanceID, String value)
     {
         if (value != null)
-        {
-            int index = _instances.indexOf(new DataValues(instanceID));
-            DataValues instance = _instances.get(index);
-            instance.AddDataPoint(dataPointName, value);
-            _instances.set(index, instance);
-        }
+            _instances.get(IndexOf(instanceID)).AddDataPoint(dataPointName, value);
     }
 
     /** Changes an existing data point name to the specified value.
@@ -717,11 +960,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void UpdateDataPointName(String fromDataPointName, String toDataPointName)
     {
-        for (DataValues instance : this)
-        {
-            instance.UpdateDataPointName(fromDataPointName, toDataPointName);
-            UpdateInstance(instance);
-        }
+        _matrix.RenameColumn(fromDataPointName, toDataPointName);
     }
 
     /** Replaces an existing data instance with the specified data instance. If the data instance does not exist in this collection, the specified instance is added.
@@ -730,17 +969,23 @@ public class DataInstanceCollection implements Iterable<DataValues>
      */
     public void UpdateInstance(DataValues instance)
     {
-        int index = _instances.indexOf(instance);
+        int index = IndexOf(instance.GetID());
+
+        if (index > -1 && _instances.get(index) == instance)
+            return;
+
+        // Copy the values first in case they are stored in this collection's matrix
+        DataValues source = _matrix.GetRowIndex(instance) > -1 ? instance.Clone() : instance;
 
         if (index == -1)
-            _instances.add(instance);
+            AddInstance(source.GetID()).AddDataPoints(source);
         else
-            _instances.set(index, instance);
+            _instances.get(index).ClearDataPoints().AddDataPoints(source);
     }
 
     public Iterator<DataValues> iterator()
     {
-        return _instances.iterator();
+        return Collections.unmodifiableList(_instances).iterator();
     }
 
     @Override
@@ -769,7 +1014,7 @@ public class DataInstanceCollection implements Iterable<DataValues>
         Files.AppendTextToFile(filePath, END_OF_FILE_MARKER);
     }
 
-    /** Deserializes a collection that has been saved in a text file in the ML-Flex format.
+    /** Deserializes a collection that has been saved in a file in the ML-Flex format. Both the text format and the binary format (see BinaryDataFile) are supported.
      *
      * @param filePath Absolute file path where the file is located
      * @return A data collection
@@ -779,31 +1024,45 @@ public class DataInstanceCollection implements Iterable<DataValues>
     {
         Files.CheckFileExists(filePath);
 
-        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+        if (BinaryDataFile.IsBinaryDataFile(filePath))
+            return BinaryDataFile.Read(filePath);
+
+        // The file is divided into ranges of whole lines, and each range is parsed by a separate task
+        long fileLength = new File(filePath).length();
+        int numRanges = (int)Math.max(1, Math.min(Settings.NUM_THREADS * 4, fileLength / MIN_BYTES_PER_RANGE));
+        final long[] positions = BigFileReader.GetLineAlignedPositions(filePath, numRanges);
 
-        BigFileReader fileReader = new BigFileReader(filePath);
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
 
-        for (final String line : fileReader)
+        for (int i = 0; i < numRanges; i++)
         {
+            final String path = filePath;
+            final int range = i;
+
             taskHandler.Add(new Callable<Object>()
             {
                 public Object call() throws Exception
                 {
-                    return DataValues.FromString(line);
+                    return ParseTextRange(path, positions[range], positions[range + 1]);
                 }
             });
         }
 
         boolean reachedEndOfFile = false;
 
+        // The partial collections are merged in the same order as they appear in the file
         DataInstanceCollection collection = new DataInstanceCollection();
         for (Object x : taskHandler.Execute())
         {
-            DataValues dv = (DataValues)x;
-            if (dv.GetID().equals(END_OF_FILE_MARKER))
+            DataInstanceCollection partial = (DataInstanceCollection)x;
+
+            if (partial.Contains(END_OF_FILE_MARKER))
+            {
                 reachedEndOfFile = true;
-            else
-                collection.Add(dv);
+                partial.RemoveInstance(END_OF_FILE_MARKER);
+            }
+
+            collection.AddPartial(partial);
         }
 
         if (reachedEndOfFile)
@@ -812,6 +1071,52 @@ public class DataInstanceCollection implements Iterable<DataValues>
             throw new Exception("Never reached the end of file marker in " + filePath + ".");
     }
 
+    private static final long MIN_BYTES_PER_RANGE = 1 << 20;
+
+    private static DataInstanceCollection ParseTextRange(String filePath, long startPosition, long endPosition) throws Exception
+    {
+        DataInstanceCollection partial = new DataInstanceCollection();
+
+        for (String line : new BigFileReader(filePath, startPosition, endPosition))
+        {
+            if (line.length() == 0)
+                continue;
+
+            if (line.equals(END_OF_FILE_MARKER))
+                partial.AddInstance(END_OF_FILE_MARKER);
+            else
+                partial.Add(DataValues.FromString(line));
+        }
+
+        return partial;
+    }
+
+    private void AddPartial(DataInstanceCollection partial)
+    {
+        int[] sourceRows = new int[partial.Size()];
+
+        for (int i = 0; i < sourceRows.length; i++)
+        {
+            // The values can be copied directly from one matrix to the other unless the same instance occurs in both collections
+            if (Contains(partial.Get(i).GetID()))
+            {
+                Add(partial);
+                return;
+            }
+
+            sourceRows[i] = partial.GetMatrixRow(i);
+        }
+
+        int[] rows = _matrix.AppendRows(partial._matrix, sourceRows);
+
+        for (int i = 0; i < rows.length; i++)
+        {
+            String id = partial.Get(i).GetID();
+            _instances.add(_matrix.GetRow(rows[i], id));
+            _instanceIndices.put(id, _instances.size() - 1);
+        }
+    }
+
     /** Creates a String representation of this object in a format that can be used for debugging purposes.
      *
      * @return Short String representation of this object
@@ -0,0 +1,978 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.util.*;
+
+/** This class is the storage backend for DataInstanceCollection. Values are stored in a dense, column-major matrix of primitive doubles, with one column per data point and one row per data instance. Numeric values are stored directly; all other values are stored as codes in a nominal-value dictionary that can be shared among matrices derived from one another. Missing values are stored as NaN. When converting a number back to text does not reproduce the original text (for example, "5" in a column of decimal values, or "1e3"), the number is still stored, and the original text is kept separately for that value only, so the String representation of every value is preserved and numeric columns never need to be parsed. A matrix can also be a view of selected rows and columns of another matrix; views share the underlying arrays and copy them only when either matrix is modified (copy on write).
+ * @author Stephen Piccolo
+ */
+public class DataMatrix
+{
+    /** This enumeration indicates how the values in a column are encoded. */
+    public enum ColumnType
+    {
+        Untyped,
+        Integral,
+        Decimal,
+        Nominal
+    }
+
+    private ValueDictionary _nominalValues;
+    private ArrayList<Column> _columns = new ArrayList<Column>();
+    private HashMap<String, Integer> _columnIndices = new HashMap<String, Integer>();
+    private ArrayList<Integer> _freeRows = new ArrayList<Integer>();
+    private int _numRows = 0;
+    private int _capacity = 16;
+    private int[] _rowMap = null;
+
+    /** Default constructor */
+    public DataMatrix()
+    {
+        this(new ValueDictionary());
+    }
+
+    /** Constructor
+     *
+     * @param nominalValues Dictionary that will be used to encode non-numeric values
+     */
+    public DataMatrix(ValueDictionary nominalValues)
+    {
+        _nominalValues = nominalValues;
+    }
+
+    /** Adds a row to the matrix. Rows that have been removed previously are reused.
+     *
+     * @return Index of the new row
+     */
+    public synchronized int AddRow()
+    {
+        Materialize();
+
+        if (_freeRows.size() > 0)
+            return _freeRows.remove(_freeRows.size() - 1);
+
+        if (_numRows == _capacity)
+        {
+            _capacity *= 2;
+
+            for (Column column : _columns)
+            {
+                column.Values = GrowValues(column.Values, _capacity);
+                if (column.Shared && column.Texts != null)
+                    column.Texts = new HashMap<Integer, String>(column.Texts);
+                column.Shared = false;
+            }
+        }
+
+        return _numRows++;
+    }
+
+    /** Removes all values from the specified row and makes the row available for reuse.
+     *
+     * @param row Row index
+     */
+    public synchronized void RemoveRow(int row)
+    {
+        Materialize();
+        ClearRow(row);
+        _freeRows.add(row);
+    }
+
+    /** Removes all values from the specified row.
+     *
+     * @param row Row index
+     */
+    public synchronized void ClearRow(int row)
+    {
+        Materialize();
+
+        for (int i = 0; i < _columns.size(); i++)
+            ClearValue(i, row);
+    }
+
+    /** Gets a data instance that reads and writes its values directly from/to the specified row of this matrix.
+     *
+     * @param row Row index
+     * @param id Data instance ID
+     * @return Data instance backed by the row
+     */
+    public DataValues GetRow(int row, String id)
+    {
+        return new RowValues(id, row);
+    }
+
+    /** Indicates which row of this matrix backs the specified data instance.
+     *
+     * @param instance Query data instance
+     * @return Row index or -1 if the instance is not backed by this matrix
+     */
+    public int GetRowIndex(DataValues instance)
+    {
+        if (instance instanceof RowValues && ((RowValues)instance).GetMatrix() == this)
+            return ((RowValues)instance).Row;
+
+        return -1;
+    }
+
+    /** Gets the column index for the specified data point.
+     *
+     * @param name Data point name
+     * @return Column index or -1 if the data point has no column
+     */
+    public int GetColumnIndex(String name)
+    {
+        Integer index = _columnIndices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /** Gets the names of all data points that have at least one non-missing value.
+     *
+     * @return List of data point names
+     */
+    public ArrayList<String> GetColumnNames()
+    {
+        ArrayList<String> names = new ArrayList<String>();
+
+        for (Column column : _columns)
+            if (column.NumNotMissing > 0)
+                names.add(column.Name);
+
+        return names;
+    }
+
+    /** Indicates the number of columns in this matrix, including any columns that have no non-missing values.
+     *
+     * @return Number of columns
+     */
+    public int GetNumColumns()
+    {
+        return _columns.size();
+    }
+
+    /** Gets the data point name for the specified column.
+     *
+     * @param columnIndex Column index
+     * @return Data point name
+     */
+    public String GetColumnName(int columnIndex)
+    {
+        return _columns.get(columnIndex).Name;
+    }
+
+    /** Indicates how values are encoded in the specified column.
+     *
+     * @param columnIndex Column index
+     * @return Column type
+     */
+    public ColumnType GetColumnType(int columnIndex)
+    {
+        return _columns.get(columnIndex).Type;
+    }
+
+    /** Indicates how values are encoded for the specified data point.
+     *
+     * @param name Data point name
+     * @return Column type
+     */
+    public ColumnType GetColumnType(String name)
+    {
+        int index = GetColumnIndex(name);
+        return index == -1 ? ColumnType.Untyped : _columns.get(index).Type;
+    }
+
+    /** Gets the dictionary that is used to encode non-numeric values in this matrix.
+     *
+     * @return Nominal-value dictionary
+     */
+    public ValueDictionary GetNominalValues()
+    {
+        return _nominalValues;
+    }
+
+    /** Gets the value at the specified position.
+     *
+     * @param row Row index
+     * @param name Data point name
+     * @return Data value or null if the value is missing
+     */
+    public String GetValue(int row, String name)
+    {
+        int index = GetColumnIndex(name);
+        return index == -1 ? null : GetValue(row, index);
+    }
+
+    /** Gets the value at the specified position.
+     *
+     * @param row Row index
+     * @param columnIndex Column index
+     * @return Data value or null if the value is missing
+     */
+    public String GetValue(int row, int columnIndex)
+    {
+        Column column = _columns.get(columnIndex);
+        row = Map(row);
+
+        if (Double.isNaN(column.Values[row]))
+            return null;
+
+        return Decode(column, row);
+    }
+
+    /** Indicates whether the original text of a numeric value differs from the text that would be produced by formatting the number (in which case the original text is stored separately).
+     *
+     * @param row Row index
+     * @param columnIndex Column index
+     * @return Whether the original text is stored separately
+     */
+    public boolean HasText(int row, int columnIndex)
+    {
+        HashMap<Integer, String> texts = _columns.get(columnIndex).Texts;
+        return texts != null && texts.containsKey(Map(row));
+    }
+
+    /** Gets the value at the specified position as it is encoded in the matrix. For nominal columns, this is the code from the nominal-value dictionary.
+     *
+     * @param row Row index
+     * @param columnIndex Column index
+     * @return Encoded value or NaN if the value is missing
+     */
+    public double GetEncodedValue(int row, int columnIndex)
+    {
+        return _columns.get(columnIndex).Values[Map(row)];
+    }
+
+    /** Gets the value at the specified position as a number. For numeric columns, no parsing is necessary.
+     *
+     * @param row Row index
+     * @param name Data point name
+     * @return Numeric value or NaN if the value is missing
+     */
+    public double GetNumericValue(int row, String name)
+    {
+        int index = GetColumnIndex(name);
+        if (index == -1)
+            return Double.NaN;
+
+        Column column = _columns.get(index);
+        double value = column.Values[Map(row)];
+
+        if (column.Type == ColumnType.Nominal && !Double.isNaN(value))
+            return Double.parseDouble(_nominalValues.GetValue((int)value));
+
+        return value;
+    }
+
+    /** Indicates whether a non-missing value is stored at the specified position.
+     *
+     * @param row Row index
+     * @param name Data point name
+     * @return Whether a value is stored
+     */
+    public boolean HasValue(int row, String name)
+    {
+        int index = GetColumnIndex(name);
+        return index > -1 && !Double.isNaN(_columns.get(index).Values[Map(row)]);
+    }
+
+    /** Gets the names of the data points that have a value in the specified row.
+     *
+     * @param row Row index
+     * @return List of data point names
+     */
+    public ArrayList<String> GetRowNames(int row)
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        row = Map(row);
+
+        for (Column column : _columns)
+            if (!Double.isNaN(column.Values[row]))
+                names.add(column.Name);
+
+        return names;
+    }
+
+    /** Gets the non-missing values in the specified row.
+     *
+     * @param row Row index
+     * @return List of data values
+     */
+    public ArrayList<String> GetRowValues(int row)
+    {
+        ArrayList<String> values = new ArrayList<String>();
+        row = Map(row);
+
+        for (Column column : _columns)
+            if (!Double.isNaN(column.Values[row]))
+                values.add(Decode(column, row));
+
+        return values;
+    }
+
+    /** Indicates how many non-missing values are stored in the specified row.
+     *
+     * @param row Row index
+     * @return Number of non-missing values
+     */
+    public int GetRowNumValues(int row)
+    {
+        int count = 0;
+        row = Map(row);
+
+        for (Column column : _columns)
+            if (!Double.isNaN(column.Values[row]))
+                count++;
+
+        return count;
+    }
+
+    /** Counts the non-missing values in a column for the specified rows. Because missing values are stored as NaN, no values need to be decoded.
+     *
+     * @param columnIndex Column index
+     * @param rows Row indices
+     * @param rowCounts If not null, the count for each of the specified rows is incremented when the row has a value in this column
+     * @return Number of non-missing values
+     */
+    public int CountValues(int columnIndex, int[] rows, int[] rowCounts)
+    {
+        double[] values = _columns.get(columnIndex).Values;
+        int count = 0;
+
+        for (int i = 0; i < rows.length; i++)
+            if (!Double.isNaN(values[Map(rows[i])]))
+            {
+                count++;
+
+                if (rowCounts != null)
+                    rowCounts[i]++;
+            }
+
+        return count;
+    }
+
+    /** Stores a value at the specified position. A column is added if the data point does not yet have one. Missing values cause any existing value to be cleared.
+     *
+     * @param row Row index
+     * @param name Data point name
+     * @param value Data value
+     */
+    public synchronized void SetValue(int row, String name, String value)
+    {
+        int index = GetColumnIndex(name);
+
+        if (Utilities.IsMissing(value))
+        {
+            if (index > -1)
+                ClearValue(index, row);
+            return;
+        }
+
+        Materialize();
+
+        if (index == -1)
+            index = AddColumn(name);
+
+        Column column = GetWritableColumn(index);
+        double encoded = Encode(column, value);
+
+        if (Double.isNaN(column.Values[row]))
+            column.NumNotMissing++;
+
+        column.Values[row] = encoded;
+
+        if (column.Type != ColumnType.Nominal && !Format(encoded, column.Type).equals(value))
+            column.SetText(row, value);
+        else
+            column.SetText(row, null);
+    }
+
+    /** Clears the value at the specified position.
+     *
+     * @param row Row index
+     * @param name Data point name
+     */
+    public synchronized void ClearValue(int row, String name)
+    {
+        int index = GetColumnIndex(name);
+
+        if (index > -1)
+            ClearValue(index, row);
+    }
+
+    /** Appends rows of another matrix to this matrix. Where the columns of both matrices are encoded the same way, values are copied without being converted to text.
+     *
+     * @param source Matrix whose rows should be appended
+     * @param sourceRows Indices of the rows in the source matrix that should be appended
+     * @return Indices of the new rows in this matrix (in the same order as the source rows)
+     */
+    public synchronized int[] AppendRows(DataMatrix source, int[] sourceRows)
+    {
+        Materialize();
+
+        int[] rows = new int[sourceRows.length];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = AddRow();
+
+        HashMap<Integer, Integer> nominalCodes = new HashMap<Integer, Integer>();
+
+        for (Column sourceColumn : source._columns)
+        {
+            if (sourceColumn.NumNotMissing == 0)
+                continue;
+
+            int index = GetColumnIndex(sourceColumn.Name);
+            if (index == -1)
+                index = AddColumn(sourceColumn.Name);
+
+            Column column = GetWritableColumn(index);
+            if (column.Type == ColumnType.Untyped)
+                column.Type = sourceColumn.Type;
+
+            for (int i = 0; i < rows.length; i++)
+            {
+                double value = sourceColumn.Values[source.Map(sourceRows[i])];
+
+                if (Double.isNaN(value))
+                    continue;
+
+                if (column.Type != sourceColumn.Type)
+                {
+                    SetValue(rows[i], column.Name, source.Decode(sourceColumn, source.Map(sourceRows[i])));
+                    continue;
+                }
+
+                if (column.Type == ColumnType.Nominal && _nominalValues != source._nominalValues)
+                {
+                    Integer code = nominalCodes.get((int)value);
+
+                    if (code == null)
+                    {
+                        code = _nominalValues.GetCode(source._nominalValues.GetValue((int)value));
+                        nominalCodes.put((int)value, code);
+                    }
+
+                    value = code;
+                }
+
+                if (Double.isNaN(column.Values[rows[i]]))
+                    column.NumNotMissing++;
+
+                column.Values[rows[i]] = value;
+
+                if (sourceColumn.Texts != null)
+                    column.SetText(rows[i], sourceColumn.Texts.get(source.Map(sourceRows[i])));
+            }
+        }
+
+        return rows;
+    }
+
+    /** Adds a column whose values have already been encoded (for example, when they are read from a file). Nominal values must be codes from this matrix's nominal-value dictionary.
+     *
+     * @param name Data point name
+     * @param type Column type
+     * @param values Encoded values for each row (NaN indicates a missing value)
+     * @param texts Original text of numeric values that do not match their formatted numbers, by row index (may be null)
+     * @throws Exception
+     */
+    public synchronized void AddEncodedColumn(String name, ColumnType type, double[] values, HashMap<Integer, String> texts) throws Exception
+    {
+        if (GetColumnIndex(name) > -1)
+            throw new Exception("A column already exists for " + name + ".");
+        if (values.length != _numRows)
+            throw new Exception("The number of values for " + name + " (" + values.length + ") does not match the number of rows (" + _numRows + ").");
+
+        Materialize();
+
+        Column column = _columns.get(AddColumn(name));
+        column.Type = type;
+        System.arraycopy(values, 0, column.Values, 0, values.length);
+
+        for (double value : values)
+            if (!Double.isNaN(value))
+                column.NumNotMissing++;
+
+        if (texts != null && texts.size() > 0)
+            column.Texts = new HashMap<Integer, String>(texts);
+    }
+
+    /** Gets the values of a numeric column for the specified rows.
+     *
+     * @param columnIndex Column index
+     * @param rows Row indices
+     * @return Values for each of the specified rows (NaN indicates a missing value), or null if the column contains non-numeric values
+     */
+    public synchronized double[] GetNumericColumn(int columnIndex, int[] rows)
+    {
+        Column column = _columns.get(columnIndex);
+
+        if (column.Type == ColumnType.Nominal)
+            return null;
+
+        double[] values = new double[rows.length];
+        for (int i = 0; i < rows.length; i++)
+            values[i] = column.Values[Map(rows[i])];
+
+        return values;
+    }
+
+    /** Replaces the values of a numeric column for the specified rows. The column is stored as decimal values unless it was integral and all of the new values are integers.
+     *
+     * @param columnIndex Column index
+     * @param rows Row indices
+     * @param values New values for each of the specified rows (NaN indicates a missing value)
+     * @throws Exception
+     */
+    public synchronized void SetNumericColumn(int columnIndex, int[] rows, double[] values) throws Exception
+    {
+        if (values.length != rows.length)
+            throw new Exception("The number of values for " + GetColumnName(columnIndex) + " (" + values.length + ") does not match the number of rows (" + rows.length + ").");
+        if (_columns.get(columnIndex).Type == ColumnType.Nominal)
+            throw new Exception("Numeric values cannot be stored in nominal column " + GetColumnName(columnIndex) + ".");
+
+        Materialize();
+
+        Column column = GetWritableColumn(columnIndex);
+
+        boolean isIntegral = column.Type != ColumnType.Decimal;
+        for (int i = 0; i < rows.length; i++)
+        {
+            double value = values[i];
+
+            if (!Double.isNaN(value) && (value != Math.rint(value) || Math.abs(value) >= 1e15))
+                isIntegral = false;
+
+            if (Double.isNaN(column.Values[rows[i]]) != Double.isNaN(value))
+                column.NumNotMissing += Double.isNaN(value) ? -1 : 1;
+
+            column.Values[rows[i]] = value;
+            column.SetText(rows[i], null);
+        }
+
+        if (column.NumNotMissing > 0)
+            column.Type = isIntegral ? ColumnType.Integral : ColumnType.Decimal;
+    }
+
+    /** Removes the columns for the specified data points.
+     *
+     * @param names Data point names
+     */
+    public synchronized void RemoveColumns(Collection<String> names)
+    {
+        HashSet<String> toRemove = new HashSet<String>(names);
+        ArrayList<Column> columns = new ArrayList<Column>();
+
+        for (Column column : _columns)
+            if (!toRemove.contains(column.Name))
+                columns.add(column);
+
+        if (columns.size() == _columns.size())
+            return;
+
+        _columns = columns;
+        _columnIndices = new HashMap<String, Integer>();
+
+        for (int i = 0; i < _columns.size(); i++)
+            _columnIndices.put(_columns.get(i).Name, i);
+    }
+
+    /** Changes the name of a data point. If there is already a column with the new name, any values in the old column overwrite the corresponding values in the new column.
+     *
+     * @param fromName Current data point name
+     * @param toName New data point name
+     */
+    public synchronized void RenameColumn(String fromName, String toName)
+    {
+        int fromIndex = GetColumnIndex(fromName);
+
+        if (fromIndex == -1 || fromName.equals(toName))
+            return;
+
+        if (GetColumnIndex(toName) == -1)
+        {
+            // Column objects are never shared between matrices, so the name can be changed in place
+            _columns.get(fromIndex).Name = toName;
+            _columnIndices.remove(fromName);
+            _columnIndices.put(toName, fromIndex);
+            return;
+        }
+
+        for (int row = 0; row < _numRows; row++)
+        {
+            String value = GetValue(row, fromIndex);
+
+            if (value != null)
+                SetValue(row, toName, value);
+        }
+
+        RemoveColumns(Lists.CreateStringList(fromName));
+    }
+
+    /** Creates a view of the specified rows and columns of this matrix. The view shares the arrays (and the nominal-value dictionary) of this matrix, so no values are copied when it is created. If either matrix is modified later, the affected arrays are copied first, so changes to one never affect the other.
+     *
+     * @param rows Indices of the rows to include (row i in the view corresponds to the i-th index in this list)
+     * @param names Names of the data points to include
+     * @return View of this matrix
+     */
+    public synchronized DataMatrix CreateView(ArrayList<Integer> rows, ArrayList<String> names)
+    {
+        DataMatrix view = new DataMatrix(_nominalValues);
+        view._rowMap = new int[rows.size()];
+        view._numRows = rows.size();
+        view._capacity = rows.size();
+
+        for (int i = 0; i < rows.size(); i++)
+            view._rowMap[i] = Map(rows.get(i));
+
+        for (String name : names)
+        {
+            int index = GetColumnIndex(name);
+
+            if (index == -1 || view.GetColumnIndex(name) > -1)
+                continue;
+
+            Column column = _columns.get(index);
+            column.Shared = true;
+
+            Column viewColumn = new Column();
+            viewColumn.Name = name;
+            viewColumn.Type = column.Type;
+            viewColumn.Values = column.Values;
+            viewColumn.Texts = column.Texts;
+            viewColumn.Shared = true;
+
+            for (int row : view._rowMap)
+                if (!Double.isNaN(column.Values[row]))
+                    viewColumn.NumNotMissing++;
+
+            view._columns.add(viewColumn);
+            view._columnIndices.put(name, view._columns.size() - 1);
+        }
+
+        return view;
+    }
+
+    private int Map(int row)
+    {
+        return _rowMap == null ? row : _rowMap[row];
+    }
+
+    /** When this matrix is a view of another matrix, this method copies the values for its own rows into new arrays so the matrix can be modified. */
+    private void Materialize()
+    {
+        if (_rowMap == null)
+            return;
+
+        _capacity = Math.max(16, _numRows);
+
+        for (Column column : _columns)
+        {
+            double[] values = GrowValues(new double[0], _capacity);
+
+            for (int row = 0; row < _numRows; row++)
+                values[row] = column.Values[_rowMap[row]];
+
+            if (column.Texts != null)
+            {
+                HashMap<Integer, String> texts = new HashMap<Integer, String>();
+
+                for (int row = 0; row < _numRows; row++)
+                    if (column.Texts.containsKey(_rowMap[row]))
+                        texts.put(row, column.Texts.get(_rowMap[row]));
+
+                column.Texts = texts.size() == 0 ? null : texts;
+            }
+
+            column.Values = values;
+            column.Shared = false;
+        }
+
+        _rowMap = null;
+    }
+
+    private Column GetWritableColumn(int index)
+    {
+        Column column = _columns.get(index);
+
+        if (column.Shared)
+        {
+            column.Values = column.Values.clone();
+            if (column.Texts != null)
+                column.Texts = new HashMap<Integer, String>(column.Texts);
+            column.Shared = false;
+        }
+
+        return column;
+    }
+
+    private int AddColumn(String name)
+    {
+        Column column = new Column();
+        column.Name = name;
+        column.Values = GrowValues(new double[0], _capacity);
+
+        _columns.add(column);
+        _columnIndices.put(name, _columns.size() - 1);
+
+        return _columns.size() - 1;
+    }
+
+    private void ClearValue(int index, int row)
+    {
+        if (Double.isNaN(_columns.get(index).Values[Map(row)]))
+            return;
+
+        Materialize();
+
+        Column column = GetWritableColumn(index);
+        column.Values[row] = Double.NaN;
+        column.SetText(row, null);
+        column.NumNotMissing--;
+    }
+
+    private double Encode(Column column, String value)
+    {
+        if (column.Type != ColumnType.Nominal)
+        {
+            double number = ParseNumber(value);
+
+            // Numbers are stored as numbers even if their text does not match the formatted number (the text is then kept separately)
+            if (!Double.isNaN(number))
+            {
+                if (column.Type == ColumnType.Untyped)
+                    column.Type = Format(number, ColumnType.Decimal).equals(value) || Format(number, ColumnType.Integral).length() == 0 ? ColumnType.Decimal : ColumnType.Integral;
+
+                return number;
+            }
+
+            ConvertToNominal(column);
+        }
+
+        return _nominalValues.GetCode(value);
+    }
+
+    /** Converts an encoded value to text.
+     *
+     * @param column Column
+     * @param row Index of the row in the column's array of values (after mapping, for views)
+     * @return Data value
+     */
+    private String Decode(Column column, int row)
+    {
+        double value = column.Values[row];
+
+        if (column.Type == ColumnType.Nominal)
+            return _nominalValues.GetValue((int)value);
+
+        if (column.Texts != null)
+        {
+            String text = column.Texts.get(row);
+            if (text != null)
+                return text;
+        }
+
+        return Format(value, column.Type);
+    }
+
+    private void ConvertToNominal(Column column)
+    {
+        for (int row = 0; row < _numRows; row++)
+            if (!Double.isNaN(column.Values[row]))
+                column.Values[row] = _nominalValues.GetCode(Decode(column, row));
+
+        column.Texts = null;
+        column.Type = ColumnType.Nominal;
+    }
+
+    private static String Format(double number, ColumnType type)
+    {
+        if (type == ColumnType.Integral)
+        {
+            if (number != Math.rint(number) || Math.abs(number) >= 1e15)
+                return "";
+
+            return String.valueOf((long)number);
+        }
+
+        return String.valueOf(number);
+    }
+
+    private static double ParseNumber(String value)
+    {
+        if (value.length() == 0)
+            return Double.NaN;
+
+        char first = value.charAt(0);
+        if (!Character.isDigit(first) && first != '-' && first != '.')
+            return Double.NaN;
+
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException ex)
+        {
+            return Double.NaN;
+        }
+    }
+
+    private static double[] GrowValues(double[] values, int capacity)
+    {
+        double[] newValues = Arrays.copyOf(values, capacity);
+        Arrays.fill(newValues, values.length, capacity, Double.NaN);
+        return newValues;
+    }
+
+    private class Column
+    {
+        String Name;
+        ColumnType Type = ColumnType.Untyped;
+        double[] Values;
+        /** Original text of numeric values whose text does not match the formatted number, by row (null if there are none) */
+        HashMap<Integer, String> Texts = null;
+        int NumNotMissing = 0;
+        boolean Shared = false;
+
+        void SetText(int row, String text)
+        {
+            if (text != null)
+            {
+                if (Texts == null)
+                    Texts = new HashMap<Integer, String>();
+                Texts.put(row, text);
+            }
+            else if (Texts != null)
+            {
+                Texts.remove(row);
+                if (Texts.size() == 0)
+                    Texts = null;
+            }
+        }
+    }
+
+    /** This class exposes a single row of the matrix through the String-based DataValues API. */
+    private class RowValues extends DataValues
+    {
+        int Row;
+
+        RowValues(String id, int row)
+        {
+            super(id);
+            Row = row;
+        }
+
+        DataMatrix GetMatrix()
+        {
+            return DataMatrix.this;
+        }
+
+        @Override
+        public DataValues AddDataPoint(String name, String value)
+        {
+            if (!Utilities.IsMissing(value))
+                SetValue(Row, name, value);
+
+            return this;
+        }
+
+        @Override
+        public DataValues ClearDataPoints()
+        {
+            ClearRow(Row);
+            return this;
+        }
+
+        @Override
+        public DataValues Clone()
+        {
+            DataValues newObj = CopyStructure();
+
+            for (String name : GetRowNames(Row))
+                newObj.AddDataPoint(name, GetValue(Row, name));
+
+            return newObj;
+        }
+
+        @Override
+        public boolean HasDataPoint(String dataPointName)
+        {
+            return HasValue(Row, dataPointName);
+        }
+
+        @Override
+        public ArrayList<String> GetAllValues()
+        {
+            return GetRowValues(Row);
+        }
+
+        @Override
+        public ArrayList<String> GetDataPointNames()
+        {
+            return GetRowNames(Row);
+        }
+
+        @Override
+        public String GetDataPointValue(String name)
+        {
+            String value = GetValue(Row, name);
+            return value == null ? Settings.MISSING_VALUE_STRING : value;
+        }
+
+        @Override
+        public double GetDataPointNumericValue(String name)
+        {
+            return GetNumericValue(Row, name);
+        }
+
+        @Override
+        public int GetNumNotMissingValues()
+        {
+            return GetRowNumValues(Row);
+        }
+
+        @Override
+        public void RemoveDataPoint(String name)
+        {
+            ClearValue(Row, name);
+        }
+
+        @Override
+        public int Size()
+        {
+            return GetRowNumValues(Row);
+        }
+
+        @Override
+        public void UpdateDataPointName(String fromDataPointName, String toDataPointName)
+        {
+            String value = GetValue(Row, fromDataPointName);
+
+            if (value == null)
+                return;
+
+            ClearValue(Row, fromDataPointName);
+            SetValue(Row, toDataPointName, value);
+        }
+
+        @Override
+        public Iterator<String> iterator()
+        {
+            return GetRowNames(Row).iterator();
+        }
+    }
+}
@@ -60,10 +60,7 @@ public class DataValueMeta
      */
     public boolean IsNullValue(String value)
     {
-        ArrayList<String> nullValues = Lists.CreateStringList("null");
-        nullValues.addAll(NullValues);
-
-        return nullValues.contains(value);
+        return value.equals("null") || NullValues.contains(value);
     }
 
     @Override
@@ -56,7 +56,8 @@ public class DataValues implements Iterable<String>, Comparable
      */
     public void AddDataPoints(DataValues instance)
     {
-        AddDataPoints(instance._dataPoints);
+        for (String dataPointName : instance)
+            AddDataPoint(dataPointName, instance.GetDataPointValue(dataPointName));
     }
 
     /** Adds data points from a map that contains key/value pairs.
@@ -209,6 +210,17 @@ public class DataValues implements Iterable<String>, Comparable
         return value == null ? Settings.MISSING_VALUE_STRING : value;
     }
 
+    /** Gets the data point value for the specified data point as a number.
+     *
+     * @param name Data point name
+     * @return Numeric data point value or NaN if the value is missing
+     */
+    public double GetDataPointNumericValue(String name)
+    {
+        String value = GetDataPointValue(name);
+        return Utilities.IsMissing(value) ? Double.NaN : Double.parseDouble(value);
+    }
+
     /** Gets the data point values corresponding to the specified data point names.
      *
      * @param names Data point names
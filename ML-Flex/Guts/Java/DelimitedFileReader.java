@@ -0,0 +1,316 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** This class reads a delimited text file one row at a time. The file is read in large blocks, and the fields of each row are identified by their positions in the block, so no String objects are created unless a field value is requested. Files that have been compressed in the gzip format are decompressed as they are read. The values of a row are valid only until the next row is read.
+ *
+ * Rows are split the same way as by Files.ParseDelimitedFile: empty fields at the end of a row are ignored, except that a single empty field is included when the row ends with the delimiter. The delimiter is treated as literal text (not as a regular expression).
+ * @author Stephen Piccolo
+ */
+public class DelimitedFileReader
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private InputStream _stream;
+    private ReadableByteChannel _channel;
+    private ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private int _position = 0;
+    private int _limit = 0;
+    private boolean _endOfFile = false;
+
+    private byte[] _delimiter;
+    private byte[] _commentChar;
+    private int _numLinesToSkip;
+    private int _numLinesRead = 0;
+
+    private int _numFields = 0;
+    private int[] _fieldStarts = new int[16];
+    private int[] _fieldEnds = new int[16];
+
+    /** Constructor for tab-delimited files, in which lines starting with # are ignored.
+     *
+     * @param filePath Absolute file path
+     * @throws Exception
+     */
+    public DelimitedFileReader(String filePath) throws Exception
+    {
+        this(filePath, "\t", "#", 0);
+    }
+
+    /** Constructor
+     *
+     * @param filePath Absolute file path
+     * @param delimiter Delimiter
+     * @param commentChar Comment character (lines starting with this character will be ignored)
+     * @param numLinesToSkip Number of lines to skip at the beginning of the file
+     * @throws Exception
+     */
+    public DelimitedFileReader(String filePath, String delimiter, String commentChar, int numLinesToSkip) throws Exception
+    {
+        if (!Files.FileExists(filePath))
+            throw new Exception("No file exists at " + filePath);
+        if (delimiter.length() == 0)
+            throw new Exception("No delimiter was specified for " + filePath + ".");
+
+        _stream = Files.OpenInputStream(filePath);
+        _channel = Channels.newChannel(_stream);
+        _delimiter = delimiter.getBytes(UTF8);
+        _commentChar = commentChar == null ? null : commentChar.getBytes(UTF8);
+        _numLinesToSkip = numLinesToSkip;
+    }
+
+    /** Moves to the next row in the file (comment lines and skipped lines are ignored).
+     *
+     * @return Whether a row was found (false indicates the end of the file)
+     * @throws Exception
+     */
+    public boolean NextRow() throws Exception
+    {
+        byte[] bytes = _buffer.array();
+
+        while (true)
+        {
+            int lineEnd = IndexOf((byte)'\n', _position, _limit);
+
+            if (lineEnd == -1)
+            {
+                if (!_endOfFile)
+                {
+                    Fill();
+                    bytes = _buffer.array();
+                    continue;
+                }
+
+                if (_position == _limit)
+                    return false;
+
+                lineEnd = _limit;
+            }
+
+            int lineStart = _position;
+            _position = Math.min(lineEnd + 1, _limit);
+            _numLinesRead++;
+
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r')
+                lineEnd--;
+
+            if (_numLinesRead <= _numLinesToSkip || (_commentChar != null && StartsWith(lineStart, lineEnd, _commentChar)))
+                continue;
+
+            Tokenize(lineStart, lineEnd);
+            return true;
+        }
+    }
+
+    /** Indicates the number of fields in the current row.
+     *
+     * @return Number of fields
+     */
+    public int GetNumFields()
+    {
+        return _numFields;
+    }
+
+    /** Gets the value of a field in the current row.
+     *
+     * @param index Field index
+     * @return Field value
+     */
+    public String GetField(int index)
+    {
+        CheckIndex(index);
+        return new String(_buffer.array(), _fieldStarts[index], _fieldEnds[index] - _fieldStarts[index], UTF8);
+    }
+
+    /** Indicates whether a field in the current row has the specified value. No String object is created for the field, unless the value contains non-ASCII characters.
+     *
+     * @param index Field index
+     * @param value Query value
+     * @return Whether the field has the specified value
+     */
+    public boolean FieldEquals(int index, String value)
+    {
+        CheckIndex(index);
+
+        byte[] bytes = _buffer.array();
+        int start = _fieldStarts[index];
+        int length = _fieldEnds[index] - start;
+
+        if (length != value.length())
+            return GetField(index).equals(value);
+
+        for (int i = 0; i < length; i++)
+        {
+            if (bytes[start + i] < 0 || value.charAt(i) > 127)
+                return GetField(index).equals(value);
+
+            if (bytes[start + i] != value.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /** Gets all field values in the current row.
+     *
+     * @return Field values
+     */
+    public ArrayList<String> GetFields()
+    {
+        ArrayList<String> fields = new ArrayList<String>(_numFields);
+
+        for (int i = 0; i < _numFields; i++)
+            fields.add(GetField(i));
+
+        return fields;
+    }
+
+    /** Closes the file.
+     *
+     * @throws Exception
+     */
+    public void Close() throws Exception
+    {
+        _channel.close();
+        _stream.close();
+    }
+
+    private void Tokenize(int lineStart, int lineEnd)
+    {
+        _numFields = 0;
+        int fieldStart = lineStart;
+
+        while (true)
+        {
+            int fieldEnd = IndexOf(_delimiter, fieldStart, lineEnd);
+
+            if (_numFields == _fieldStarts.length)
+            {
+                _fieldStarts = Arrays.copyOf(_fieldStarts, _numFields * 2);
+                _fieldEnds = Arrays.copyOf(_fieldEnds, _numFields * 2);
+            }
+
+            _fieldStarts[_numFields] = fieldStart;
+            _fieldEnds[_numFields] = fieldEnd == -1 ? lineEnd : fieldEnd;
+            _numFields++;
+
+            if (fieldEnd == -1)
+                break;
+
+            fieldStart = fieldEnd + _delimiter.length;
+        }
+
+        // This mimics String.split, which removes empty fields at the end (unless the line contains no delimiter)...
+        if (_numFields > 1)
+        {
+            boolean endsWithDelimiter = lineEnd - lineStart >= _delimiter.length && StartsWith(lineEnd - _delimiter.length, lineEnd, _delimiter);
+
+            while (_numFields > 0 && _fieldStarts[_numFields - 1] == _fieldEnds[_numFields - 1])
+                _numFields--;
+
+            // ...and then a single empty field is added when the line ends with the delimiter
+            if (endsWithDelimiter)
+            {
+                _fieldStarts[_numFields] = lineEnd;
+                _fieldEnds[_numFields] = lineEnd;
+                _numFields++;
+            }
+        }
+    }
+
+    private void Fill() throws Exception
+    {
+        // Any partial line is moved to the beginning of the buffer, which is enlarged if the line does not fit
+        byte[] bytes = _buffer.array();
+        int remaining = _limit - _position;
+
+        if (remaining == bytes.length)
+        {
+            ByteBuffer newBuffer = ByteBuffer.allocate(bytes.length * 2);
+            System.arraycopy(bytes, _position, newBuffer.array(), 0, remaining);
+            _buffer = newBuffer;
+        }
+        else
+            System.arraycopy(bytes, _position, bytes, 0, remaining);
+
+        _position = 0;
+        _limit = remaining;
+
+        _buffer.clear();
+        _buffer.position(_limit);
+
+        int numRead = _channel.read(_buffer);
+
+        if (numRead == -1)
+            _endOfFile = true;
+        else
+            _limit += numRead;
+    }
+
+    private int IndexOf(byte b, int start, int end)
+    {
+        byte[] bytes = _buffer.array();
+
+        for (int i = start; i < end; i++)
+            if (bytes[i] == b)
+                return i;
+
+        return -1;
+    }
+
+    private int IndexOf(byte[] pattern, int start, int end)
+    {
+        if (pattern.length == 1)
+            return IndexOf(pattern[0], start, end);
+
+        for (int i = start; i <= end - pattern.length; i++)
+            if (StartsWith(i, end, pattern))
+                return i;
+
+        return -1;
+    }
+
+    private boolean StartsWith(int start, int end, byte[] prefix)
+    {
+        if (end - start < prefix.length)
+            return false;
+
+        byte[] bytes = _buffer.array();
+
+        for (int i = 0; i < prefix.length; i++)
+            if (bytes[start + i] != prefix[i])
+                return false;
+
+        return true;
+    }
+
+    private void CheckIndex(int index)
+    {
+        if (index < 0 || index >= _numFields)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Number of fields: " + _numFields);
+    }
+}
@@ -18,7 +18,7 @@
 package mlflex;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.BitSet;
 
 /** This class stores a list of CombinedPredictionInfo objects that can be used for making ensemble/combined predictions.
  * @author Stephen Piccolo
@@ -59,12 +59,13 @@ public class EnsemblePredictionInfos
      */
     public ArrayList<String> GetInnerInstanceIDs()
     {
-        HashSet<String> ids = new HashSet<String>();
+        BitSet ids = new BitSet();
 
         for (EnsemblePredictionInfo info : Infos)
-            ids.addAll(info.InnerPredictionResults.Predictions.GetInstanceIDs());
+            for (Prediction prediction : info.InnerPredictionResults.Predictions)
+                ids.set(prediction.InstanceIndex);
 
-        return new ArrayList<String>(ids);
+        return InstanceIdRegistry.ToIDs(ids);
     }
 
 //    public String GetOuterInstanceID() throws Exception
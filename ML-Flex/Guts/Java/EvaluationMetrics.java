@@ -40,6 +40,28 @@ public class EvaluationMetrics implements ITest
         //SurvivalsList sList = new SurvivalsList(survivalsGroup1, survivalsGroup2);
         //CalculateLogRankStatisticMartinBland(sList);
         //CalculateLogRankStatisticTwoGroups(sList);
+
+        // The expected AUC values are those that Weka's ThresholdCurve gives for the same scores
+        int[] twoClasses = {0, 0, 1, 1};
+        CheckAreaUnderRoc("perfect ranking", 1.0, CalculateAreaUnderRoc(new double[] {0.1, 0.2, 0.8, 0.9}, twoClasses, 1));
+        CheckAreaUnderRoc("inverted ranking", 0.0, CalculateAreaUnderRoc(new double[] {0.9, 0.8, 0.2, 0.1}, twoClasses, 1));
+        CheckAreaUnderRoc("tied scores", 0.875, CalculateAreaUnderRoc(new double[] {0.3, 0.6, 0.6, 0.9}, twoClasses, 1));
+        CheckAreaUnderRoc("all scores tied", 0.5, CalculateAreaUnderRoc(new double[] {0.5, 0.5, 0.5, 0.5}, twoClasses, 1));
+        CheckAreaUnderRoc("no positive instances", Double.NaN, CalculateAreaUnderRoc(new double[] {0.1, 0.5, 0.9}, new int[] {0, 0, 0}, 1));
+
+        // Three classes with 3, 2 and 2 instances, which have AUCs of 11/12, 0.85 and 0.85
+        double[][] threeClassProbabilities = {{0.7, 0.4, 0.3, 0.1, 0.2, 0.5, 0.6}, {0.2, 0.4, 0.5, 0.3, 0.2, 0.1, 0.3}, {0.1, 0.2, 0.2, 0.6, 0.6, 0.4, 0.1}};
+        CheckAreaUnderRoc("three classes", (3 * 11.0 / 12.0 + 2 * 0.85 + 2 * 0.85) / 7, CalculateWeightedAreaUnderRoc(threeClassProbabilities, new int[] {0, 0, 1, 1, 2, 2, 0}));
+
+        // The third class has no instances, so its AUC is skipped; the other two classes have AUCs of 1.0 and 0.875
+        double[][] missingClassProbabilities = {{0.6, 0.2, 0.5, 0.3}, {0.3, 0.5, 0.2, 0.3}, {0.1, 0.3, 0.3, 0.4}};
+        CheckAreaUnderRoc("class with no instances", (2 * 1.0 + 2 * 0.875) / 4, CalculateWeightedAreaUnderRoc(missingClassProbabilities, new int[] {0, 1, 0, 1}));
+    }
+
+    private static void CheckAreaUnderRoc(String description, double expected, double actual) throws Exception
+    {
+        if (Double.isNaN(expected) ? !Double.isNaN(actual) : Math.abs(expected - actual) > 1e-12)
+            throw new Exception("The AUC for " + description + " was " + actual + " but should have been " + expected + ".");
     }
 
     /** Calculates the log-rank statistic for two or more survival groups.
@@ -129,6 +151,155 @@ public class EvaluationMetrics implements ITest
         return chiSquareP;
     }
 
+    /** This method calculates the area under the receiver operating characteristic curve (AUC) for a set of predictions and supports classification of more than two classes. An AUC is calculated for each class (that class versus all others), and these values are weighted by the number of actual instances in each class. It gives the same results as Weka's ThresholdCurve class but sorts the predictions only once per class.
+     *
+     * @param predictions Predictions that have been made
+     * @return Area under the curve, weighted by the proportion of instances for each class
+     * @throws Exception
+     */
+    public static double CalculateWeightedAreaUnderRoc(Predictions predictions) throws Exception
+    {
+        ArrayList<String> uniqueActualClasses = predictions.GetUniqueActualClasses();
+
+        if (uniqueActualClasses.size() == 0)
+            return Double.NaN;
+
+        if (predictions.Size() == 1)
+        {
+            if (predictions.Get(0).WasCorrect())
+                return 1.0;
+
+            return 0.5;
+        }
+
+        if (uniqueActualClasses.size() == 1)
+            return 0.5;
+
+        ArrayList<String> dependentVariableClasses = Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues();
+
+        int numPredictions = predictions.Size();
+        int numClasses = dependentVariableClasses.size();
+
+        int[] actualClassIndices = new int[numPredictions];
+        double[][] classProbabilities = new double[numClasses][numPredictions];
+
+        for (int i = 0; i < numPredictions; i++)
+        {
+            Prediction prediction = predictions.Get(i);
+
+            actualClassIndices[i] = dependentVariableClasses.indexOf(prediction.DependentVariableValue);
+
+            for (int j = 0; j < numClasses; j++)
+                classProbabilities[j][i] = prediction.ClassProbabilities.get(j);
+        }
+
+        return CalculateWeightedAreaUnderRoc(classProbabilities, actualClassIndices);
+    }
+
+    /** This method calculates the area under the receiver operating characteristic curve (AUC) for each class and returns the average, weighted by the number of instances that actually belong to each class. Classes for which the AUC cannot be calculated (because no instances, or all instances, belong to them) are skipped, as in Weka.
+     *
+     * @param classProbabilities Probability that each instance belongs to each class (indexed by class and then by instance)
+     * @param actualClassIndices Index of the actual class of each instance
+     * @return Area under the curve, weighted by the proportion of instances for each class
+     */
+    public static double CalculateWeightedAreaUnderRoc(double[][] classProbabilities, int[] actualClassIndices)
+    {
+        double[] classCounts = new double[classProbabilities.length];
+        for (int actualClassIndex : actualClassIndices)
+            if (actualClassIndex >= 0)
+                classCounts[actualClassIndex]++;
+
+        double aucTotal = 0;
+
+        for (int i = 0; i < classProbabilities.length; i++)
+        {
+            double auc = CalculateAreaUnderRoc(classProbabilities[i], actualClassIndices, i);
+
+            if (!Double.isNaN(auc))
+                aucTotal += (auc * classCounts[i]);
+        }
+
+        return aucTotal / actualClassIndices.length;
+    }
+
+    /** This method calculates the area under the receiver operating characteristic curve (AUC) for a single class, using the rank-sum (Mann-Whitney) approach. When a positive and a negative instance have the same score, the pair counts as half of a correctly ordered pair.
+     *
+     * @param scores Score (for example, probability) that each instance belongs to the class
+     * @param actualClassIndices Index of the actual class of each instance
+     * @param classIndex Index of the class that is treated as positive
+     * @return Area under the curve (NaN if there are no positive or no negative instances)
+     */
+    public static double CalculateAreaUnderRoc(double[] scores, int[] actualClassIndices, int classIndex)
+    {
+        int[] order = SortIndices(scores);
+
+        double area = 0.0;
+        double cumulativeNegatives = 0.0;
+        double totalPositives = 0.0;
+        double totalNegatives = 0.0;
+
+        // Instances with tied scores are processed as a group
+        int groupStart = 0;
+        while (groupStart < order.length)
+        {
+            int groupEnd = groupStart;
+            double groupPositives = 0.0;
+            double groupNegatives = 0.0;
+
+            while (groupEnd < order.length && scores[order[groupEnd]] == scores[order[groupStart]])
+            {
+                if (actualClassIndices[order[groupEnd]] == classIndex)
+                    groupPositives++;
+                else
+                    groupNegatives++;
+
+                groupEnd++;
+            }
+
+            area += groupPositives * (cumulativeNegatives + (0.5 * groupNegatives));
+            cumulativeNegatives += groupNegatives;
+            totalPositives += groupPositives;
+            totalNegatives += groupNegatives;
+
+            groupStart = groupEnd;
+        }
+
+        return area / (totalNegatives * totalPositives);
+    }
+
+    /** Sorts the indices of an array in ascending order of the corresponding values (a stable merge sort, so no objects need to be created for each value). */
+    private static int[] SortIndices(double[] values)
+    {
+        int[] indices = new int[values.length];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = i;
+
+        int[] buffer = new int[values.length];
+
+        for (int width = 1; width < indices.length; width *= 2)
+        {
+            for (int left = 0; left < indices.length; left += 2 * width)
+            {
+                int middle = Math.min(left + width, indices.length);
+                int right = Math.min(left + 2 * width, indices.length);
+                int i = left, j = middle, k = left;
+
+                while (i < middle && j < right)
+                    buffer[k++] = values[indices[j]] < values[indices[i]] ? indices[j++] : indices[i++];
+                while (i < middle)
+                    buffer[k++] = indices[i++];
+                while (j < right)
+                    buffer[k++] = indices[j++];
+            }
+
+            int[] temp = indices;
+            indices = buffer;
+            buffer = temp;
+        }
+
+        return indices;
+    }
+
 
     //Methods for Multi-Category Cancer Diagnosis from Gene
 //From: Expression Data: A Comprehensive Evaluation to Inform Decision Support System Development.?
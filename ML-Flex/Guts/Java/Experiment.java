@@ -19,6 +19,8 @@ package mlflex;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 //  TODO:
@@ -78,13 +80,9 @@ public class Experiment
                 SaveStatistics();
             }
 
-            // Perform feature selection
-            SelectFeatures();
-
-            // Classify (for individual learners and for ensemble learners)
+            // Perform feature selection and classify (for individual learners and for ensemble learners). Each task starts as soon as the tasks it depends on have finished.
             ArrayList<ModelSelector> modelSelectors = ModelSelector.GetAllModelSelectors();
-            MakePredictions(modelSelectors);
-            MakeEnsemblePredictions(modelSelectors);
+            SelectFeaturesAndMakePredictions(modelSelectors);
 
             // Calculate and save results
             SavePredictionResults(modelSelectors);
@@ -219,47 +217,113 @@ public class Experiment
         taskHandler.ExecuteWithRetries("save statistics");
     }
 
-    private void SelectFeatures() throws Exception
+    private void SelectFeaturesAndMakePredictions(ArrayList<ModelSelector> modelSelectors) throws Exception
     {
+        TaskGraph taskGraph = new TaskGraph();
+
+        // Feature selection for a given fold does not depend on any other task
+        HashMap<String, TaskGraph.Task> featureSelectionTasks = new HashMap<String, TaskGraph.Task>();
+
         for (AbstractDataProcessor processor : Utilities.ProcessorVault.IndependentVariableDataProcessors)
             for (FeatureSelectionAlgorithm fsAlgorithm : Utilities.Config.GetFeatureSelectionAlgorithms())
                 if (!fsAlgorithm.IsNone() && !fsAlgorithm.IsPriorKnowledge())
                     for (int outerFold : Utilities.InstanceVault.GetCrossValidationAssignments().GetFoldsWithTestData(processor))
-                        new FeatureEvaluator(processor, fsAlgorithm, outerFold).SelectFeatures();
-    }
+                    {
+                        FeatureEvaluator featureEvaluator = new FeatureEvaluator(processor, fsAlgorithm, outerFold);
 
-    private void MakePredictions(ArrayList<ModelSelector> modelSelectors) throws Exception
-    {
-        for (ModelSelector selector : modelSelectors)
-            selector.SavePredictions();
-    }
+                        for (int innerFold : featureEvaluator.GetInnerFolds())
+                            featureSelectionTasks.put(GetFoldTaskKey(processor, fsAlgorithm, outerFold, innerFold), taskGraph.Add("select features for " + featureEvaluator.GetDescription() + ", outerFold=" + outerFold + ", innerFold=" + innerFold, featureEvaluator.GetInnerFoldTask(innerFold), new ArrayList<TaskGraph.Task>()));
 
-    private void MakeEnsemblePredictions(final ArrayList<ModelSelector> modelSelectors) throws Exception
-    {
-        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+                        featureSelectionTasks.put(GetFoldTaskKey(processor, fsAlgorithm, outerFold, null), taskGraph.Add("select features for " + featureEvaluator.GetDescription() + ", outerFold=" + outerFold, featureEvaluator.GetOuterFoldTask(), new ArrayList<TaskGraph.Task>()));
+                    }
 
-        for (final Integer outerFold : Utilities.InstanceVault.GetCrossValidationAssignments().GetAllFoldNumbers())
-        {
-            taskHandler.Add(new LockedCallable<Object>("EnsemblePredictions/OuterFold" + outerFold, "EnsemblePredictions_OuterFold" + outerFold, "Save ensemble predictions for outer fold " + outerFold, new Callable<Object>()
+        // Predictions for a given fold depend only on the features that were selected for that fold
+        HashMap<Integer, ArrayList<TaskGraph.Task>> outerFoldPredictionTasks = new HashMap<Integer, ArrayList<TaskGraph.Task>>();
+
+        // For each fold, the evaluators that differ only in the number of features are processed as one batch, so the classification algorithm can share work across them
+        LinkedHashMap<String, ArrayList<PredictionEvaluator>> evaluatorBatches = new LinkedHashMap<String, ArrayList<PredictionEvaluator>>();
+        HashMap<String, Integer> batchInnerFolds = new HashMap<String, Integer>();
+
+        for (ModelSelector modelSelector : modelSelectors)
+            for (PredictionEvaluator evaluator : modelSelector.GetModelEvaluators())
             {
-                public Object call() throws Exception
+                ArrayList<Integer> innerFolds = new ArrayList<Integer>(evaluator.GetInnerFolds());
+                innerFolds.add(null);
+
+                for (Integer innerFold : innerFolds)
                 {
-                    // This step pulls the predictions that have already been made so they can be aggregated for the ensemble learnerrs
-                    HashMap<String, EnsemblePredictionInfos> ensemblePredictionInfoMap = AbstractEnsemblePredictor.GetInstanceEnsemblePredictionInfos(outerFold, modelSelectors);
+                    String batchKey = GetFoldTaskKey(evaluator.Processor, evaluator.FeatureSelectionAlgorithm, evaluator.OuterFold, innerFold) + "_" + evaluator.ClassificationAlgorithm;
 
-                    for (final AbstractEnsemblePredictor ensemblePredictor : AbstractEnsemblePredictor.GetAllEnsemblePredictors())
+                    if (!evaluatorBatches.containsKey(batchKey))
                     {
-                        Files.CreateDirectoryNoFatalError(ensemblePredictor.GetSaveDirectory(outerFold));
-                        if (!ensemblePredictor.MakeEnsemblePredictions(outerFold, ensemblePredictionInfoMap))
-                            return Boolean.FALSE;
+                        evaluatorBatches.put(batchKey, new ArrayList<PredictionEvaluator>());
+                        batchInnerFolds.put(batchKey, innerFold);
                     }
 
-                    return Boolean.TRUE;
+                    evaluatorBatches.get(batchKey).add(evaluator);
                 }
-            }));
+            }
+
+        for (Map.Entry<String, ArrayList<PredictionEvaluator>> batch : evaluatorBatches.entrySet())
+        {
+            ArrayList<PredictionEvaluator> evaluators = batch.getValue();
+            PredictionEvaluator evaluator = evaluators.get(0);
+            Integer innerFold = batchInnerFolds.get(batch.getKey());
+
+            if (!outerFoldPredictionTasks.containsKey(evaluator.OuterFold))
+                outerFoldPredictionTasks.put(evaluator.OuterFold, new ArrayList<TaskGraph.Task>());
+
+            ArrayList<TaskGraph.Task> dependencies = GetDependencies(featureSelectionTasks, GetFoldTaskKey(evaluator.Processor, evaluator.FeatureSelectionAlgorithm, evaluator.OuterFold, innerFold));
+            String description = "make predictions for " + evaluators.size() + " models of " + evaluator.Processor.GetDescription() + "_" + evaluator.FeatureSelectionAlgorithm + "_" + evaluator.ClassificationAlgorithm + ", outerFold=" + evaluator.OuterFold + (innerFold == null ? "" : ", innerFold=" + innerFold);
+
+            outerFoldPredictionTasks.get(evaluator.OuterFold).add(taskGraph.Add(description, PredictionEvaluator.GetBatchTask(evaluators, innerFold), dependencies));
+        }
+
+        // Ensemble predictions for a given outer fold depend only on the (inner and outer) predictions for that fold
+        for (Integer outerFold : Utilities.InstanceVault.GetCrossValidationAssignments().GetAllFoldNumbers())
+        {
+            ArrayList<TaskGraph.Task> dependencies = outerFoldPredictionTasks.containsKey(outerFold) ? outerFoldPredictionTasks.get(outerFold) : new ArrayList<TaskGraph.Task>();
+            taskGraph.Add("save ensemble predictions for outer fold " + outerFold, GetEnsemblePredictionsTask(outerFold, modelSelectors), dependencies);
         }
 
-        taskHandler.ExecuteWithRetries("save ensemble predictions");
+        taskGraph.Execute("select features and make predictions");
+    }
+
+    private String GetFoldTaskKey(AbstractDataProcessor processor, FeatureSelectionAlgorithm fsAlgorithm, int outerFold, Integer innerFold)
+    {
+        return processor.GetDescription() + "_" + fsAlgorithm + "_OuterFold" + outerFold + (innerFold == null ? "" : "_InnerFold" + innerFold);
+    }
+
+    private ArrayList<TaskGraph.Task> GetDependencies(HashMap<String, TaskGraph.Task> tasks, String key)
+    {
+        ArrayList<TaskGraph.Task> dependencies = new ArrayList<TaskGraph.Task>();
+
+        // There is no task to depend on when features are not selected computationally (for example, when all features are used)
+        if (tasks.containsKey(key))
+            dependencies.add(tasks.get(key));
+
+        return dependencies;
+    }
+
+    private LockedCallable<Object> GetEnsemblePredictionsTask(final Integer outerFold, final ArrayList<ModelSelector> modelSelectors)
+    {
+        return new LockedCallable<Object>("EnsemblePredictions/OuterFold" + outerFold, "EnsemblePredictions_OuterFold" + outerFold, "Save ensemble predictions for outer fold " + outerFold, new Callable<Object>()
+        {
+            public Object call() throws Exception
+            {
+                // This step pulls the predictions that have already been made so they can be aggregated for the ensemble learnerrs
+                HashMap<String, EnsemblePredictionInfos> ensemblePredictionInfoMap = AbstractEnsemblePredictor.GetInstanceEnsemblePredictionInfos(outerFold, modelSelectors);
+
+                for (final AbstractEnsemblePredictor ensemblePredictor : AbstractEnsemblePredictor.GetAllEnsemblePredictors())
+                {
+                    Files.CreateDirectoryNoFatalError(ensemblePredictor.GetSaveDirectory(outerFold));
+                    if (!ensemblePredictor.MakeEnsemblePredictions(outerFold, ensemblePredictionInfoMap))
+                        return Boolean.FALSE;
+                }
+
+                return Boolean.TRUE;
+            }
+        });
     }
 
     private void SavePredictionResults(ArrayList<ModelSelector> modelSelectors) throws Exception
@@ -335,20 +399,38 @@ public class Experiment
             {
                 public Object call() throws Exception
                 {
-                    DataInstanceCollection instances = Utilities.InstanceVault.GetAnalysisInstances(processor, null, null);
+                    final DataInstanceCollection instances = Utilities.InstanceVault.GetAnalysisInstances(processor, null, null);
+
+                    if (instances.Size() == 0)
+                        return Boolean.TRUE;
 
-                    if (instances.Size() > 0)
+                    // The data are retrieved once, and then the files in each format are created concurrently
+                    MultiThreadedTaskHandler formatTaskHandler = new MultiThreadedTaskHandler();
+
+                    formatTaskHandler.Add(new Callable<Object>()
                     {
-                        instances.SaveToFile(Settings.GetExperimentOutputDir(false), processor.GetDescription());
-                        new AnalysisFileCreator(Settings.GetExperimentOutputDir(false), processor.GetDescription(), instances, null, Utilities.InstanceVault.GetTransformedDependentVariableInstances()).CreateArffFile();
-                    }
+                        public Object call() throws Exception
+                        {
+                            return instances.SaveToFile(Settings.GetExperimentOutputDir(false), processor.GetDescription());
+                        }
+                    });
+                    formatTaskHandler.Add(new Callable<Object>()
+                    {
+                        public Object call() throws Exception
+                        {
+                            return new AnalysisFileCreator(Settings.GetExperimentOutputDir(false), processor.GetDescription(), instances, null, Utilities.InstanceVault.GetTransformedDependentVariableInstances()).CreateArffFile();
+                        }
+                    });
+
+                    formatTaskHandler.Execute();
 
                     return Boolean.TRUE;
                 }
             }));
-
-            taskHandler.ExecuteWithRetries("export data files");
         }
+
+        // The processors are exported concurrently
+        taskHandler.ExecuteWithRetries("export data files");
     }
 
 //    private ArrayList<ModelSelector> _modelSelectors = null;
@@ -126,30 +126,59 @@ public class FeatureEvaluator
      */
     public void SelectFeatures() throws Exception
     {
-        Files.CreateDirectoryNoFatalError(GetSaveDirectory());
-
         MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
 
-        for (final int innerFold : Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetFoldsWithTestData(Processor))
+        for (int innerFold : GetInnerFolds())
+            taskHandler.Add(GetInnerFoldTask(innerFold));
+
+        taskHandler.Add(GetOuterFoldTask());
+
+        taskHandler.ExecuteWithRetries("select features for " + GetDescription());
+    }
+
+    /** Indicates the inner cross-validation folds for which features will be selected.
+     *
+     * @return Inner cross-validation fold numbers
+     * @throws Exception
+     */
+    public ArrayList<Integer> GetInnerFolds() throws Exception
+    {
+        return Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetFoldsWithTestData(Processor);
+    }
+
+    /** Creates a task that selects features for the specified inner cross-validation fold.
+     *
+     * @param innerFold Number of inner cross-validation fold
+     * @return Task that returns true when the features have been selected and saved
+     */
+    public LockedCallable<Object> GetInnerFoldTask(final int innerFold)
+    {
+        Files.CreateDirectoryNoFatalError(GetSaveDirectory());
+
+        return new LockedCallable<Object>(GetInnerStatusFilePath(innerFold), GetInnerLockFilePath(innerFold), "Select features for " + GetDescription() + ", outerFold=" + OuterFold + ", innerFold=" + innerFold, new Callable<Object>()
         {
-            taskHandler.Add(new LockedCallable<Object>(GetInnerStatusFilePath(innerFold), GetInnerLockFilePath(innerFold), "Select features for " + GetDescription() + ", outerFold=" + OuterFold + ", innerFold=" + innerFold, new Callable<Object>()
+            public Object call() throws Exception
             {
-                public Object call() throws Exception
-                {
-                    return SelectAndSaveFeatures(GetInnerTrainingInstances(innerFold), GetInnerSaveFilePath(innerFold));
-                }
-            }));
-        }
-
-        taskHandler.Add(new LockedCallable<Object>(GetOuterStatusFilePath(), GetOuterLockFilePath(), "Select features for " + GetDescription() + ", outer fold=" + OuterFold, new Callable<Object>()
+                return SelectAndSaveFeatures(GetInnerTrainingInstances(innerFold), GetInnerSaveFilePath(innerFold));
+            }
+        });
+    }
+
+    /** Creates a task that selects features for the outer cross-validation fold.
+     *
+     * @return Task that returns true when the features have been selected and saved
+     */
+    public LockedCallable<Object> GetOuterFoldTask()
+    {
+        Files.CreateDirectoryNoFatalError(GetSaveDirectory());
+
+        return new LockedCallable<Object>(GetOuterStatusFilePath(), GetOuterLockFilePath(), "Select features for " + GetDescription() + ", outer fold=" + OuterFold, new Callable<Object>()
         {
             public Object call() throws Exception
             {
                 return SelectAndSaveFeatures(GetOuterTrainingInstances(), GetOuterSaveFilePath());
             }
-        }));
-
-        taskHandler.ExecuteWithRetries("select features for " + GetDescription());
+        });
     }
 
     private Boolean SelectAndSaveFeatures(DataInstanceCollection trainInstances, String filePath) throws Exception
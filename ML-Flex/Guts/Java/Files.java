@@ -19,6 +19,7 @@ package mlflex;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
 
 /** This class provides utility methods for reading, writing, updating, and deleting files.
  * @author Stephen Piccolo
@@ -117,14 +118,95 @@ public class Files
      */
     public static String ReadScalarFromFile(String filePath) throws Exception
     {
-        ArrayList<ArrayList<String>> fileRows = ParseDelimitedFile(filePath);
-        if (fileRows.size() == 0)
-            return "";
-        if (fileRows.get(0).size() == 0)
-            return "";
-        return fileRows.get(0).get(0);
+        DelimitedFileReader reader = new DelimitedFileReader(filePath);
+
+        try
+        {
+            if (!reader.NextRow())
+                return "";
+            return reader.GetField(0);
+        }
+        finally
+        {
+            reader.Close();
+        }
+    }
+
+    /** Indicates whether a file has been compressed in the gzip format. This is determined from the first bytes of the file, so the name of the file does not matter.
+     *
+     * @param filePath Absolute file path
+     * @return Whether the file is compressed
+     * @throws Exception
+     */
+    public static boolean IsGzipFile(String filePath) throws Exception
+    {
+        if (new File(filePath).length() < 2)
+            return false;
+
+        InputStream stream = new FileInputStream(filePath);
+
+        try
+        {
+            return stream.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && stream.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+        }
+        finally
+        {
+            stream.close();
+        }
     }
 
+    /** Opens a file for reading. If the file has been compressed in the gzip format, it is decompressed as it is read. If Settings.READ_AHEAD is true, the file is read (and decompressed) on a separate thread.
+     *
+     * @param filePath Absolute file path
+     * @return Stream from which the (uncompressed) contents of the file can be read
+     * @throws Exception
+     */
+    public static InputStream OpenInputStream(String filePath) throws Exception
+    {
+        return OpenInputStream(filePath, 0);
+    }
+
+    /** Opens a file for reading, starting at the specified position. If the file has been compressed in the gzip format, it is decompressed as it is read, and the position refers to the uncompressed contents. If Settings.READ_AHEAD is true, the file is read (and decompressed) on a separate thread.
+     *
+     * @param filePath Absolute file path
+     * @param startPosition Byte position where reading should start
+     * @return Stream from which the (uncompressed) contents of the file can be read
+     * @throws Exception
+     */
+    public static InputStream OpenInputStream(String filePath, long startPosition) throws Exception
+    {
+        CheckFileExists(filePath);
+
+        boolean isGzipFile = IsGzipFile(filePath);
+        FileInputStream fileStream = new FileInputStream(filePath);
+        InputStream stream = fileStream;
+
+        if (isGzipFile)
+        {
+            stream = new GZIPInputStream(fileStream, INPUT_BUFFER_SIZE);
+
+            // Compressed files cannot be accessed at random, so the preceding contents must be decompressed
+            long remaining = startPosition;
+            while (remaining > 0)
+            {
+                long numSkipped = stream.skip(remaining);
+                if (numSkipped <= 0)
+                    break;
+                remaining -= numSkipped;
+            }
+        }
+        else
+            fileStream.getChannel().position(startPosition);
+
+        if (Settings.READ_AHEAD)
+            return new ReadAheadInputStream(stream);
+
+        return new BufferedInputStream(stream, INPUT_BUFFER_SIZE);
+    }
+
+    /** The size of the buffer (in bytes) that is used when files are read */
+    public static final int INPUT_BUFFER_SIZE = 1 << 16;
+
     /** Reads lines from a file.
      *
      * @param filePath Absolute file path
@@ -232,42 +314,19 @@ public class Files
      */
     public static ArrayList<ArrayList<String>> ParseDelimitedFile(String filePath, String delimiter, String commentChar, int numLinesToSkip) throws Exception
     {
-        if (!FileExists(filePath))
-            throw new Exception("No file exists at " + filePath);
-
-        //TODO: Use file iterator class in here
-
         ArrayList<ArrayList<String>> rows = new ArrayList<ArrayList<String>>();
 
-        FileReader fr = new FileReader(filePath);
-        BufferedReader br = new BufferedReader(fr);
+        DelimitedFileReader reader = new DelimitedFileReader(filePath, delimiter, commentChar, numLinesToSkip);
 
-        int linesRead = 0;
-        int linesSkipped = 0;
-        String line;
-        while ((line = br.readLine()) != null)
+        try
         {
-            linesRead++;
-
-            if (linesRead % 1000 == 0)
-                Utilities.Log.Info(linesRead + " lines read from " + filePath);
-
-            if (numLinesToSkip <= linesSkipped && !line.startsWith(commentChar))
-            {
-                boolean lastValueBlank = line.endsWith(delimiter);
-                String[] lineValues = line.split(delimiter);
-
-                if (lastValueBlank)
-                    lineValues = Lists.AppendItemToArray(lineValues, "");
-
-                rows.add(Lists.CreateStringList(lineValues));
-            }
-
-            linesSkipped++;
+            while (reader.NextRow())
+                rows.add(reader.GetFields());
+        }
+        finally
+        {
+            reader.Close();
         }
-
-        br.close();
-        fr.close();
 
         return rows;
     }
@@ -29,4 +29,16 @@ public class GetFirstSummarizer extends AbstractSummarizer
     {
         return values.get(0);
     }
+
+    @Override
+    public boolean IsIncremental()
+    {
+        return true;
+    }
+
+    @Override
+    public double Accumulate(double summary, double value)
+    {
+        return summary;
+    }
 }
\ No newline at end of file
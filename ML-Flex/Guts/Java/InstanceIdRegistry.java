@@ -0,0 +1,198 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** This class assigns a unique integer index to each data instance ID, across the whole experiment. The indices are dense (0, 1, 2, ...), so sets of data instances can be represented as bit sets and compared without hashing the ID strings repeatedly. The ID strings are needed only when data are read from or written to files. IDs are registered when the analysis instances are loaded; any other ID is registered the first time it is used. The registry is cleared when each experiment begins, so indices must not be kept from one experiment to the next.
+ * @author Stephen Piccolo
+ */
+public class InstanceIdRegistry
+{
+    private static final ConcurrentHashMap<String, Integer> _indices = new ConcurrentHashMap<String, Integer>();
+    private static final ArrayList<String> _ids = new ArrayList<String>();
+
+    /** Removes all registered IDs. This is invoked when an experiment begins, so IDs from previous experiments that were executed in the same process do not accumulate.
+     */
+    public static void Clear()
+    {
+        synchronized (_ids)
+        {
+            _indices.clear();
+            _ids.clear();
+        }
+    }
+
+    /** Gets the index of a data instance ID, registering the ID if it has not been registered.
+     *
+     * @param id Data instance ID
+     * @return Index of the ID
+     */
+    public static int GetIndex(String id)
+    {
+        Integer index = _indices.get(id);
+        if (index != null)
+            return index;
+
+        synchronized (_ids)
+        {
+            index = _indices.get(id);
+
+            if (index == null)
+            {
+                index = _ids.size();
+                _ids.add(id);
+                _indices.put(id, index);
+            }
+
+            return index;
+        }
+    }
+
+    /** Gets the data instance ID for an index.
+     *
+     * @param index Index of the ID
+     * @return Data instance ID
+     */
+    public static String GetID(int index)
+    {
+        synchronized (_ids)
+        {
+            return _ids.get(index);
+        }
+    }
+
+    /** Registers data instance IDs (any that have already been registered keep their indices).
+     *
+     * @param ids Data instance IDs
+     */
+    public static void Register(Collection<String> ids)
+    {
+        for (String id : ids)
+            GetIndex(id);
+    }
+
+    /** Gets the indices of data instance IDs.
+     *
+     * @param ids Data instance IDs
+     * @return Indices, in the same order as the IDs
+     */
+    public static int[] ToIndices(List<String> ids)
+    {
+        int[] indices = new int[ids.size()];
+
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = GetIndex(ids.get(i));
+
+        return indices;
+    }
+
+    /** Creates a bit set in which the bits that correspond to the specified data instance IDs are set.
+     *
+     * @param ids Data instance IDs
+     * @return Bit set
+     */
+    public static BitSet ToBitSet(Collection<String> ids)
+    {
+        BitSet bits = new BitSet();
+
+        for (String id : ids)
+            bits.set(GetIndex(id));
+
+        return bits;
+    }
+
+    /** Gets the data instance IDs that correspond to the bits that are set in a bit set.
+     *
+     * @param bits Bit set
+     * @return Data instance IDs (in the order of their indices)
+     */
+    public static ArrayList<String> ToIDs(BitSet bits)
+    {
+        ArrayList<String> ids = new ArrayList<String>(bits.cardinality());
+
+        synchronized (_ids)
+        {
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+                ids.add(_ids.get(i));
+        }
+
+        return ids;
+    }
+
+    /** Gets the data instance IDs in a list that are (or are not) in a bit set. The order of the list is preserved.
+     *
+     * @param ids Data instance IDs
+     * @param bits Bit set
+     * @param inBitSet Whether to keep the IDs that are in the bit set (otherwise, the IDs that are not in the bit set are kept)
+     * @return Data instance IDs that were kept
+     */
+    public static ArrayList<String> Filter(List<String> ids, BitSet bits, boolean inBitSet)
+    {
+        ArrayList<String> kept = new ArrayList<String>();
+
+        for (String id : ids)
+            if (bits.get(GetIndex(id)) == inBitSet)
+                kept.add(id);
+
+        return kept;
+    }
+
+    /** Finds the data instance IDs that are in both lists. As with Lists.Intersect, if the first list is empty, the second list is returned. Unlike Lists.Intersect (which returns the IDs in hash order), the IDs are returned in the order of the first list, so the order is deterministic.
+     *
+     * @param ids1 First list of data instance IDs
+     * @param ids2 Second list of data instance IDs
+     * @return Data instance IDs that are in both lists (each is listed once, in the order of the first list)
+     */
+    public static ArrayList<String> Intersect(ArrayList<String> ids1, ArrayList<String> ids2)
+    {
+        if (ids1.size() == 0)
+            return ids2;
+
+        BitSet bits = ToBitSet(ids2);
+        ArrayList<String> intersection = new ArrayList<String>();
+
+        for (String id : ids1)
+        {
+            int index = GetIndex(id);
+
+            if (bits.get(index))
+            {
+                intersection.add(id);
+                bits.clear(index);
+            }
+        }
+
+        return intersection;
+    }
+
+    /** Finds the data instance IDs that are in the first list but not the second list. The order of the first list is preserved (including any duplicates).
+     *
+     * @param ids1 First list of data instance IDs
+     * @param ids2 Second list of data instance IDs
+     * @return Data instance IDs that are only in the first list
+     */
+    public static ArrayList<String> RemoveAll(List<String> ids1, Collection<String> ids2)
+    {
+        return Filter(ids1, ToBitSet(ids2), false);
+    }
+}
@@ -69,7 +69,7 @@ public class InstanceVault
         }
         else
         {
-            ArrayList<String> subset = Lists.Intersect(instanceIDs, GetInstanceIDsWithAllData());
+            ArrayList<String> subset = InstanceIdRegistry.Intersect(instanceIDs, GetInstanceIDsWithAllData());
             return subset;
         }
     }
@@ -136,12 +136,9 @@ public class InstanceVault
             processor.UpdateInstancesForAnalysis(instances);
             Utilities.Log.Debug(instances.Size() + " instances remaining after updating instances for analysis");
 
-            Utilities.Log.Info("Removing sparse data points for " + processor.GetDescription());
-            processor.RemoveSparseDataPoints(instances);
+            Utilities.Log.Info("Removing sparse data points and instances for " + processor.GetDescription());
+            processor.RemoveSparseData(instances);
             Utilities.Log.Debug(instances.GetNumDataPoints() + " data points remaining after removing any sparse data points");
-
-            Utilities.Log.Info("Removing sparse instances for " + processor.GetDescription());
-            processor.RemoveSparseInstances(instances);
             Utilities.Log.Debug(instances.Size() + " instances remaining after removing any sparse instances");
 
             if (!(processor instanceof AbstractDependentVariableDataProcessor))
@@ -153,6 +150,7 @@ public class InstanceVault
             }
 
             pi.Instances = instances;
+            InstanceIdRegistry.Register(Lists.SortStringList(instances.GetIDs()));
 
             if (pi.Processor.equals(Utilities.ProcessorVault.DependentVariableDataProcessor) && Utilities.Config.GetBooleanValue("PERMUTE_DEPENDENT_VARIABLE_VALUES", false))
             {
@@ -173,7 +171,7 @@ public class InstanceVault
      * @param processor Data processor
      * @param instanceIDs List of data instance IDs (any instance ID not in this list will be ignored)
      * @param dataPoints List of data points (any data point not in this list will be ignored)
-     * @return Collection of data instances that can be used in machine-learning analyses
+     * @return Collection of data instances that can be used in machine-learning analyses (this is a view of the cached instances, so values are only copied if the caller modifies them)
      * @throws Exception
      */
     public DataInstanceCollection GetAnalysisInstances(AbstractDataProcessor processor, ArrayList<String> instanceIDs, ArrayList<String> dataPoints) throws Exception
@@ -181,7 +179,7 @@ public class InstanceVault
         ArrayList<String> analysisInstanceIDs = GetAnalysisInstanceIDs(processor, instanceIDs);
         ArrayList<String> analysisDataPoints = GetAnalysisDataPoints(processor, dataPoints);
 
-        return GetAnalysisInstances(processor).Clone(analysisInstanceIDs, analysisDataPoints);
+        return GetAnalysisInstances(processor).CreateView(analysisInstanceIDs, analysisDataPoints);
     }
 
     /** This method indicates how many data points should be used in machine-learning analyses for a given data processor.
@@ -206,7 +204,7 @@ public class InstanceVault
     {
         ArrayList<String> allIDs = GetAnalysisInstances(processor).GetIDs();
 
-        return Lists.Intersect(allIDs, instanceIDs).size();
+        return InstanceIdRegistry.Intersect(allIDs, instanceIDs).size();
     }
 
     private ArrayList<String> _instanceIDsWithAllData = null;
@@ -219,7 +217,7 @@ public class InstanceVault
                 if (_instanceIDsWithAllData == null)
                     _instanceIDsWithAllData = GetAnalysisInstances(processor).GetIDs();
                 else
-                    _instanceIDsWithAllData = Lists.Intersect(_instanceIDsWithAllData, GetAnalysisInstances(processor).GetIDs());
+                    _instanceIDsWithAllData = InstanceIdRegistry.Intersect(_instanceIDsWithAllData, GetAnalysisInstances(processor).GetIDs());
             }
         }
 
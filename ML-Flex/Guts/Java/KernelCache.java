@@ -0,0 +1,382 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/** This class stores, for each combination of training and test instances (each cross-validation fold), the dot products between every instance and every training instance. Linear, polynomial, RBF and sigmoid kernel values can all be derived from these sums, so one set of sums serves any kernel. Because the sums are additive across features, the sums for a larger set of features are calculated by adding only the features that are not in a set that has already been calculated. When the numbers of features are nested (for example, the top 25, 50, ... 300 ranked features), the sums for all of them cost little more than the sums for the largest one.
+ *
+ * Numeric values that are missing are replaced with the mean of the training values. Non-numeric data points are treated as one binary indicator per value (missing values have no indicator).
+ *
+ * The size of the cache is limited by the number of bytes that the sums use (a fraction of the maximum heap size); the sums for the folds that were used least recently are removed first. Callers that know they are finished with a fold can remove its sums with the Remove method.
+ * @author Stephen Piccolo
+ */
+public class KernelCache
+{
+    private static final int MAX_SUMS_PER_FOLD = 4;
+    private static final long MAX_CACHED_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+    private static final LinkedHashMap<String, ArrayList<KernelSums>> _cache = new LinkedHashMap<String, ArrayList<KernelSums>>(16, 0.75f, true);
+    private static long _numCachedBytes = 0;
+
+    /** This class stores the dot products for a set of features. Once it has been cached, it is never modified. */
+    public static class KernelSums
+    {
+        /** Signature of the values of each feature that is included in the sums */
+        private HashMap<String, Long> _featureSignatures = new HashMap<String, Long>();
+        /** Dot products between each instance (training instances followed by test instances) and each training instance */
+        private double[][] _dotProducts;
+        /** Dot product of each instance with itself */
+        private double[] _squaredNorms;
+        private int _numTrain;
+
+        private KernelSums(int numInstances, int numTrain)
+        {
+            _dotProducts = new double[numInstances][numTrain];
+            _squaredNorms = new double[numInstances];
+            _numTrain = numTrain;
+        }
+
+        private KernelSums Copy()
+        {
+            KernelSums copy = new KernelSums(0, _numTrain);
+            copy._featureSignatures = new HashMap<String, Long>(_featureSignatures);
+            copy._squaredNorms = _squaredNorms.clone();
+            copy._dotProducts = new double[_dotProducts.length][];
+
+            for (int i = 0; i < _dotProducts.length; i++)
+                copy._dotProducts[i] = _dotProducts[i].clone();
+
+            return copy;
+        }
+
+        private boolean IsSubsetOf(HashMap<String, Long> featureSignatures)
+        {
+            for (Map.Entry<String, Long> entry : _featureSignatures.entrySet())
+                if (!entry.getValue().equals(featureSignatures.get(entry.getKey())))
+                    return false;
+
+            return true;
+        }
+
+        private long GetNumBytes()
+        {
+            return 8L * _squaredNorms.length * (_numTrain + 1);
+        }
+
+        /** Indicates the number of training instances.
+         *
+         * @return Number of training instances
+         */
+        public int GetNumTrain()
+        {
+            return _numTrain;
+        }
+
+        /** Indicates the number of instances (training and test).
+         *
+         * @return Number of instances
+         */
+        public int GetNumInstances()
+        {
+            return _dotProducts.length;
+        }
+
+        /** Gets the dot product between an instance and a training instance.
+         *
+         * @param instance Index of the instance (training instances are followed by test instances)
+         * @param trainInstance Index of the training instance
+         * @return Dot product
+         */
+        public double GetDotProduct(int instance, int trainInstance)
+        {
+            return _dotProducts[instance][trainInstance];
+        }
+
+        /** Gets the squared Euclidean distance between an instance and a training instance.
+         *
+         * @param instance Index of the instance (training instances are followed by test instances)
+         * @param trainInstance Index of the training instance
+         * @return Squared distance
+         */
+        public double GetSquaredDistance(int instance, int trainInstance)
+        {
+            return Math.max(0, _squaredNorms[instance] + _squaredNorms[trainInstance] - 2 * _dotProducts[instance][trainInstance]);
+        }
+    }
+
+    /** Gets the dot products for the specified training and test instances, using the specified features. Sums that have already been calculated for a subset of these features (with the same values) are reused.
+     *
+     * @param features Names of the features
+     * @param trainData Training data instances
+     * @param testData Test data instances
+     * @return Dot products (training instances are followed by test instances, in the order of the collections)
+     * @throws Exception
+     */
+    public static KernelSums GetKernelSums(ArrayList<String> features, DataInstanceCollection trainData, DataInstanceCollection testData) throws Exception
+    {
+        String foldKey = GetFoldKey(trainData, testData);
+
+        HashMap<String, Long> featureSignatures = new HashMap<String, Long>();
+        for (String feature : features)
+            featureSignatures.put(feature, GetSignature(feature, trainData, testData));
+
+        KernelSums base = null;
+
+        synchronized (_cache)
+        {
+            ArrayList<KernelSums> foldSums = _cache.get(foldKey);
+
+            if (foldSums != null)
+                for (KernelSums sums : foldSums)
+                    if (sums.IsSubsetOf(featureSignatures) && (base == null || sums._featureSignatures.size() > base._featureSignatures.size()))
+                        base = sums;
+        }
+
+        if (base != null && base._featureSignatures.size() == featureSignatures.size())
+            return base;
+
+        KernelSums sums = base == null ? new KernelSums(trainData.Size() + testData.Size(), trainData.Size()) : base.Copy();
+
+        ArrayList<String> featuresToAdd = new ArrayList<String>();
+        for (String feature : features)
+            if (!sums._featureSignatures.containsKey(feature))
+                featuresToAdd.add(feature);
+
+        AddFeatures(sums, featuresToAdd, trainData, testData);
+        sums._featureSignatures = featureSignatures;
+
+        synchronized (_cache)
+        {
+            ArrayList<KernelSums> foldSums = _cache.get(foldKey);
+
+            if (foldSums == null)
+            {
+                foldSums = new ArrayList<KernelSums>();
+                _cache.put(foldKey, foldSums);
+            }
+
+            // Sums that this one has extended are no longer needed
+            for (int i = foldSums.size() - 1; i >= 0; i--)
+                if (foldSums.get(i).IsSubsetOf(featureSignatures))
+                    _numCachedBytes -= foldSums.remove(i).GetNumBytes();
+
+            foldSums.add(sums);
+            _numCachedBytes += sums.GetNumBytes();
+
+            if (foldSums.size() > MAX_SUMS_PER_FOLD)
+                _numCachedBytes -= foldSums.remove(0).GetNumBytes();
+
+            RemoveLeastRecentlyUsed();
+        }
+
+        Utilities.Log.Debug("Added " + featuresToAdd.size() + " of " + features.size() + " features to the kernel sums.");
+
+        return sums;
+    }
+
+    /** Removes the kernel sums for the specified training and test instances from the cache. This can be invoked when no more models will be built for these instances, so the memory can be used for other folds.
+     *
+     * @param trainData Training data instances
+     * @param testData Test data instances
+     */
+    public static void Remove(DataInstanceCollection trainData, DataInstanceCollection testData)
+    {
+        synchronized (_cache)
+        {
+            ArrayList<KernelSums> foldSums = _cache.remove(GetFoldKey(trainData, testData));
+
+            if (foldSums != null)
+                for (KernelSums sums : foldSums)
+                    _numCachedBytes -= sums.GetNumBytes();
+        }
+    }
+
+    /** Removes all kernel sums from the cache. */
+    public static void Clear()
+    {
+        synchronized (_cache)
+        {
+            _cache.clear();
+            _numCachedBytes = 0;
+        }
+    }
+
+    private static void RemoveLeastRecentlyUsed()
+    {
+        Iterator<Map.Entry<String, ArrayList<KernelSums>>> iterator = _cache.entrySet().iterator();
+
+        while (_numCachedBytes > MAX_CACHED_BYTES && iterator.hasNext())
+        {
+            for (KernelSums sums : iterator.next().getValue())
+                _numCachedBytes -= sums.GetNumBytes();
+
+            iterator.remove();
+        }
+    }
+
+    private static String GetFoldKey(DataInstanceCollection trainData, DataInstanceCollection testData)
+    {
+        return Lists.Join(trainData.GetIDs(), "\t") + "\n" + Lists.Join(testData.GetIDs(), "\t");
+    }
+
+    private static void AddFeatures(final KernelSums sums, ArrayList<String> features, DataInstanceCollection trainData, DataInstanceCollection testData) throws Exception
+    {
+        if (features.size() == 0)
+            return;
+
+        // Each feature is converted to one or more columns of numbers (one per value for non-numeric features)
+        final ArrayList<double[]> columns = new ArrayList<double[]>();
+        for (String feature : features)
+            columns.addAll(GetColumns(feature, trainData, testData));
+
+        final int numTrain = sums._numTrain;
+        int numInstances = sums.GetNumInstances();
+        int numChunks = Math.max(1, Math.min(numInstances, Settings.NUM_THREADS * 4));
+
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (int chunk = 0; chunk < numChunks; chunk++)
+        {
+            final int start = (int)((long)numInstances * chunk / numChunks);
+            final int end = (int)((long)numInstances * (chunk + 1) / numChunks);
+
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    for (int i = start; i < end; i++)
+                    {
+                        double[] dotProducts = sums._dotProducts[i];
+
+                        for (double[] column : columns)
+                        {
+                            double value = column[i];
+
+                            if (value == 0)
+                                continue;
+
+                            sums._squaredNorms[i] += value * value;
+
+                            for (int j = 0; j < numTrain; j++)
+                                dotProducts[j] += value * column[j];
+                        }
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        taskHandler.Execute();
+    }
+
+    private static ArrayList<double[]> GetColumns(String feature, DataInstanceCollection trainData, DataInstanceCollection testData) throws Exception
+    {
+        ArrayList<double[]> columns = new ArrayList<double[]>();
+        double[] trainValues = trainData.GetNumericDataPointValues(feature);
+        double[] testValues = testData.GetNumericDataPointValues(feature);
+
+        if (trainValues != null && testValues != null)
+        {
+            double sum = 0;
+            int count = 0;
+
+            for (double value : trainValues)
+                if (!Double.isNaN(value))
+                {
+                    sum += value;
+                    count++;
+                }
+
+            double mean = count == 0 ? 0 : sum / count;
+
+            double[] column = new double[trainValues.length + testValues.length];
+            for (int i = 0; i < column.length; i++)
+            {
+                double value = i < trainValues.length ? trainValues[i] : testValues[i - trainValues.length];
+                column[i] = Double.isNaN(value) ? mean : value;
+            }
+
+            columns.add(column);
+            return columns;
+        }
+
+        String[] values = GetValues(feature, trainData, testData);
+        HashMap<String, double[]> indicators = new HashMap<String, double[]>();
+
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i].equals(Settings.MISSING_VALUE_STRING))
+                continue;
+
+            double[] column = indicators.get(values[i]);
+
+            if (column == null)
+            {
+                column = new double[values.length];
+                indicators.put(values[i], column);
+                columns.add(column);
+            }
+
+            column[i] = 1;
+        }
+
+        return columns;
+    }
+
+    private static String[] GetValues(String feature, DataInstanceCollection trainData, DataInstanceCollection testData)
+    {
+        String[] values = new String[trainData.Size() + testData.Size()];
+
+        for (int i = 0; i < trainData.Size(); i++)
+            values[i] = trainData.Get(i).GetDataPointValue(feature);
+        for (int i = 0; i < testData.Size(); i++)
+            values[trainData.Size() + i] = testData.Get(i).GetDataPointValue(feature);
+
+        return values;
+    }
+
+    private static long GetSignature(String feature, DataInstanceCollection trainData, DataInstanceCollection testData)
+    {
+        long signature = feature.hashCode();
+
+        double[] trainValues = trainData.GetNumericDataPointValues(feature);
+        double[] testValues = testData.GetNumericDataPointValues(feature);
+
+        if (trainValues != null && testValues != null)
+        {
+            for (double value : trainValues)
+                signature = signature * 1000003 + Double.doubleToLongBits(value);
+            for (double value : testValues)
+                signature = signature * 1000003 + Double.doubleToLongBits(value);
+
+            return signature;
+        }
+
+        for (String value : GetValues(feature, trainData, testData))
+            signature = signature * 1000003 + value.hashCode();
+
+        return signature;
+    }
+}
@@ -0,0 +1,301 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_print_interface;
+import libsvm.svm_problem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+
+/** This class performs classification with support vector machines, using the LIBSVM library directly (in the same process). The LIBSVM JAR file is packaged with ML-Flex, so this learner should work out of the box. The kernel matrix is precomputed from the dot products that are stored in the KernelCache, so models that are built on the same cross-validation fold with different numbers of features share most of the work.
+ *
+ * The parameters use the same flags as LIBSVM (and Weka's LibSVM classifier): -S (SVM type), -K (kernel type: 0=linear, 1=polynomial, 2=RBF, 3=sigmoid), -D (degree), -G (gamma; 0 indicates 1/number of features), -R (coef0), -N (nu), -M (cache size in MB), -C (cost), -E (tolerance), -P (epsilon in the loss function) and -B (estimate probabilities: 1 or 0; -B without a value is the same as -B 1). Any other flag causes an error.
+ * @author Stephen Piccolo
+ */
+public class LibSvmLearner extends AbstractMachineLearner
+{
+    private static final HashSet<String> SUPPORTED_FLAGS = new HashSet<String>(Lists.CreateStringList("-S", "-K", "-D", "-G", "-R", "-N", "-M", "-C", "-E", "-P", "-B"));
+
+    static
+    {
+        // LIBSVM prints its progress to standard output by default
+        svm.svm_set_print_string_function(new svm_print_interface()
+        {
+            public void print(String s)
+            {
+            }
+        });
+    }
+
+    @Override
+    protected ArrayList<String> SelectOrRankFeatures(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        throw new Exception("Method not implemented.");
+    }
+
+    @Override
+    protected ModelPredictions TrainTest(ArrayList<String> classificationParameters, DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        ArrayList<String> dependentVariableClasses = Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues();
+        String dependentVariableDataPointName = Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName();
+
+        ArrayList<String> features = Lists.SortStringList(trainData.GetDataPointNames());
+        svm_parameter kernelParameter = GetParameter(classificationParameters, features.size());
+
+        // LIBSVM receives the kernel values rather than the data values
+        svm_parameter parameter = (svm_parameter)kernelParameter.clone();
+        parameter.kernel_type = svm_parameter.PRECOMPUTED;
+
+        KernelCache.KernelSums sums = KernelCache.GetKernelSums(features, trainData, testData);
+
+        svm_problem problem = new svm_problem();
+        problem.l = trainData.Size();
+        problem.y = new double[problem.l];
+        problem.x = new svm_node[problem.l][];
+
+        for (int i = 0; i < problem.l; i++)
+        {
+            String dependentVariableValue = dependentVariableInstances.Get(trainData.Get(i).GetID()).GetDataPointValue(dependentVariableDataPointName);
+            problem.y[i] = dependentVariableClasses.indexOf(dependentVariableValue);
+            problem.x[i] = GetNodes(sums, i, kernelParameter);
+        }
+
+        String error = svm.svm_check_parameter(problem, parameter);
+        if (error != null)
+            throw new Exception("Invalid LIBSVM parameters (" + Lists.Join(classificationParameters, " ") + "): " + error);
+
+        svm_model model = svm.svm_train(problem, parameter);
+
+        int[] labels = new int[svm.svm_get_nr_class(model)];
+        svm.svm_get_labels(model, labels);
+        boolean hasProbabilities = labels.length > 1 && svm.svm_check_probability_model(model) == 1;
+
+        Predictions predictions = new Predictions();
+
+        for (int i = 0; i < testData.Size(); i++)
+        {
+            DataValues testInstance = testData.Get(i);
+            String dependentVariableValue = dependentVariableInstances.Get(testInstance.GetID()).GetDataPointValue(dependentVariableDataPointName);
+
+            // This is the default before the prediction is made
+            Prediction prediction = new Prediction(testInstance.GetID(), dependentVariableValue, Lists.PickRandomValue(dependentVariableClasses), Lists.CreateDoubleList(0.5, dependentVariableClasses.size()));
+
+            if (!testInstance.HasOnlyMissingValues())
+            {
+                svm_node[] nodes = GetNodes(sums, problem.l + i, kernelParameter);
+                ArrayList<Double> classProbabilities = Lists.CreateDoubleList(0.0, dependentVariableClasses.size());
+                int predictedClass;
+
+                if (hasProbabilities)
+                {
+                    double[] probabilities = new double[labels.length];
+                    predictedClass = (int)svm.svm_predict_probability(model, nodes, probabilities);
+
+                    for (int j = 0; j < labels.length; j++)
+                        classProbabilities.set(labels[j], probabilities[j]);
+                }
+                else
+                {
+                    predictedClass = (int)svm.svm_predict(model, nodes);
+                    classProbabilities.set(predictedClass, 1.0);
+                }
+
+                prediction = new Prediction(testInstance.GetID(), dependentVariableValue, dependentVariableClasses.get(predictedClass), classProbabilities);
+            }
+
+            predictions.Add(prediction);
+        }
+
+        return new ModelPredictions("", predictions);
+    }
+
+    /** The jobs that use the same training and test instances are performed one after another, starting with the job that uses the fewest features, so that each job can extend the kernel sums of the previous one. Jobs that use different instances are performed in parallel. */
+    @Override
+    protected ArrayList<ModelPredictions> TrainTestBatch(final ArrayList<String> classificationParameters, final DataInstanceCollection data, ArrayList<TrainTestJob> jobs, final DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        LinkedHashMap<String, ArrayList<TrainTestJob>> foldJobs = new LinkedHashMap<String, ArrayList<TrainTestJob>>();
+
+        for (TrainTestJob job : jobs)
+        {
+            String foldKey = Lists.Join(job.TrainIDs, "\t") + "\n" + Lists.Join(job.TestIDs, "\t");
+
+            if (!foldJobs.containsKey(foldKey))
+                foldJobs.put(foldKey, new ArrayList<TrainTestJob>());
+
+            foldJobs.get(foldKey).add(job);
+        }
+
+        final HashMap<TrainTestJob, ModelPredictions> results = new HashMap<TrainTestJob, ModelPredictions>();
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (final ArrayList<TrainTestJob> jobsForFold : foldJobs.values())
+        {
+            Collections.sort(jobsForFold, new Comparator<TrainTestJob>()
+            {
+                public int compare(TrainTestJob job1, TrainTestJob job2)
+                {
+                    return job1.Features.size() - job2.Features.size();
+                }
+            });
+
+            taskHandler.Add(new Callable<Object>()
+            {
+                public Object call() throws Exception
+                {
+                    DataInstanceCollection trainData = null, testData = null;
+
+                    try
+                    {
+                        for (TrainTestJob job : jobsForFold)
+                        {
+                            trainData = job.GetTrainData(data);
+                            testData = job.GetTestData(data);
+
+                            ModelPredictions modelPredictions = TrainTest(classificationParameters, trainData, testData, dependentVariableInstances.Clone());
+
+                            synchronized (results)
+                            {
+                                results.put(job, modelPredictions);
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        // No other job in this batch uses these instances, so the memory can be used for other folds
+                        if (trainData != null)
+                            KernelCache.Remove(trainData, testData);
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        taskHandler.Execute();
+
+        ArrayList<ModelPredictions> orderedResults = new ArrayList<ModelPredictions>();
+        for (TrainTestJob job : jobs)
+            orderedResults.add(results.get(job));
+
+        return orderedResults;
+    }
+
+    private static svm_parameter GetParameter(ArrayList<String> classificationParameters, int numFeatures) throws Exception
+    {
+        HashMap<String, String> options = new HashMap<String, String>();
+
+        for (int i = 0; i < classificationParameters.size(); i++)
+        {
+            String flag = classificationParameters.get(i);
+
+            if (!SUPPORTED_FLAGS.contains(flag))
+                throw new Exception("Unsupported LIBSVM parameter for the LibSvmLearner: " + flag);
+
+            if (i + 1 < classificationParameters.size() && DataTypes.IsDouble(classificationParameters.get(i + 1)))
+                options.put(flag, classificationParameters.get(++i));
+            else if (flag.equals("-B"))
+                options.put(flag, "1");
+            else
+                throw new Exception("No value was specified for LIBSVM parameter " + flag + ".");
+        }
+
+        svm_parameter parameter = new svm_parameter();
+        parameter.svm_type = Integer.parseInt(GetOption(options, "-S", "0"));
+        parameter.kernel_type = Integer.parseInt(GetOption(options, "-K", "2"));
+        parameter.degree = Integer.parseInt(GetOption(options, "-D", "3"));
+        parameter.gamma = Double.parseDouble(GetOption(options, "-G", "0"));
+        parameter.coef0 = Double.parseDouble(GetOption(options, "-R", "0"));
+        parameter.nu = Double.parseDouble(GetOption(options, "-N", "0.5"));
+        parameter.cache_size = Double.parseDouble(GetOption(options, "-M", "40"));
+        parameter.C = Double.parseDouble(GetOption(options, "-C", "1"));
+        parameter.eps = Double.parseDouble(GetOption(options, "-E", "0.001"));
+        parameter.p = Double.parseDouble(GetOption(options, "-P", "0.1"));
+        parameter.shrinking = 1;
+        parameter.probability = Integer.parseInt(GetOption(options, "-B", "0"));
+        parameter.nr_weight = 0;
+        parameter.weight_label = new int[0];
+        parameter.weight = new double[0];
+
+        if (parameter.svm_type != svm_parameter.C_SVC && parameter.svm_type != svm_parameter.NU_SVC)
+            throw new Exception("Only classification SVM types (-S 0 or -S 1) are supported by the LibSvmLearner.");
+        if (parameter.probability != 0 && parameter.probability != 1)
+            throw new Exception("Invalid probability setting for the LibSvmLearner (-B must be 0 or 1): " + parameter.probability);
+        if (parameter.kernel_type < svm_parameter.LINEAR || parameter.kernel_type > svm_parameter.SIGMOID)
+            throw new Exception("Invalid kernel type for the LibSvmLearner: " + parameter.kernel_type);
+
+        if (parameter.gamma == 0)
+            parameter.gamma = 1.0 / numFeatures;
+
+        return parameter;
+    }
+
+    private static String GetOption(HashMap<String, String> options, String flag, String defaultValue)
+    {
+        return options.containsKey(flag) ? options.get(flag) : defaultValue;
+    }
+
+    /** Creates the row of the precomputed kernel matrix for an instance. The kernel values are calculated according to the kernel type and settings in the parameter object.
+     *
+     * @param sums Dot products for the instances
+     * @param instance Index of the instance (training instances are followed by test instances)
+     * @param parameter LIBSVM parameters that specify the kernel
+     * @return Nodes that contain the serial number of the instance followed by the kernel value for each training instance
+     */
+    private static svm_node[] GetNodes(KernelCache.KernelSums sums, int instance, svm_parameter parameter)
+    {
+        svm_node[] nodes = new svm_node[sums.GetNumTrain() + 1];
+
+        nodes[0] = new svm_node();
+        nodes[0].index = 0;
+        nodes[0].value = instance + 1;
+
+        for (int j = 0; j < sums.GetNumTrain(); j++)
+        {
+            nodes[j + 1] = new svm_node();
+            nodes[j + 1].index = j + 1;
+            nodes[j + 1].value = GetKernelValue(sums, instance, j, parameter);
+        }
+
+        return nodes;
+    }
+
+    private static double GetKernelValue(KernelCache.KernelSums sums, int instance, int trainInstance, svm_parameter parameter)
+    {
+        switch (parameter.kernel_type)
+        {
+            case svm_parameter.LINEAR:
+                return sums.GetDotProduct(instance, trainInstance);
+            case svm_parameter.POLY:
+                return Math.pow(parameter.gamma * sums.GetDotProduct(instance, trainInstance) + parameter.coef0, parameter.degree);
+            case svm_parameter.RBF:
+                return Math.exp(-parameter.gamma * sums.GetSquaredDistance(instance, trainInstance));
+            default:
+                return Math.tanh(parameter.gamma * sums.GetDotProduct(instance, trainInstance) + parameter.coef0);
+        }
+    }
+}
@@ -90,6 +90,12 @@ public class Main
         Settings.NUM_THREADS = Integer.parseInt(GetArgValue(args, "NUM_THREADS", numAvailableProcessors));
         Settings.THREAD_TIMEOUT_MINUTES = Long.parseLong(GetArgValue(args, "THREAD_TIMEOUT_MINUTES", "60"));
         Settings.PAUSE_SECONDS = Long.parseLong(GetArgValue(args, "PAUSE_SECONDS", "60"));
+        Settings.READ_AHEAD = Boolean.parseBoolean(GetArgValue(args, "READ_AHEAD", "false"));
+        Settings.PREDICTION_CACHE_MEGABYTES = Long.parseLong(GetArgValue(args, "PREDICTION_CACHE_MEGABYTES", "0"));
+
+        // Predictions are cached only when a size limit has been specified
+        if (Settings.PREDICTION_CACHE_MEGABYTES > 0)
+            Settings.PREDICTION_CACHE_DIR = Files.CreateDirectoryIfNotExists(Settings.GUTS_DIR + "PredictionCache/");
 
         String classificationAlgorithmsFilePath = GetArgValue(args, "CLASSIFICATION_ALGORITHMS_FILE", Settings.CONFIG_DIR + "ClassificationAlgorithmParameters.txt");
         String featureSelectionAlgorithmsFilePath = GetArgValue(args, "FEATURE_SELECTION_ALGORITHMS_FILE", Settings.CONFIG_DIR + "FeatureSelectionAlgorithmParameters.txt");
@@ -126,6 +132,7 @@ public class Main
             // Initialize singleton objects
             Utilities.Experiment = new Experiment(experiment);
             Utilities.InstanceVault = new InstanceVault();
+            InstanceIdRegistry.Clear();
             Utilities.ProcessorVault = new ProcessorVault();
             Utilities.ProcessorVault.Load();
 
@@ -146,6 +153,9 @@ public class Main
                 Utilities.Log.NumExceptionsCaught = 0;
                 Utilities.Experiment.Orchestrate(actions);
             }
+
+            if (PredictionCache.IsEnabled())
+                Utilities.Log.Info(PredictionCache.GetStatistics());
         }
     }
 
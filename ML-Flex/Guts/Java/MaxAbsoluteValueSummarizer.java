@@ -39,4 +39,20 @@ public class MaxAbsoluteValueSummarizer extends AbstractSummarizer
 
         return "0.0";
     }
+
+    @Override
+    public boolean IsIncremental()
+    {
+        return true;
+    }
+
+    /** The running summary is the first value with the largest absolute value. */
+    @Override
+    public double Accumulate(double summary, double value) throws Exception
+    {
+        if (Double.isNaN(summary) || Double.isNaN(value))
+            throw new Exception("Cannot determine the maximum absolute value of non-numeric values.");
+
+        return Math.abs(value) > Math.abs(summary) ? value : summary;
+    }
 }
\ No newline at end of file
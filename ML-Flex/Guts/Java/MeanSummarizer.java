@@ -29,4 +29,26 @@ public class MeanSummarizer extends AbstractSummarizer
     {
         return String.valueOf(MathUtility.Mean(Lists.CreateDoubleList(values)));
     }
+
+    @Override
+    public boolean IsIncremental()
+    {
+        return true;
+    }
+
+    /** The running summary is the sum of the values. */
+    @Override
+    public double Accumulate(double summary, double value) throws Exception
+    {
+        if (Double.isNaN(summary) || Double.isNaN(value))
+            throw new Exception("Cannot determine the mean of non-numeric values.");
+
+        return summary + value;
+    }
+
+    @Override
+    public String Finish(double summary, int numValues, String selectedValue)
+    {
+        return String.valueOf(summary / (double) numValues);
+    }
 }
@@ -285,6 +285,15 @@ public class ModelSelector
         return Lists.Join(Lists.CreateStringList(Processor.GetDescription(), FeatureSelectionAlgorithm.toString(), ClassificationAlgorithm.toString()), "_");
     }
 
+    /** Gets the model evaluators that make predictions for this model selector (one for each combination of outer cross-validation fold and number of features).
+     *
+     * @return List of model evaluators
+     */
+    public ArrayList<PredictionEvaluator> GetModelEvaluators()
+    {
+        return _modelEvaluators;
+    }
+
     /** Saves predictions for all data instances across all cross-validation folds.
      *
      * @throws Exception
@@ -21,10 +21,12 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.concurrent.*;
 
-/** This class encapsulates logic for executing computational tasks across one or more threads.
+/** This class encapsulates logic for executing computational tasks across one or more threads. All tasks are executed on a single thread pool that is shared across the process, so the number of threads stays fixed even when tasks are submitted from within other tasks. While a thread waits for its tasks to complete, it executes any of them that have not yet been started by the pool (rather than sitting idle). When a handler is created with fewer threads than the shared pool has, no more than that many of its tasks are executed at the same time.
  */
 public class MultiThreadedTaskHandler
 {
+    private static ScheduledThreadPoolExecutor _sharedService = null;
+
     private LinkedList<Callable<Object>> _callables;
     private int _numThreads;
 
@@ -37,7 +39,7 @@ public class MultiThreadedTaskHandler
     }
 
     /** This constructor accepts the arguments to the class that are necessary to execute tasks in parallel and initializes private variables.
-    * @param numThreads Number of threads on which to execute the callable objects
+    * @param numThreads Maximum number of this handler's callable objects that are executed at the same time (if this is 1, the objects are executed in the calling thread; otherwise, they are executed on the shared thread pool, whose size limits the number of threads when this value is larger)
     * @throws Exception
     */
     public MultiThreadedTaskHandler(int numThreads)
@@ -95,27 +97,136 @@ public class MultiThreadedTaskHandler
         }
 
         // The logic below enables multi-threaded execution
-        ExecutorService service = Executors.newFixedThreadPool(_numThreads);
+        ScheduledThreadPoolExecutor service = GetSharedExecutor();
+
+        Utilities.Log.Debug("Queue depth: " + GetQueueDepth() + ". Active threads: " + GetNumActiveThreads() + ".");
 
         ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
 
-        for (Callable<Object> callable : _callables)
-            futures.add(service.submit(callable));
+        // The shared pool already limits the number of threads, so a limit for this handler is needed only when it is smaller
+        Semaphore permits = _numThreads < Math.max(1, Settings.NUM_THREADS) ? new Semaphore(Math.max(1, _numThreads)) : null;
 
-        for (Future<Object> future : futures)
+        try
         {
-            Object result = future.get(Settings.THREAD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            for (Callable<Object> callable : _callables)
+            {
+                if (permits == null)
+                    futures.add(service.submit(callable));
+                else
+                {
+                    AcquirePermit(service, futures, permits);
+                    futures.add(service.submit(ReleasePermitWhenDone(callable, permits)));
+                }
+            }
 
-            if (result != null)
-                results.add(result);
-        }
+            // The calling thread takes tasks from the end of the list while the pool threads take them from the beginning. This also prevents deadlock when all pool threads are waiting for tasks that they submitted.
+            for (int i = futures.size() - 1; i >= 0; i--)
+                HelpExecute(service, futures.get(i));
+
+            for (Future<Object> future : futures)
+            {
+                Object result = future.get(Settings.THREAD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
 
-        // Very important to shut down the service
-        service.shutdown();
+                if (result != null)
+                    results.add(result);
+            }
+        }
+        finally
+        {
+            // If an error occurred, tasks that have not yet been started should not be executed
+            for (Future<Object> future : futures)
+                future.cancel(false);
+        }
 
         return results;
     }
 
+    private static boolean HelpExecute(ScheduledThreadPoolExecutor service, Future<Object> future)
+    {
+        if (!future.isDone() && service.remove((Runnable)future))
+        {
+            ((Runnable)future).run();
+            return true;
+        }
+
+        return false;
+    }
+
+    private static void AcquirePermit(ScheduledThreadPoolExecutor service, ArrayList<Future<Object>> futures, Semaphore permits) throws Exception
+    {
+        while (!permits.tryAcquire())
+        {
+            // Rather than waiting, execute a task that has not yet been started; if all have been started, wait for one of them to finish
+            boolean executedTask = false;
+            for (int i = futures.size() - 1; i >= 0 && !executedTask; i--)
+                executedTask = HelpExecute(service, futures.get(i));
+
+            if (!executedTask && permits.tryAcquire(Settings.THREAD_TIMEOUT_MINUTES, TimeUnit.MINUTES))
+                return;
+        }
+    }
+
+    private static Callable<Object> ReleasePermitWhenDone(final Callable<Object> callable, final Semaphore permits)
+    {
+        return new Callable<Object>()
+        {
+            public Object call() throws Exception
+            {
+                try
+                {
+                    return callable.call();
+                }
+                finally
+                {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    /** Gets the thread pool that is shared across the process. It is created the first time it is needed, using the number of threads that has been specified at the command line.
+     *
+     * @return Shared thread pool
+     */
+    public static synchronized ScheduledThreadPoolExecutor GetSharedExecutor()
+    {
+        if (_sharedService == null)
+        {
+            _sharedService = new ScheduledThreadPoolExecutor(Math.max(1, Settings.NUM_THREADS), new ThreadFactory()
+            {
+                private int _numThreadsCreated = 0;
+
+                public synchronized Thread newThread(Runnable runnable)
+                {
+                    // Daemon threads do not prevent the process from exiting
+                    Thread thread = new Thread(runnable, "MLFlex-" + (++_numThreadsCreated));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return _sharedService;
+    }
+
+    /** Indicates how many tasks are waiting to be executed on the shared thread pool (including tasks that are scheduled to be retried after a pause).
+     *
+     * @return Number of tasks waiting to be executed
+     */
+    public static synchronized int GetQueueDepth()
+    {
+        return _sharedService == null ? 0 : _sharedService.getQueue().size();
+    }
+
+    /** Indicates approximately how many threads in the shared thread pool are currently executing tasks.
+     *
+     * @return Number of active threads
+     */
+    public static synchronized int GetNumActiveThreads()
+    {
+        return _sharedService == null ? 0 : _sharedService.getActiveCount();
+    }
+
     // Execute all callable objects and pause if any of them has not completed
     public void ExecuteWithRetries(String description) throws Exception
     {
@@ -17,9 +17,12 @@
 
 package mlflex;
 
+import java.io.File;
 import java.util.*;
 
 /** This class provides an interface into the Orange machine-learning software package. Using this interface, Orange can be used for feature selection and classification. Please see the README files for information about how to install and configure Orange on the computer where ML-Flex is being executed.
+ *
+ * By default, requests are handled by long-running Python processes (one per thread) that execute the OrangeWorker.py script, which must be in the same directory as the script that is specified in the algorithm parameters. This way, Python is started and the Orange modules are imported only once per process, and the data are sent over standard input rather than via files in the ML-Flex directories. (The worker still writes each data set to a temporary file on the local disk, so that Orange parses the tab-delimited format itself; the file is deleted as soon as it has been read.) If ORANGE_PERSISTENT_WORKERS is set to false in the experiment configuration (or if the worker cannot be started), Python is invoked separately for each request.
  * @author Stephen Piccolo
  */
 public class OrangeLearner extends AbstractMachineLearner
@@ -27,6 +30,17 @@ public class OrangeLearner extends AbstractMachineLearner
     @Override
     public ArrayList<String> SelectOrRankFeatures(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection dependentVariableInstances) throws Exception
     {
+        if (Utilities.Config.GetBooleanValue("ORANGE_PERSISTENT_WORKERS", true))
+        {
+            ArrayList<ArrayList<String>> dataBlocks = new ArrayList<ArrayList<String>>();
+            dataBlocks.add(new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "OrangeDataForRanking_" + Utilities.GetUniqueID(), trainData, null, dependentVariableInstances).GetOrangeLines());
+
+            ArrayList<String> features = ExecuteWorkerRequest(algorithmParameters, dataBlocks);
+
+            if (features != null)
+                return features;
+        }
+
         AnalysisFileCreator creator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "OrangeDataForRanking_" + Utilities.GetUniqueID(), trainData, null, dependentVariableInstances);
 
         String dataFilePath = creator.CreateOrangeFile().GetOrangeFilePath();
@@ -54,6 +68,32 @@ public class OrangeLearner extends AbstractMachineLearner
     @Override
     public ModelPredictions TrainTest(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
     {
+        if (Utilities.Config.GetBooleanValue("ORANGE_PERSISTENT_WORKERS", true))
+        {
+            ArrayList<ArrayList<String>> dataBlocks = new ArrayList<ArrayList<String>>();
+            dataBlocks.add(new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "OrangeTrain_" + Utilities.GetUniqueID(), trainData, testData, dependentVariableInstances).GetOrangeLines());
+            dataBlocks.add(new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "OrangeTest_" + Utilities.GetUniqueID(), testData, trainData, null).GetOrangeLines());
+
+            ArrayList<String> outputLines = ExecuteWorkerRequest(algorithmParameters, dataBlocks);
+
+            if (outputLines != null)
+            {
+                ArrayList<String> probabilityClasses = Lists.CreateStringList(outputLines.remove(0).split("\t"));
+                ArrayList<String> predictionLines = new ArrayList<String>();
+                ArrayList<String> probabilityLines = new ArrayList<String>();
+
+                // Each line contains the predicted class followed by the probability of each class
+                for (String outputLine : outputLines)
+                {
+                    int tabIndex = outputLine.indexOf("\t");
+                    predictionLines.add(outputLine.substring(0, tabIndex));
+                    probabilityLines.add(outputLine.substring(tabIndex + 1));
+                }
+
+                return new ModelPredictions("", ParsePredictions(testData, dependentVariableInstances, predictionLines, probabilityClasses, probabilityLines));
+            }
+        }
+
         AnalysisFileCreator trainingCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "OrangeTrain_" + Utilities.GetUniqueID(), trainData, testData, dependentVariableInstances);
         trainingCreator.CreateOrangeFile();
         AnalysisFileCreator testCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "OrangeTest_" + Utilities.GetUniqueID(), testData, trainData, null);
@@ -83,6 +123,33 @@ public class OrangeLearner extends AbstractMachineLearner
         ArrayList<String> probabilityLines = Lists.CreateStringList(probabilityText.trim().split("\n"));
         ArrayList<String> probabilityClasses = Lists.CreateStringList(probabilityLines.remove(0).split("\t"));
 
+        Predictions predictions = ParsePredictions(testData, dependentVariableInstances, predictionLines, probabilityClasses, probabilityLines);
+
+        trainingCreator.DeleteOrangeFile();
+        testCreator.DeleteOrangeFile();
+
+        return new ModelPredictions(CommandLineClient.GetCommandResult(results, CommandLineClient.OUTPUT_RESULTS_KEY), predictions);
+    }
+
+    /** Sends a request to an Orange worker process. The request type (trainTest or rankFeatures) and the Orange expression are taken from the algorithm parameters.
+     *
+     * @param algorithmParameters Algorithm parameters (the Python executable, the Orange script, the request type and the Orange expression)
+     * @param dataBlocks Blocks of data lines, in the Orange format
+     * @return Output lines from the worker, or null if the worker could not be started
+     * @throws Exception
+     */
+    private ArrayList<String> ExecuteWorkerRequest(ArrayList<String> algorithmParameters, ArrayList<ArrayList<String>> dataBlocks) throws Exception
+    {
+        String scriptFilePath = algorithmParameters.get(1).replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR);
+        String workerFilePath = new File(new File(scriptFilePath).getParentFile(), "OrangeWorker.py").getPath();
+
+        ArrayList<String> commandArgs = Lists.CreateStringList(algorithmParameters.get(0), workerFilePath);
+
+        return CommandLineWorker.ExecuteRequest(commandArgs, Lists.Subset(algorithmParameters, 2, algorithmParameters.size()), dataBlocks);
+    }
+
+    private Predictions ParsePredictions(DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances, ArrayList<String> predictionLines, ArrayList<String> probabilityClasses, ArrayList<String> probabilityLines) throws Exception
+    {
         Predictions predictions = new Predictions();
 
         for (DataValues testInstance : testData)
@@ -99,10 +166,7 @@ public class OrangeLearner extends AbstractMachineLearner
             predictions.Add(new Prediction(testInstance.GetID(), actual, prediction, classProbabilities));
         }
 
-        trainingCreator.DeleteOrangeFile();
-        testCreator.DeleteOrangeFile();
-
-        return new ModelPredictions(CommandLineClient.GetCommandResult(results, CommandLineClient.OUTPUT_RESULTS_KEY), predictions);
+        return predictions;
     }
 
     private double ParseProbability(ArrayList<String> probabilityClasses, ArrayList<String> probabilities, String classDescriptor, String predictedClass)
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 public class Prediction
 {
     String InstanceID;
+    int InstanceIndex;
     String DependentVariableValue;
     String Prediction;
     ArrayList<Double> ClassProbabilities;
@@ -39,6 +40,7 @@ public class Prediction
     public Prediction(String instanceID, String dependentVariableValue, String prediction, ArrayList<Double> classProbabilities)
     {
         InstanceID = instanceID;
+        InstanceIndex = InstanceIdRegistry.GetIndex(instanceID);
         DependentVariableValue = dependentVariableValue;
         Prediction = prediction;
         ClassProbabilities = classProbabilities;
@@ -85,7 +87,7 @@ public class Prediction
 
         Prediction compareObj = (Prediction)obj;
 
-        return compareObj.InstanceID.equals(this.InstanceID) && compareObj.Prediction.equals(this.Prediction) && compareObj.DependentVariableValue.equals(this.DependentVariableValue) && compareObj.ClassProbabilities.equals(this.ClassProbabilities);
+        return compareObj.InstanceIndex == this.InstanceIndex && compareObj.Prediction.equals(this.Prediction) && compareObj.DependentVariableValue.equals(this.DependentVariableValue) && compareObj.ClassProbabilities.equals(this.ClassProbabilities);
     }
 
     @Override
@@ -0,0 +1,371 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** This class stores predictions on disk so they can be reused when the same classification algorithm is applied to the same data, whether in another iteration or in another experiment. Each entry is identified by a hash of what the predictions depend on: the learner and its parameters, the contents of the learner's class files and of any files that are named in its parameters (such as scripts and executables), the IDs and data values of the training and test instances, and their dependent-variable values. Changes to other code or files (for example, a script that is not named in the parameters) are not detected, so the PredictionCache directory should be deleted after such changes. The cache is used only if PREDICTION_CACHE_MEGABYTES is specified at the command line; when this limit is exceeded, the entries that were used least recently are deleted.
+ * @author Stephen Piccolo
+ */
+public class PredictionCache
+{
+    private static final String FILE_EXTENSION = ".txt";
+
+    private static final ConcurrentHashMap<String, String> _codeFingerprints = new ConcurrentHashMap<String, String>();
+    private static final AtomicLong _numHits = new AtomicLong();
+    private static final AtomicLong _numMisses = new AtomicLong();
+    private static final Object _sizeLock = new Object();
+    private static long _numBytes = -1;
+
+    /** Indicates whether predictions should be cached.
+     *
+     * @return Whether predictions should be cached
+     */
+    public static boolean IsEnabled()
+    {
+        return Settings.PREDICTION_CACHE_DIR != null && Settings.PREDICTION_CACHE_MEGABYTES > 0;
+    }
+
+    /** Calculates the key that identifies the predictions for a set of training and test instances.
+     *
+     * @param learnerClass Class that makes the predictions
+     * @param algorithmParameters Parameters that are passed to the algorithm
+     * @param trainData Training data instances
+     * @param testData Test data instances
+     * @param dependentVariableInstances Dependent-variable instances
+     * @return Key (hexadecimal)
+     * @throws Exception
+     */
+    public static String GetKey(Class<?> learnerClass, ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+        Update(digest, learnerClass.getName());
+        Update(digest, Lists.Join(algorithmParameters, "\t"));
+        Update(digest, GetCodeFingerprint(learnerClass, algorithmParameters));
+        // The order of the class probabilities depends on the order of these values
+        Update(digest, Lists.Join(Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues(), "\t"));
+
+        ArrayList<String> dataPointNames = trainData.GetDataPointNames();
+        Update(digest, Lists.Join(dataPointNames, "\t"));
+
+        for (DataInstanceCollection data : Arrays.asList(trainData, testData))
+        {
+            Update(digest, String.valueOf(data.Size()));
+
+            for (DataValues instance : data)
+            {
+                Update(digest, instance.GetID());
+                Update(digest, dependentVariableInstances.Get(instance.GetID()).GetDataPointValue(0));
+
+                for (String dataPointName : dataPointNames)
+                    Update(digest, instance.GetDataPointValue(dataPointName));
+            }
+        }
+
+        return ToHex(digest.digest());
+    }
+
+    /** The fingerprint is calculated once per process for each learner and set of parameters, because reading the files for every key would be slow. */
+    private static String GetCodeFingerprint(Class<?> learnerClass, ArrayList<String> algorithmParameters) throws Exception
+    {
+        String fingerprintKey = learnerClass.getName() + "\t" + Lists.Join(algorithmParameters, "\t");
+        String fingerprint = _codeFingerprints.get(fingerprintKey);
+
+        if (fingerprint != null)
+            return fingerprint;
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+        for (Class<?> c = learnerClass; c != null && c.getName().startsWith("mlflex."); c = c.getSuperclass())
+        {
+            Update(digest, c.getName());
+            Update(digest, c.getResourceAsStream("/" + c.getName().replace('.', '/') + ".class"));
+        }
+
+        for (String parameter : algorithmParameters)
+        {
+            File file = new File(parameter.replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR));
+
+            if (file.isFile())
+            {
+                Update(digest, file.getAbsolutePath());
+                Update(digest, new FileInputStream(file));
+            }
+        }
+
+        fingerprint = ToHex(digest.digest());
+        _codeFingerprints.put(fingerprintKey, fingerprint);
+
+        return fingerprint;
+    }
+
+    private static void Update(MessageDigest digest, String value) throws Exception
+    {
+        digest.update(value.getBytes("UTF-8"));
+        digest.update((byte)0);
+    }
+
+    private static void Update(MessageDigest digest, InputStream stream) throws Exception
+    {
+        if (stream == null)
+            return;
+
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int numBytes;
+
+            while ((numBytes = stream.read(buffer)) != -1)
+                digest.update(buffer, 0, numBytes);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    private static String ToHex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+
+    /** Gets predictions that have been cached.
+     *
+     * @param key Key that identifies the predictions
+     * @return Predictions, or null if they have not been cached
+     */
+    public static ModelPredictions Get(String key)
+    {
+        File file = new File(GetFilePath(key));
+
+        if (file.exists())
+        {
+            try
+            {
+                ModelPredictions modelPredictions = Parse(ReadText(file));
+
+                // This marks the entry as recently used
+                file.setLastModified(System.currentTimeMillis());
+
+                _numHits.incrementAndGet();
+                return modelPredictions;
+            }
+            catch (Exception ex)
+            {
+                Utilities.Log.Debug("Cached predictions could not be read from " + file.getAbsolutePath() + ", so they will be made again.");
+                Utilities.Log.Debug(ex);
+            }
+        }
+
+        _numMisses.incrementAndGet();
+        return null;
+    }
+
+    /** Stores predictions in the cache. If the cache then exceeds its size limit, the entries that were used least recently are deleted.
+     *
+     * @param key Key that identifies the predictions
+     * @param modelPredictions Predictions and model information
+     * @throws Exception
+     */
+    public static void Put(String key, ModelPredictions modelPredictions) throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(modelPredictions.Predictions.Size() + "\n");
+
+        for (Prediction prediction : modelPredictions.Predictions)
+        {
+            ArrayList<String> values = Lists.CreateStringList(prediction.InstanceID, prediction.DependentVariableValue, prediction.Prediction);
+
+            for (double classProbability : prediction.ClassProbabilities)
+                values.add(String.valueOf(classProbability));
+
+            text.append(Lists.Join(values, "\t") + "\n");
+        }
+
+        text.append(modelPredictions.Model);
+
+        // The file is renamed after it has been written, so other processes never see part of an entry
+        String filePath = GetFilePath(key);
+        String tempFilePath = Settings.PREDICTION_CACHE_DIR + key + "." + Utilities.GetUniqueID() + ".tmp";
+        Files.WriteTextToFile(tempFilePath, text.toString());
+
+        File tempFile = new File(tempFilePath);
+        long numBytes = tempFile.length();
+
+        if (!tempFile.renameTo(new File(filePath)))
+        {
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (_sizeLock)
+        {
+            if (_numBytes == -1)
+                _numBytes = GetNumBytes(GetCacheFiles());
+            else
+                _numBytes += numBytes;
+
+            if (_numBytes > Settings.PREDICTION_CACHE_MEGABYTES * 1024 * 1024)
+                Evict();
+        }
+    }
+
+    /** Describes how often cached predictions have been found.
+     *
+     * @return Description of the cache hits and misses
+     */
+    public static String GetStatistics()
+    {
+        long numHits = _numHits.get();
+        long numMisses = _numMisses.get();
+        long numRequests = numHits + numMisses;
+
+        return "Prediction cache: " + numHits + " hits, " + numMisses + " misses" + (numRequests == 0 ? "" : " (" + (100 * numHits / numRequests) + "% hits)");
+    }
+
+    /** Indicates the number of times that cached predictions were found.
+     *
+     * @return Number of cache hits
+     */
+    public static long GetNumHits()
+    {
+        return _numHits.get();
+    }
+
+    /** Indicates the number of times that cached predictions were not found.
+     *
+     * @return Number of cache misses
+     */
+    public static long GetNumMisses()
+    {
+        return _numMisses.get();
+    }
+
+    /** The text is read exactly as it was written (Files.ReadTextFile skips empty lines, which may be part of the model description). */
+    private static String ReadText(File file) throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file));
+
+        try
+        {
+            char[] buffer = new char[8192];
+            int numChars;
+
+            while ((numChars = reader.read(buffer)) != -1)
+                text.append(buffer, 0, numChars);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return text.toString();
+    }
+
+    private static ModelPredictions Parse(String text) throws Exception
+    {
+        int numPredictions = Integer.parseInt(text.substring(0, text.indexOf("\n")));
+        int position = text.indexOf("\n") + 1;
+
+        Predictions predictions = new Predictions();
+
+        for (int i = 0; i < numPredictions; i++)
+        {
+            int end = text.indexOf("\n", position);
+            String[] values = text.substring(position, end).split("\t");
+            position = end + 1;
+
+            ArrayList<Double> classProbabilities = new ArrayList<Double>();
+            for (int j = 3; j < values.length; j++)
+                classProbabilities.add(Double.parseDouble(values[j]));
+
+            predictions.Add(new Prediction(values[0], values[1], values[2], classProbabilities));
+        }
+
+        return new ModelPredictions(text.substring(position), predictions);
+    }
+
+    /** Deletes the entries that were used least recently, until the cache is well below its size limit (so that entries are not deleted every time a new one is stored). */
+    private static void Evict()
+    {
+        File[] files = GetCacheFiles();
+
+        Arrays.sort(files, new Comparator<File>()
+        {
+            public int compare(File file1, File file2)
+            {
+                return Long.valueOf(file1.lastModified()).compareTo(file2.lastModified());
+            }
+        });
+
+        long numBytes = GetNumBytes(files);
+        long targetNumBytes = Settings.PREDICTION_CACHE_MEGABYTES * 1024 * 1024 * 9 / 10;
+        int numDeleted = 0;
+
+        for (int i = 0; i < files.length && numBytes > targetNumBytes; i++)
+        {
+            long fileNumBytes = files[i].length();
+
+            if (files[i].delete())
+            {
+                numBytes -= fileNumBytes;
+                numDeleted++;
+            }
+        }
+
+        _numBytes = numBytes;
+
+        Utilities.Log.Debug("Deleted " + numDeleted + " entries from the prediction cache.");
+    }
+
+    private static File[] GetCacheFiles()
+    {
+        return Files.GetFilesInDirectory(Settings.PREDICTION_CACHE_DIR, "*" + FILE_EXTENSION);
+    }
+
+    private static long GetNumBytes(File[] files)
+    {
+        long numBytes = 0;
+
+        for (File file : files)
+            numBytes += file.length();
+
+        return numBytes;
+    }
+
+    private static String GetFilePath(String key)
+    {
+        return Settings.PREDICTION_CACHE_DIR + key + FILE_EXTENSION;
+    }
+}
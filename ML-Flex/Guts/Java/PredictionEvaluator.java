@@ -18,6 +18,7 @@
 package mlflex;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.concurrent.Callable;
 
 /** This class contains logic for evaluating classification models. It orchestrates the process of performing classification for a particular data processor, feature-selection algorith, classification algorithm, number of features, and cross-validation fold. It also contains logic for distributing tasks across multiple computing nodes and threads.
@@ -126,51 +127,250 @@ public class PredictionEvaluator
      * @throws Exception
      */
     public void SavePredictions(boolean includeOuter) throws Exception
+    {
+        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+        for (int innerFold : GetInnerFolds())
+            taskHandler.Add(GetInnerFoldTask(innerFold));
+
+        if (includeOuter)
+            taskHandler.Add(GetOuterFoldTask());
+
+        taskHandler.ExecuteWithRetries("make predictions for " + toString());
+    }
+
+    /** Indicates the inner cross-validation folds for which predictions will be made.
+     *
+     * @return Inner cross-validation fold numbers
+     * @throws Exception
+     */
+    public ArrayList<Integer> GetInnerFolds() throws Exception
+    {
+        return Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetFoldsWithTestData(Processor);
+    }
+
+    /** Creates a task that makes predictions for the specified inner cross-validation fold. The features for this fold must have been selected before the task is executed.
+     *
+     * @param innerFold Number of inner cross-validation fold
+     * @return Task that returns true when the predictions have been made and saved
+     */
+    public LockedCallable<Object> GetInnerFoldTask(final int innerFold)
     {
         Files.CreateDirectoryNoFatalError(GetSaveDirectory());
 
-        MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+        return new LockedCallable<Object>(GetInnerStatusFilePath(innerFold), GetInnerLockFilePath(innerFold), "Make predictions for " + GetInnerDescription(innerFold), new Callable<Object>()
+        {
+            public Object call() throws Exception
+            {
+                ArrayList<String> features = GetInnerFeatures(innerFold);
+                DataInstanceCollection trainData = Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetTrainInstances(Processor, innerFold, features);
+                DataInstanceCollection testData = Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetTestInstances(Processor, innerFold, features);
+
+                return MakeAndSavePredictions(features, trainData, testData, GetInnerSaveFilePath(innerFold), null, GetInnerDescription(innerFold));
+            }
+        });
+    }
 
-        for (final int innerFold : Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetFoldsWithTestData(Processor))
+    /** Creates a task that makes predictions for the outer cross-validation fold. The features for this fold must have been selected before the task is executed.
+     *
+     * @return Task that returns true when the predictions have been made and saved
+     */
+    public LockedCallable<Object> GetOuterFoldTask()
+    {
+        Files.CreateDirectoryNoFatalError(GetSaveDirectory());
+
+        return new LockedCallable<Object>(GetOuterStatusFilePath(), GetOuterLockFilePath(), "Make predictions for " + GetOuterDescription(), new Callable<Object>()
         {
-            taskHandler.Add(new LockedCallable<Object>(GetInnerStatusFilePath(innerFold), GetInnerLockFilePath(innerFold), "Make predictions for " + GetInnerDescription(innerFold), new Callable<Object>()
+            public Object call() throws Exception
             {
-                public Object call() throws Exception
-                {
-                    ArrayList<String> features = GetInnerFeatures(innerFold);
-                    DataInstanceCollection trainData = Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetTrainInstances(Processor, innerFold, features);
-                    DataInstanceCollection testData = Utilities.InstanceVault.GetCrossValidationAssignments().GetInnerAssignments(OuterFold).GetTestInstances(Processor, innerFold, features);
+                ArrayList<String> features = GetOuterFeatures();
+                DataInstanceCollection trainData = Utilities.InstanceVault.GetCrossValidationAssignments().GetTrainInstances(Processor, OuterFold, features);
+                DataInstanceCollection testData = Utilities.InstanceVault.GetCrossValidationAssignments().GetTestInstances(Processor, OuterFold, features);
 
-                    return MakeAndSavePredictions(features, trainData, testData, GetInnerSaveFilePath(innerFold), null, GetInnerDescription(innerFold));
-                }
-            }));
+                return MakeAndSavePredictions(features, trainData, testData, GetOuterSaveFilePath(), GetOuterModelFilePath(), GetOuterDescription());
+            }
+        });
+    }
+
+    /** Creates a task that makes predictions for the same cross-validation fold of several evaluators at once. The evaluators must use the same data processor, feature-selection algorithm, classification algorithm and outer fold (typically they differ only in the number of features). The data for all of these models are retrieved once and passed to the classification algorithm as a single batch. As in GetInnerFoldTask and GetOuterFoldTask, each model has its own status file and lock file: models whose status file exists are skipped, and models whose lock file is held by another thread (or compute node) are left for that thread. The features for this fold must have been selected before the task is executed.
+     *
+     * @param evaluators Evaluators for which predictions should be made
+     * @param innerFold Number of inner cross-validation fold (or null for the outer fold)
+     * @return Task that returns true when the predictions have been made and saved for all of the evaluators
+     * @throws Exception
+     */
+    public static Callable<Object> GetBatchTask(final ArrayList<PredictionEvaluator> evaluators, final Integer innerFold) throws Exception
+    {
+        final PredictionEvaluator first = evaluators.get(0);
+
+        for (PredictionEvaluator evaluator : evaluators)
+        {
+            if (!evaluator.Processor.equals(first.Processor) || !evaluator.FeatureSelectionAlgorithm.equals(first.FeatureSelectionAlgorithm) || !evaluator.ClassificationAlgorithm.equals(first.ClassificationAlgorithm) || evaluator.OuterFold != first.OuterFold)
+                throw new Exception("Predictions cannot be made in the same batch for " + first + " and " + evaluator + ".");
+
+            Files.CreateDirectoryNoFatalError(evaluator.GetSaveDirectory());
         }
 
-        if (includeOuter)
+        return new Callable<Object>()
         {
-            taskHandler.Add(new LockedCallable<Object>(GetOuterStatusFilePath(), GetOuterLockFilePath(), "Make predictions for " + GetOuterDescription(), new Callable<Object>()
+            public Object call() throws Exception
             {
-                public Object call() throws Exception
+                boolean success = true;
+                ArrayList<PredictionEvaluator> lockedEvaluators = new ArrayList<PredictionEvaluator>();
+
+                try
                 {
-                    ArrayList<String> features = GetOuterFeatures();
-                    DataInstanceCollection trainData = Utilities.InstanceVault.GetCrossValidationAssignments().GetTrainInstances(Processor, OuterFold, features);
-                    DataInstanceCollection testData = Utilities.InstanceVault.GetCrossValidationAssignments().GetTestInstances(Processor, OuterFold, features);
+                    ArrayList<PredictionEvaluator> jobEvaluators = new ArrayList<PredictionEvaluator>();
+                    ArrayList<TrainTestJob> jobs = new ArrayList<TrainTestJob>();
+                    LinkedHashSet<String> ids = new LinkedHashSet<String>();
+                    LinkedHashSet<String> features = new LinkedHashSet<String>();
+
+                    for (PredictionEvaluator evaluator : evaluators)
+                    {
+                        String statusFilePath = Settings.STATUS_DIR + evaluator.GetStatusFilePath(innerFold);
+                        String lockFilePath = Settings.LOCKS_DIR + evaluator.GetLockFilePath(innerFold);
+
+                        // Checking to see if a stale lock file exists
+                        Utilities.CheckLockFileTimeout(lockFilePath);
+
+                        // Predictions that were made previously are not made again
+                        if (Files.FileExists(statusFilePath))
+                            continue;
+
+                        // Another thread or compute node is making these predictions, so this model is checked again when the task is retried
+                        if (Files.FileExists(lockFilePath) || !Files.CreateEmptyFile(lockFilePath))
+                        {
+                            success = false;
+                            continue;
+                        }
+
+                        lockedEvaluators.add(evaluator);
+
+                        // Checking a second time whether the predictions have already been made, due to a possible race condition on the previous check
+                        if (Files.FileExists(statusFilePath))
+                            continue;
+
+                        Utilities.Log.Debug("Attempt: Make predictions for " + evaluator.GetDescription(innerFold));
+
+                        TrainTestJob job = evaluator.GetJob(innerFold);
+
+                        if (evaluator.NeedToMakePredictions(job.Features, job.TrainIDs.size(), job.TestIDs.size(), evaluator.GetDescription(innerFold)))
+                        {
+                            ids.addAll(job.TrainIDs);
+                            ids.addAll(job.TestIDs);
+                            features.addAll(job.Features);
+                        }
+                        else
+                            job = null;
+
+                        jobEvaluators.add(evaluator);
+                        jobs.add(job);
+                    }
 
-                    return MakeAndSavePredictions(features, trainData, testData, GetOuterSaveFilePath(), GetOuterModelFilePath(), GetOuterDescription());
+                    ArrayList<TrainTestJob> jobsToExecute = new ArrayList<TrainTestJob>();
+                    for (TrainTestJob job : jobs)
+                        if (job != null)
+                            jobsToExecute.add(job);
+
+                    DataInstanceCollection data = null;
+                    ArrayList<ModelPredictions> results = new ArrayList<ModelPredictions>();
+
+                    if (jobsToExecute.size() > 0)
+                    {
+                        data = Utilities.InstanceVault.GetAnalysisInstances(first.Processor, new ArrayList<String>(ids), new ArrayList<String>(features));
+                        results = first.ClassificationAlgorithm.TrainTest(data, jobsToExecute, first._dependentVariableInstances.Clone());
+                    }
+
+                    for (int i = 0; i < jobs.size(); i++)
+                    {
+                        PredictionEvaluator evaluator = jobEvaluators.get(i);
+                        String description = evaluator.GetDescription(innerFold);
+
+                        if (jobs.get(i) != null)
+                        {
+                            ModelPredictions modelPredictions = results.get(jobsToExecute.indexOf(jobs.get(i)));
+                            String modelFilePath = innerFold == null ? evaluator.GetOuterModelFilePath() : null;
+
+                            if (!evaluator.SaveModelPredictions(jobs.get(i).GetTestData(data), modelPredictions, evaluator.GetSaveFilePath(innerFold), modelFilePath, description))
+                            {
+                                Utilities.Log.Debug("Retry required: Make predictions for " + description);
+                                success = false;
+                                continue;
+                            }
+                        }
+
+                        if (Files.CreateEmptyFile(Settings.STATUS_DIR + evaluator.GetStatusFilePath(innerFold)))
+                            Utilities.Log.Info("Success: Make predictions for " + description);
+                        else
+                        {
+                            Utilities.Log.Debug("Status file could not be saved for " + description + ".");
+                            success = false;
+                        }
+                    }
+                }
+                finally
+                {
+                    for (PredictionEvaluator evaluator : lockedEvaluators)
+                        Files.DeleteFile(Settings.LOCKS_DIR + evaluator.GetLockFilePath(innerFold));
                 }
-            }));
+
+                return success;
+            }
+        };
+    }
+
+    private TrainTestJob GetJob(Integer innerFold) throws Exception
+    {
+        CrossValidationAssignments assignments = Utilities.InstanceVault.GetCrossValidationAssignments();
+        ArrayList<String> features = GetOuterFeatures();
+        int fold = OuterFold;
+
+        if (innerFold != null)
+        {
+            assignments = assignments.GetInnerAssignments(OuterFold);
+            features = GetInnerFeatures(innerFold);
+            fold = innerFold;
         }
 
-        taskHandler.ExecuteWithRetries("make predictions for " + toString());
+        // These are the same instances that GetTrainInstances and GetTestInstances would retrieve
+        ArrayList<String> trainIDs = Utilities.InstanceVault.GetAnalysisInstanceIDs(Processor, assignments.GetTrainIDs(fold));
+        ArrayList<String> testIDs = Utilities.InstanceVault.GetAnalysisInstanceIDs(Processor, assignments.GetTestIDs(fold));
+
+        return new TrainTestJob(features, trainIDs, testIDs);
+    }
+
+    private String GetSaveFilePath(Integer innerFold)
+    {
+        return innerFold == null ? GetOuterSaveFilePath() : GetInnerSaveFilePath(innerFold);
+    }
+
+    private String GetLockFilePath(Integer innerFold)
+    {
+        return innerFold == null ? GetOuterLockFilePath() : GetInnerLockFilePath(innerFold);
+    }
+
+    private String GetStatusFilePath(Integer innerFold)
+    {
+        return innerFold == null ? GetOuterStatusFilePath() : GetInnerStatusFilePath(innerFold);
+    }
+
+    private String GetDescription(Integer innerFold)
+    {
+        return innerFold == null ? GetOuterDescription() : GetInnerDescription(innerFold);
     }
 
     private Boolean MakeAndSavePredictions(ArrayList<String> features, DataInstanceCollection trainData, DataInstanceCollection testData, String saveFilePath, String modelFilePath, String description) throws Exception
     {
-        if (!NeedToMakePredictions(features, trainData, testData, description))
+        if (!NeedToMakePredictions(features, trainData.Size(), testData.Size(), description))
             return Boolean.TRUE;
 
         ModelPredictions modelPredictions = ClassificationAlgorithm.TrainTest(trainData, testData, _dependentVariableInstances.Clone());
 
+        return SaveModelPredictions(testData, modelPredictions, saveFilePath, modelFilePath, description);
+    }
+
+    private Boolean SaveModelPredictions(DataInstanceCollection testData, ModelPredictions modelPredictions, String saveFilePath, String modelFilePath, String description) throws Exception
+    {
         if (!PredictionsAreValid(testData, modelPredictions, description))
             return Boolean.FALSE;
 
@@ -182,7 +382,7 @@ public class PredictionEvaluator
         return modelPredictions.Predictions.equals(Predictions.ReadFromFile(saveFilePath));
     }
 
-    private boolean NeedToMakePredictions(ArrayList<String> features, DataInstanceCollection trainData, DataInstanceCollection testData, String description)
+    private boolean NeedToMakePredictions(ArrayList<String> features, int numTrainInstances, int numTestInstances, String description)
     {
         if (features.size() == 0)
         {
@@ -190,13 +390,13 @@ public class PredictionEvaluator
             return false;
         }
 
-        if (trainData.Size() == 0)
+        if (numTrainInstances == 0)
         {
             Utilities.Log.Debug("No predictions were saved for " + description + " because there were no training data instances.");
             return false;
         }
 
-        if (testData.Size() == 0)
+        if (numTestInstances == 0)
         {
             Utilities.Log.Debug("No predictions were saved for " + description + " because there were no test data instances.");
             return false;
@@ -261,19 +261,14 @@ public class PredictionResults
         return GetNumPredictedAsDependentVariableClassIncorrectly(dependentVariableClass) / GetNumPredictedAsDependentVariableClass(dependentVariableClass);
     }
 
-    private Double _auc = Double.NaN;
-
-    /** Convenience method for getting the area under the receiver operating characteristic curve (AUC) value for the predictions.
+    /** Convenience method for getting the area under the receiver operating characteristic curve (AUC) value for the predictions. The value is cached with the predictions, so it is calculated only once even when many PredictionResults objects are created for the same predictions.
      *
      * @return AUC value (weighted by number of instances in each class)
      * @throws Exception
      */
     public double GetAuc() throws Exception
     {
-        if (_auc.equals(Double.NaN))
-            _auc = WekaInMemoryLearner.CalculateWeightedAreaUnderRoc(this.Predictions);
-
-        return _auc;
+        return Predictions.GetAuc();
     }
 
     /** Calculates the Youden index for the predictions. The Youden index is another metric that can be used to assess the performance of data sets with imbalanced class distributions. Youden index=1−(false positive rate+false negative rate) See "Ratio adjustment and calibration scheme for gene-wise normalization to enhance microarray inter-study prediction" by Cheng (Bioinformatics, 2009) "Index for rating diagnostic tests", Cancer, 3, 32–35. See also YOUDEN, W. J. (1950). Index for rating diagnostic tests. Cancer, 3(1), 32-5. http://www.ncbi.nlm.nih.gov/pubmed/15405679.
@@ -18,6 +18,8 @@
 package mlflex;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 
@@ -27,6 +29,8 @@ import java.util.Iterator;
 public class Predictions implements Iterable<Prediction>
 {
     private ArrayList<Prediction> _predictions = new ArrayList<Prediction>();
+    private Double _auc = null;
+    private HashMap<Integer, Predictions> _instancePredictions = null;
 
     /** Default constructor
      */
@@ -52,6 +56,7 @@ public class Predictions implements Iterable<Prediction>
     public Predictions Add(Prediction prediction)
     {
         _predictions.add(prediction);
+        ClearCache();
         return this;
     }
 
@@ -63,6 +68,7 @@ public class Predictions implements Iterable<Prediction>
     public Predictions Add(ArrayList<Prediction> predictions)
     {
         _predictions.addAll(predictions);
+        ClearCache();
         return this;
     }
 
@@ -74,9 +80,16 @@ public class Predictions implements Iterable<Prediction>
     public Predictions Add(Predictions predictions)
     {
         _predictions.addAll(predictions._predictions);
+        ClearCache();
         return this;
     }
 
+    private synchronized void ClearCache()
+    {
+        _auc = null;
+        _instancePredictions = null;
+    }
+
     /** Retrieves the prediction for a given index value
      *
      * @param i Index of the prediction to get
@@ -93,12 +106,12 @@ public class Predictions implements Iterable<Prediction>
      */
     public ArrayList<String> GetInstanceIDs()
     {
-        HashSet<String> instanceIDs = new HashSet<String>();
+        BitSet instanceIndices = new BitSet();
 
         for (Prediction prediction : _predictions)
-            instanceIDs.add(prediction.InstanceID);
+            instanceIndices.set(prediction.InstanceIndex);
 
-        return new ArrayList<String>(instanceIDs);
+        return InstanceIdRegistry.ToIDs(instanceIndices);
     }
 
     /** Retrieves a list predictions for a given set of instance IDs
@@ -108,25 +121,38 @@ public class Predictions implements Iterable<Prediction>
      */
     public Predictions GetInstancePredictions(ArrayList<String> instanceIDs)
     {
+        BitSet instanceIndices = InstanceIdRegistry.ToBitSet(instanceIDs);
         Predictions predictions = new Predictions();
 
         for (Prediction prediction : _predictions)
-            if (instanceIDs.contains(prediction.InstanceID))
+            if (instanceIndices.get(prediction.InstanceIndex))
                 predictions.Add(prediction);
 
         return predictions;
     }
 
-
-    private Predictions GetInstancePredictions(String instanceID)
+    // The predictions for each data instance are indexed the first time they are needed, so repeated lookups do not require a scan of all predictions
+    private synchronized Predictions GetInstancePredictions(String instanceID)
     {
-        Predictions predictions = new Predictions();
-
-        for (Prediction prediction : _predictions)
-            if (prediction.InstanceID.equals(instanceID))
-                predictions.Add(prediction);
+        if (_instancePredictions == null)
+        {
+            _instancePredictions = new HashMap<Integer, Predictions>();
+
+            for (Prediction prediction : _predictions)
+            {
+                Predictions instancePredictions = _instancePredictions.get(prediction.InstanceIndex);
+                if (instancePredictions == null)
+                {
+                    instancePredictions = new Predictions();
+                    _instancePredictions.put(prediction.InstanceIndex, instancePredictions);
+                }
+
+                instancePredictions._predictions.add(prediction);
+            }
+        }
 
-        return predictions;
+        Predictions predictions = _instancePredictions.get(InstanceIdRegistry.GetIndex(instanceID));
+        return predictions == null ? new Predictions() : predictions;
     }
 
     /** Convenience method for obtaining a prediction for a given instance ID
@@ -213,26 +239,32 @@ public class Predictions implements Iterable<Prediction>
         if (!Files.FileExists(filePath))
             return new Predictions();
 
-        ArrayList<ArrayList<String>> fileLines = Files.ParseDelimitedFile(filePath);
-
-        if (fileLines.size() == 0)
-            return new Predictions();
-
-        fileLines.remove(0);
-
         Predictions predictions = new Predictions();
 
-        for (ArrayList<String> row : fileLines)
-        {
-            String id = row.get(0);
-            String actualClass = row.get(1);
-            String predictedClass = row.get(2);
-
-            ArrayList<Double> classProbabilities = new ArrayList<Double>();
-            for (int i=3; i<row.size(); i++)
-                classProbabilities.add(Double.parseDouble(row.get(i)));
+        DelimitedFileReader reader = new DelimitedFileReader(filePath);
 
-            predictions.Add(new Prediction(id, actualClass, predictedClass, classProbabilities));
+        try
+        {
+            // The first row is a header
+            if (!reader.NextRow())
+                return predictions;
+
+            while (reader.NextRow())
+            {
+                String id = reader.GetField(0);
+                String actualClass = reader.GetField(1);
+                String predictedClass = reader.GetField(2);
+
+                ArrayList<Double> classProbabilities = new ArrayList<Double>();
+                for (int i=3; i<reader.GetNumFields(); i++)
+                    classProbabilities.add(Double.parseDouble(reader.GetField(i)));
+
+                predictions.Add(new Prediction(id, actualClass, predictedClass, classProbabilities));
+            }
+        }
+        finally
+        {
+            reader.Close();
         }
 
         return predictions;
@@ -277,6 +309,19 @@ public class Predictions implements Iterable<Prediction>
         return _predictions.size();
     }
 
+    /** Calculates the area under the receiver operating characteristic curve (AUC) for these predictions. The value is cached until more predictions are added.
+     *
+     * @return AUC value (weighted by number of instances in each class)
+     * @throws Exception
+     */
+    public synchronized double GetAuc() throws Exception
+    {
+        if (_auc == null)
+            _auc = EvaluationMetrics.CalculateWeightedAreaUnderRoc(this);
+
+        return _auc;
+    }
+
     public Iterator<Prediction> iterator()
     {
         return _predictions.iterator();
@@ -21,7 +21,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 
-/** This class contains utility methods for interacting with the R Project software via command-line calls.
+/** This class contains utility methods for interacting with the R Project software via command-line calls. By default, the R script is run in worker mode, so that one long-running R process per thread handles many train/test requests (data are sent to it over standard input rather than via temporary files). If R_PERSISTENT_WORKERS is set to false in the experiment configuration (or if the R script does not support worker mode), R is invoked separately for each request.
  * @author Stephen Piccolo
  */
 public class RLearner extends AbstractMachineLearner
@@ -37,6 +37,24 @@ public class RLearner extends AbstractMachineLearner
     {
         CheckDataTypes(trainingData, testData);
 
+        ArrayList<String> commandArgs = Lists.CreateStringList(algorithmParameters.get(0), "--vanilla", algorithmParameters.get(1).replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR));
+        ArrayList<String> parameters = Lists.Subset(algorithmParameters, 2, algorithmParameters.size());
+
+        if (Utilities.Config.GetBooleanValue("R_PERSISTENT_WORKERS", true))
+        {
+            ArrayList<ArrayList<String>> dataBlocks = new ArrayList<ArrayList<String>>();
+            dataBlocks.add(new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "RTrain_" + Utilities.GetUniqueID(), trainingData, testData, dependentVariableInstances).GetTabDelimitedLines(false));
+            dataBlocks.add(new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "RTest_" + Utilities.GetUniqueID(), testData, trainingData, null).GetTabDelimitedLines(false));
+
+            ArrayList<String> workerArgs = new ArrayList<String>(commandArgs);
+            workerArgs.add("worker");
+
+            ArrayList<String> outputLines = CommandLineWorker.ExecuteRequest(workerArgs, parameters, dataBlocks);
+
+            if (outputLines != null)
+                return new ModelPredictions("", ParsePredictions(Lists.Join(outputLines, "\n"), testData, dependentVariableInstances));
+        }
+
         AnalysisFileCreator trainingCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "RTrain_" + Utilities.GetUniqueID(), trainingData, testData, dependentVariableInstances);
         trainingCreator.CreateTabDelimitedFile(false);
         AnalysisFileCreator testCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, "RTest_" + Utilities.GetUniqueID(), testData, trainingData, null);
@@ -47,9 +65,6 @@ public class RLearner extends AbstractMachineLearner
 
         String outputFileName = "Output_" + Utilities.GetUniqueID() + ".txt";
 
-        ArrayList<String> commandArgs = Lists.CreateStringList(algorithmParameters.get(0), "--vanilla", algorithmParameters.get(1).replace("{Settings.MAIN_DIR}", Settings.MAIN_DIR).replace("{Settings.GUTS_DIR}", Settings.GUTS_DIR));
-
-        ArrayList<String> parameters = Lists.Subset(algorithmParameters, 2, algorithmParameters.size());
         parameters.add(trainingCreator.GetTabDelimitedFilePath());
         parameters.add(testCreator.GetTabDelimitedFilePath());
         parameters.add(outputDirectoryPath + outputFileName);
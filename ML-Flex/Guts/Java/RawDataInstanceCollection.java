@@ -18,80 +18,253 @@
 package mlflex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
-/** This class is used to store raw data. It allows multiple values per data point and is essentially a wrapper around DataInstanceCollection.
+/** This class is used to store raw data. It allows multiple values per data point. Values are transformed and (when the summarizer supports it) summarized as they are added, so the raw data are processed in a single pass, and only one running summary per data point and instance is kept in memory.
  * @author Stephen Piccolo
  */
 public class RawDataInstanceCollection
 {
-    private DataInstanceCollection _instanceCollection = new DataInstanceCollection();
+    private AbstractDataProcessor _processor;
 
-    /** Adds a data valueToAdd for a given instance to this collection. It takes care of handling multiple values per data point.
+    private HashMap<String, RawDataPoint> _dataPoints = new HashMap<String, RawDataPoint>();
+    private ArrayList<RawDataPoint> _dataPointList = new ArrayList<RawDataPoint>();
+
+    private HashMap<String, Integer> _instanceIndices = new HashMap<String, Integer>();
+    private ArrayList<String> _instanceIDs = new ArrayList<String>();
+
+    /** Constructor.
+     *
+     * @param processor Data processor that provides the metadata (summarizer, transformer, and null values) for each data point
+     */
+    public RawDataInstanceCollection(AbstractDataProcessor processor)
+    {
+        _processor = processor;
+    }
+
+    /** Adds a data valueToAdd for a given instance to this collection. It takes care of handling multiple values per data point. Values may be added from multiple threads.
      *
      * @param dataPointName Data point name
      * @param instanceID Data instance ID
      * @param valueToAdd Data value to add
      * @return This instance
+     * @throws Exception
+     */
+    public synchronized RawDataInstanceCollection Add(String dataPointName, String instanceID, String valueToAdd) throws Exception
+    {
+        AddValue(GetDataPoint(dataPointName), GetInstanceIndex(instanceID), valueToAdd);
+
+        return this;
+    }
+
+    /** Adds the values that are stored in a data matrix (for example, after a file has been parsed in parallel). This is equivalent to adding each value separately, but each data point and data instance is looked up only once.
+     *
+     * @param matrix Matrix that contains the values
+     * @param instanceIDs Data instance ID for each row of the matrix
+     * @return This instance
+     * @throws Exception
      */
-    public RawDataInstanceCollection Add(String dataPointName, String instanceID, String valueToAdd)
+    public synchronized RawDataInstanceCollection Add(DataMatrix matrix, ArrayList<String> instanceIDs) throws Exception
     {
-        DataValues instance = new DataValues(instanceID);
+        int[] instanceIndices = new int[instanceIDs.size()];
+        for (int row = 0; row < instanceIndices.length; row++)
+            instanceIndices[row] = GetInstanceIndex(instanceIDs.get(row));
 
-        if (_instanceCollection.Contains(instanceID))
-            instance = _instanceCollection.Get(instanceID);
+        for (int column = 0; column < matrix.GetNumColumns(); column++)
+        {
+            RawDataPoint dataPoint = null;
 
-        String dataPointValue = valueToAdd;
+            for (int row = 0; row < instanceIndices.length; row++)
+            {
+                String value = matrix.GetValue(row, column);
 
-        if (instance.HasDataPoint(dataPointName))
-            dataPointValue = instance.GetDataPointValue(dataPointName) + ";" + valueToAdd;
+                if (value == null)
+                    continue;
 
-        instance.AddDataPoint(dataPointName, dataPointValue);
+                if (dataPoint == null)
+                    dataPoint = GetDataPoint(matrix.GetColumnName(column));
 
-        _instanceCollection.UpdateInstance(instance);
+                AddValue(dataPoint, instanceIndices[row], value);
+            }
+        }
 
         return this;
     }
 
+    private RawDataPoint GetDataPoint(String dataPointName)
+    {
+        RawDataPoint dataPoint = _dataPoints.get(dataPointName);
+
+        if (dataPoint == null)
+        {
+            dataPoint = new RawDataPoint(_processor.GetDataPointMeta(dataPointName));
+            _dataPoints.put(dataPointName, dataPoint);
+            _dataPointList.add(dataPoint);
+        }
+
+        return dataPoint;
+    }
+
+    private int GetInstanceIndex(String instanceID)
+    {
+        Integer instanceIndex = _instanceIndices.get(instanceID);
+
+        if (instanceIndex == null)
+        {
+            instanceIndex = _instanceIDs.size();
+            _instanceIndices.put(instanceID, instanceIndex);
+            _instanceIDs.add(instanceID);
+        }
+
+        return instanceIndex;
+    }
+
+    private void AddValue(RawDataPoint dataPoint, int instanceIndex, String value) throws Exception
+    {
+        // Multiple values can be specified in a single string (separated by semicolons)
+        if (value.indexOf(';') > -1)
+        {
+            for (String x : value.split(";"))
+                dataPoint.Add(instanceIndex, x);
+        }
+        else
+            dataPoint.Add(instanceIndex, value);
+    }
+
     /** Transforms and summarizes all raw data values.
      *
      * @return Transformed, summarized data instance collection
      * @throws Exception
      */
-    public DataInstanceCollection GetTransformedSummarizedCollection(AbstractDataProcessor processor) throws Exception
+    public DataInstanceCollection GetTransformedSummarizedCollection() throws Exception
     {
-        Utilities.Log.Info(_instanceCollection.Size() + " raw data instances");
-        Utilities.Log.Info(_instanceCollection.GetNumDataPoints() + " raw data points");
+        Utilities.Log.Info(_instanceIDs.size() + " raw data instances");
+        Utilities.Log.Info(_dataPointList.size() + " raw data points");
 
         DataInstanceCollection newCollection = new DataInstanceCollection();
 
-        for (String dataPointName : _instanceCollection.GetDataPointNames())
-            for (String instanceID : _instanceCollection.GetIDs())
-                newCollection.Add(dataPointName, instanceID, GetTransformedSummarizedValue(dataPointName, instanceID, processor.GetDataPointMeta(dataPointName)));
+        for (RawDataPoint dataPoint : _dataPointList)
+            for (int i = 0; i < _instanceIDs.size(); i++)
+                newCollection.Add(dataPoint.Meta.Name, _instanceIDs.get(i), dataPoint.GetSummarizedValue(i));
 
-        Utilities.Log.Info(_instanceCollection.Size() + " transformed/summarized data instances");
-        Utilities.Log.Info(_instanceCollection.GetNumDataPoints() + " transformed/summarized data points");
+        Utilities.Log.Info(newCollection.Size() + " transformed/summarized data instances");
+        Utilities.Log.Info(newCollection.GetNumDataPoints() + " transformed/summarized data points");
 
         return newCollection;
     }
 
-    private String GetTransformedSummarizedValue(String dataPointName, String instanceID, DataValueMeta meta) throws Exception
+    /** This class stores the values for a single data point, indexed by the position of each data instance. For summarizers that support incremental summarization, the running summaries are stored in a primitive array; otherwise, all values are kept until the collection is summarized. */
+    private static class RawDataPoint
     {
-        if (!_instanceCollection.Contains(instanceID))
-            return Settings.MISSING_VALUE_STRING;
+        DataValueMeta Meta;
+        boolean IsIncremental;
+
+        int[] Counts = new int[0];
+        String[] SelectedValues = new String[0];
+        double[] Summaries;
+        ArrayList<ArrayList<String>> ValueLists;
+
+        RawDataPoint(DataValueMeta meta)
+        {
+            Meta = meta;
+            IsIncremental = meta.Summarizer.IsIncremental();
+
+            if (IsIncremental)
+                Summaries = new double[0];
+            else
+                ValueLists = new ArrayList<ArrayList<String>>();
+        }
+
+        void Add(int instanceIndex, String value) throws Exception
+        {
+            EnsureCapacity(instanceIndex + 1);
+
+            if (Meta.IsNullValue(value))
+                return;
+
+            value = Meta.Transformer.TransformValue(value);
+
+            int count = Counts[instanceIndex]++;
+
+            if (!IsIncremental)
+            {
+                ArrayList<String> values = ValueLists.get(instanceIndex);
+                if (values == null)
+                {
+                    values = new ArrayList<String>(2);
+                    ValueLists.set(instanceIndex, values);
+                }
+
+                values.add(value);
+                return;
+            }
+
+            // Values are only parsed when a data point has multiple values for the same instance
+            if (count == 0)
+            {
+                SelectedValues[instanceIndex] = value;
+                return;
+            }
+
+            if (count == 1)
+                Summaries[instanceIndex] = ParseNumber(SelectedValues[instanceIndex]);
+
+            double summary = Meta.Summarizer.Accumulate(Summaries[instanceIndex], ParseNumber(value));
+
+            if (Double.compare(summary, Summaries[instanceIndex]) != 0)
+            {
+                Summaries[instanceIndex] = summary;
+                SelectedValues[instanceIndex] = value;
+            }
+        }
+
+        String GetSummarizedValue(int instanceIndex) throws Exception
+        {
+            int count = instanceIndex < Counts.length ? Counts[instanceIndex] : 0;
+
+            if (count == 0)
+                return Settings.MISSING_VALUE_STRING;
+
+            if (!IsIncremental)
+            {
+                ArrayList<String> values = ValueLists.get(instanceIndex);
+                return count == 1 ? values.get(0) : Meta.Summarizer.Summarize(values);
+            }
+
+            if (count == 1)
+                return SelectedValues[instanceIndex];
+
+            return Meta.Summarizer.Finish(Summaries[instanceIndex], count, SelectedValues[instanceIndex]);
+        }
 
-        ArrayList<String> values = Lists.CreateStringList(_instanceCollection.Get(instanceID).GetDataPointValue(dataPointName).split(";"));
+        private void EnsureCapacity(int capacity)
+        {
+            if (Counts.length >= capacity)
+                return;
 
-        ArrayList<String> transformedValues = new ArrayList<String>();
-        for (String value : values)
-            if (!meta.IsNullValue(value))
-                transformedValues.add(meta.Transformer.TransformValue(value));
+            int newCapacity = Math.max(capacity, Counts.length * 2);
 
-        if (transformedValues.size() == 0)
-            return Settings.MISSING_VALUE_STRING;
+            Counts = Arrays.copyOf(Counts, newCapacity);
+            SelectedValues = Arrays.copyOf(SelectedValues, newCapacity);
 
-        if (transformedValues.size() == 1)
-            return transformedValues.get(0);
+            if (IsIncremental)
+                Summaries = Arrays.copyOf(Summaries, newCapacity);
+            else
+                while (ValueLists.size() < newCapacity)
+                    ValueLists.add(null);
+        }
 
-        return meta.Summarizer.Summarize(transformedValues);
+        private static double ParseNumber(String value)
+        {
+            try
+            {
+                return Double.parseDouble(value);
+            }
+            catch (NumberFormatException ex)
+            {
+                return Double.NaN;
+            }
+        }
     }
 }
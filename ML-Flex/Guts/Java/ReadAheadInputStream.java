@@ -0,0 +1,167 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/** This class reads an input stream on a separate thread, so that the next blocks of data are already available (for example, already decompressed) when the caller is ready to process them. Only a few blocks are read ahead at a time, so little data is stored in memory.
+ * @author Stephen Piccolo
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int NUM_BLOCKS_AHEAD = 4;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private InputStream _stream;
+    private ArrayBlockingQueue<byte[]> _blocks = new ArrayBlockingQueue<byte[]>(NUM_BLOCKS_AHEAD);
+    private Thread _thread;
+    private volatile IOException _exception = null;
+    private volatile boolean _closed = false;
+
+    private byte[] _block = null;
+    private int _position = 0;
+
+    /** Constructor. Reading begins immediately.
+     *
+     * @param stream Stream that will be read on a separate thread
+     */
+    public ReadAheadInputStream(InputStream stream)
+    {
+        _stream = stream;
+
+        _thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                ReadBlocks();
+            }
+        }, "ReadAhead");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    private void ReadBlocks()
+    {
+        try
+        {
+            while (!_closed)
+            {
+                byte[] block = new byte[BLOCK_SIZE];
+                int numRead = 0;
+
+                while (numRead < BLOCK_SIZE)
+                {
+                    int n = _stream.read(block, numRead, BLOCK_SIZE - numRead);
+                    if (n == -1)
+                        break;
+                    numRead += n;
+                }
+
+                if (numRead > 0)
+                    _blocks.put(numRead == BLOCK_SIZE ? block : Arrays.copyOf(block, numRead));
+
+                if (numRead < BLOCK_SIZE)
+                    break;
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            return;
+        }
+        catch (IOException ex)
+        {
+            _exception = ex;
+        }
+
+        try
+        {
+            _blocks.put(END_OF_STREAM);
+        }
+        catch (InterruptedException ex)
+        {
+        }
+    }
+
+    private boolean NextBlock() throws IOException
+    {
+        if (_block == END_OF_STREAM)
+            return false;
+
+        try
+        {
+            _block = _blocks.take();
+            _position = 0;
+        }
+        catch (InterruptedException ex)
+        {
+            throw new IOException("Interrupted while waiting for data to be read.");
+        }
+
+        if (_block == END_OF_STREAM)
+        {
+            if (_exception != null)
+                throw _exception;
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if ((_block == null || _position == _block.length) && !NextBlock())
+            return -1;
+
+        return _block[_position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException
+    {
+        if (length == 0)
+            return 0;
+
+        if ((_block == null || _position == _block.length) && !NextBlock())
+            return -1;
+
+        int numRead = Math.min(length, _block.length - _position);
+        System.arraycopy(_block, _position, bytes, offset, numRead);
+        _position += numRead;
+
+        return numRead;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return _block == null ? 0 : _block.length - _position;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _closed = true;
+        _thread.interrupt();
+        _stream.close();
+    }
+}
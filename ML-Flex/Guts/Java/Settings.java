@@ -40,10 +40,13 @@ public class Settings
     public static String LOCKS_DIR;
     public static String OUTPUT_DIR;
     public static String STATUS_DIR;
+    public static String PREDICTION_CACHE_DIR;
+    public static long PREDICTION_CACHE_MEGABYTES;
     public static int NUM_THREADS;
     public static long THREAD_TIMEOUT_MINUTES;
     public static long PAUSE_SECONDS;
     public static boolean SKIP_PREVIOUSLY_COMPLETED_ITERATIONS;
+    public static boolean READ_AHEAD = false;
     public static String MISSING_VALUE_STRING = "?";
     public static HashMap<String, ClassificationAlgorithm> ClassificationAlgorithms = new HashMap<String, ClassificationAlgorithm>();
     public static HashMap<String, FeatureSelectionAlgorithm> FeatureSelectionAlgorithms = new HashMap<String, FeatureSelectionAlgorithm>();
@@ -0,0 +1,142 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/** This class writes a text file through a single buffered stream that stays open until the file is complete (rather than opening the file each time a line is written). When many lines are written at once, they are formatted in parallel, in chunks, and the chunks are written to the file in order. Only a few chunks are stored in memory at a time.
+ * @author Stephen Piccolo
+ */
+public class StreamingFileWriter
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int LINES_PER_CHUNK = 256;
+
+    /** This interface is used to format the line of text that represents an item. */
+    public interface LineFormatter<T>
+    {
+        /** Formats the line of text that represents an item.
+         *
+         * @param item Item to be formatted
+         * @return Line of text (without a new line character)
+         * @throws Exception
+         */
+        String FormatLine(T item) throws Exception;
+    }
+
+    private Writer _writer;
+
+    /** Constructor. The file is created (or overwritten) at this point.
+     *
+     * @param filePath Absolute file path
+     * @throws Exception
+     */
+    public StreamingFileWriter(String filePath) throws Exception
+    {
+        _writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath)), BUFFER_SIZE);
+    }
+
+    /** Writes text to the file.
+     *
+     * @param text Text to write
+     * @return This instance
+     * @throws Exception
+     */
+    public StreamingFileWriter Write(String text) throws Exception
+    {
+        _writer.write(text);
+        return this;
+    }
+
+    /** Writes a line to the file (including a new line character).
+     *
+     * @param line Line to write
+     * @return This instance
+     * @throws Exception
+     */
+    public StreamingFileWriter WriteLine(String line) throws Exception
+    {
+        _writer.write(line);
+        _writer.write("\n");
+        return this;
+    }
+
+    /** Writes one line to the file for each item (including new line characters). The lines are formatted in parallel, but they are written in the same order as the items.
+     *
+     * @param items Items to be written
+     * @param formatter Object that formats the line for each item (this must be safe to call from multiple threads)
+     * @return This instance
+     * @throws Exception
+     */
+    public <T> StreamingFileWriter WriteLines(final List<T> items, final LineFormatter<T> formatter) throws Exception
+    {
+        if (Settings.NUM_THREADS <= 1 || items.size() <= LINES_PER_CHUNK)
+        {
+            for (T item : items)
+                WriteLine(formatter.FormatLine(item));
+
+            return this;
+        }
+
+        int numChunks = (items.size() + LINES_PER_CHUNK - 1) / LINES_PER_CHUNK;
+        int numChunksPerBatch = Settings.NUM_THREADS * 2;
+
+        for (int batchStart = 0; batchStart < numChunks; batchStart += numChunksPerBatch)
+        {
+            MultiThreadedTaskHandler taskHandler = new MultiThreadedTaskHandler();
+
+            for (int chunk = batchStart; chunk < Math.min(numChunks, batchStart + numChunksPerBatch); chunk++)
+            {
+                final int start = chunk * LINES_PER_CHUNK;
+                final int end = Math.min(items.size(), start + LINES_PER_CHUNK);
+
+                taskHandler.Add(new Callable<Object>()
+                {
+                    public Object call() throws Exception
+                    {
+                        StringBuilder text = new StringBuilder();
+
+                        for (int i = start; i < end; i++)
+                            text.append(formatter.FormatLine(items.get(i))).append("\n");
+
+                        return text.toString();
+                    }
+                });
+            }
+
+            for (Object text : taskHandler.Execute())
+                _writer.write((String)text);
+        }
+
+        return this;
+    }
+
+    /** Flushes any buffered text to the file and closes it.
+     *
+     * @throws Exception
+     */
+    public void Close() throws Exception
+    {
+        _writer.close();
+    }
+}
@@ -0,0 +1,147 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** This class executes computational tasks that depend on each other. A task is started as soon as all of the tasks it depends on have completed, so threads do not sit idle waiting for unrelated tasks to finish (as they would if the tasks were executed in separate batches). As with MultiThreadedTaskHandler.ExecuteWithRetries, a task is considered complete when it returns true; if it returns false or throws an exception, it is tried again after a pause (another thread or compute node may be processing it).
+ * @author Stephen Piccolo
+ */
+public class TaskGraph
+{
+    /** This class represents a task in the graph. Instances are created via the Add method and can be used to specify dependencies for tasks that are added later. */
+    public static class Task
+    {
+        private String _description;
+        private Callable<Object> _callable;
+        private ArrayList<Task> _dependents = new ArrayList<Task>();
+        private int _numPendingDependencies = 0;
+
+        private Task(String description, Callable<Object> callable)
+        {
+            _description = description;
+            _callable = callable;
+        }
+    }
+
+    private ArrayList<Task> _tasks = new ArrayList<Task>();
+
+    private ScheduledThreadPoolExecutor _service;
+    private CountDownLatch _remainingTasks;
+
+    /** Adds a task to the graph.
+     *
+     * @param description Description of the task (used for logging)
+     * @param callable Object to be executed
+     * @param dependencies Tasks that must complete before this task can be started (may be empty)
+     * @return The task that was added
+     */
+    public Task Add(String description, Callable<Object> callable, Collection<Task> dependencies)
+    {
+        Task task = new Task(description, callable);
+
+        for (Task dependency : dependencies)
+        {
+            dependency._dependents.add(task);
+            task._numPendingDependencies++;
+        }
+
+        _tasks.add(task);
+
+        return task;
+    }
+
+    /** Indicates the number of tasks that have been added.
+     *
+     * @return Number of tasks
+     */
+    public int Size()
+    {
+        return _tasks.size();
+    }
+
+    /** Executes all tasks, respecting the dependencies between them, and waits for them to complete.
+     *
+     * @param description Description of the tasks (used for logging)
+     * @throws Exception
+     */
+    public void Execute(String description) throws Exception
+    {
+        if (_tasks.size() == 0)
+            return;
+
+        Utilities.Log.Debug("Executing " + _tasks.size() + " tasks on the shared thread pool: " + description + ".");
+
+        _service = MultiThreadedTaskHandler.GetSharedExecutor();
+        _remainingTasks = new CountDownLatch(_tasks.size());
+
+        for (Task task : _tasks)
+            if (task._numPendingDependencies == 0)
+                Schedule(task, 0);
+
+        _remainingTasks.await();
+    }
+
+    private void Schedule(final Task task, long delaySeconds)
+    {
+        _service.schedule(new Runnable()
+        {
+            public void run()
+            {
+                Run(task);
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void Run(Task task)
+    {
+        boolean isComplete = false;
+
+        try
+        {
+            isComplete = Boolean.TRUE.equals(task._callable.call());
+        }
+        catch (Throwable ex)
+        {
+            Utilities.Log.Exception(ex);
+        }
+
+        if (!isComplete)
+        {
+            Utilities.Log.Debug("Pausing for " + Settings.PAUSE_SECONDS + " seconds: " + task._description + ". Other threads may be processing this task.");
+            Schedule(task, Settings.PAUSE_SECONDS);
+            return;
+        }
+
+        for (Task dependent : task._dependents)
+            if (DecrementPendingDependencies(dependent) == 0)
+                Schedule(dependent, 0);
+
+        _remainingTasks.countDown();
+    }
+
+    private synchronized int DecrementPendingDependencies(Task task)
+    {
+        return --task._numPendingDependencies;
+    }
+}
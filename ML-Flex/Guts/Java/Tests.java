@@ -29,5 +29,6 @@ public class Tests
     public static void Test() throws Exception
     {
         new EvaluationMetrics().Test();
+        new WekaLearner().Test();
     }
 }
\ No newline at end of file
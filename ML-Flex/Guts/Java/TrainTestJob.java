@@ -0,0 +1,65 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.util.ArrayList;
+
+/** This class describes one training/testing task within a batch: which features should be used and which data instances should be used for training and testing. The data values themselves are stored once for the whole batch, and each job refers to a subset of them.
+ * @author Stephen Piccolo
+ */
+public class TrainTestJob
+{
+    public final ArrayList<String> Features;
+    public final ArrayList<String> TrainIDs;
+    public final ArrayList<String> TestIDs;
+
+    /** Constructor
+     *
+     * @param features Names of the features that should be used
+     * @param trainIDs IDs of the training data instances
+     * @param testIDs IDs of the test data instances
+     */
+    public TrainTestJob(ArrayList<String> features, ArrayList<String> trainIDs, ArrayList<String> testIDs)
+    {
+        Features = features;
+        TrainIDs = trainIDs;
+        TestIDs = testIDs;
+    }
+
+    /** Gets the training data for this job. No values are copied.
+     *
+     * @param data Data instances for the whole batch
+     * @return View of the training instances and features
+     * @throws Exception
+     */
+    public DataInstanceCollection GetTrainData(DataInstanceCollection data) throws Exception
+    {
+        return data.CreateView(TrainIDs, Features);
+    }
+
+    /** Gets the test data for this job. No values are copied.
+     *
+     * @param data Data instances for the whole batch
+     * @return View of the test instances and features
+     * @throws Exception
+     */
+    public DataInstanceCollection GetTestData(DataInstanceCollection data) throws Exception
+    {
+        return data.CreateView(TestIDs, Features);
+    }
+}
@@ -40,9 +40,8 @@ public class TrainTestValidationAssignments extends CrossValidationAssignments
     @Override
     public int GetFoldNumber(String instanceID) throws Exception
     {
-        if (!Assignments.get(1).contains(instanceID) && !Assignments.get(2).contains(instanceID))
-            throw new Exception("The instance ID (" + instanceID + ") is not assigned to a fold");
-
+        // The training and test instances are both used in the only fold
+        super.GetFoldNumber(instanceID);
         return 1;
     }
 
@@ -70,13 +69,25 @@ public class TrainTestValidationAssignments extends CrossValidationAssignments
         return Assignments.get(2);
     }
 
+    @Override
+    protected ArrayList<String> GetUnfilteredTestIDs(int fold) throws Exception
+    {
+        return Assignments.get(2);
+    }
+
+    @Override
+    protected ArrayList<String> GetUnfilteredTrainIDs(int fold) throws Exception
+    {
+        return Assignments.get(1);
+    }
+
     @Override
     public ArrayList<String> GetTrainIDs(int fold) throws Exception
     {
         if (fold > 1)
             throw new Exception("When performing training and testing, only fold 0 is allowed. Fold " + fold + " was specified.");
 
-        return FilterTrainIDs(Assignments.get(1));
+        return super.GetTrainIDs(fold);
     }
 
     @Override
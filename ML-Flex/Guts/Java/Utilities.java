@@ -151,10 +151,21 @@ public class Utilities
      */
     public static String GetScalarValue(String filePath, String key) throws Exception
     {
-        if (Files.FileExists(filePath))
-            for (ArrayList<String> row : Files.ParseDelimitedFile(filePath))
-                if (row.get(0).equals(key))
-                    return row.get(1);
+        if (!Files.FileExists(filePath))
+            return null;
+
+        DelimitedFileReader reader = new DelimitedFileReader(filePath);
+
+        try
+        {
+            while (reader.NextRow())
+                if (reader.FieldEquals(0, key))
+                    return reader.GetField(1);
+        }
+        finally
+        {
+            reader.Close();
+        }
 
         return null;
     }
@@ -174,8 +185,17 @@ public class Utilities
         {
             String description = ParseDescriptionFromResultsFilePath(file.getAbsolutePath());
 
-            for (ArrayList<String> row : Files.ParseDelimitedFile(file.getAbsolutePath()))
-                allResults.add(new ScalarValue(description, row.get(0), row.get(1)));
+            DelimitedFileReader reader = new DelimitedFileReader(file.getAbsolutePath());
+
+            try
+            {
+                while (reader.NextRow())
+                    allResults.add(new ScalarValue(description, reader.GetField(0), reader.GetField(1)));
+            }
+            finally
+            {
+                reader.Close();
+            }
         }
 
         return allResults;
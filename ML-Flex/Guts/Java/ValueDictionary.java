@@ -0,0 +1,87 @@
+// Copyright 2011 Stephen Piccolo
+// 
+// This file is part of ML-Flex.
+// 
+// ML-Flex is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// any later version.
+// 
+// ML-Flex is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+package mlflex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** This class maps String values to integer codes (and back again). It is used to store each distinct String value only once when many data values share the same text. Codes are assigned in the order in which values are first added and never change.
+ * @author Stephen Piccolo
+ */
+public class ValueDictionary
+{
+    private ArrayList<String> _values = new ArrayList<String>();
+    private HashMap<String, Integer> _codes = new HashMap<String, Integer>();
+
+    /** Gets the code for the specified value. If the value is not yet in the dictionary, it is added.
+     *
+     * @param value Query value
+     * @return Code for the value
+     */
+    public synchronized int GetCode(String value)
+    {
+        Integer code = _codes.get(value);
+
+        if (code == null)
+        {
+            code = _values.size();
+            _values.add(value);
+            _codes.put(value, code);
+        }
+
+        return code;
+    }
+
+    /** Indicates whether the specified value is in the dictionary.
+     *
+     * @param value Query value
+     * @return Whether the value is in the dictionary
+     */
+    public synchronized boolean Contains(String value)
+    {
+        return _codes.containsKey(value);
+    }
+
+    /** Gets the value that corresponds to the specified code.
+     *
+     * @param code Query code
+     * @return Value for the code
+     */
+    public synchronized String GetValue(int code)
+    {
+        return _values.get(code);
+    }
+
+    /** Gets all values in the dictionary, in the order of their codes.
+     *
+     * @return List of values
+     */
+    public synchronized ArrayList<String> GetValues()
+    {
+        return new ArrayList<String>(_values);
+    }
+
+    /** Indicates the number of distinct values in the dictionary.
+     *
+     * @return Number of distinct values
+     */
+    public synchronized int Size()
+    {
+        return _values.size();
+    }
+}
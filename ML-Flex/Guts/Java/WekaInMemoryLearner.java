@@ -22,8 +22,6 @@ import weka.attributeSelection.ASSearch;
 import weka.attributeSelection.AttributeSelection;
 import weka.attributeSelection.Ranker;
 import weka.classifiers.Classifier;
-import weka.classifiers.evaluation.NominalPrediction;
-import weka.classifiers.evaluation.ThresholdCurve;
 import weka.core.Attribute;
 import weka.core.FastVector;
 import weka.core.Instance;
@@ -151,9 +149,19 @@ public class WekaInMemoryLearner extends AbstractMachineLearner
         for (int i=0; i<attVector.size()-1; i++)
         {
             Attribute attribute = (Attribute)attVector.elementAt(i);
-            String dataPointValue = dataInstance.GetDataPointValue(attribute.name());
 
-            SetAttributeValue(wekaInstance, attribute, dataPointValue);
+            if (attribute.isNumeric())
+            {
+                // Numeric values can be read directly from the underlying matrix without parsing
+                double numericValue = dataInstance.GetDataPointNumericValue(attribute.name());
+
+                if (Double.isNaN(numericValue))
+                    wekaInstance.setMissing(attribute);
+                else
+                    wekaInstance.setValue(attribute, numericValue);
+            }
+            else
+                SetAttributeValue(wekaInstance, attribute, dataInstance.GetDataPointValue(attribute.name()));
         }
 
         if (dependentVariableInstances != null)
@@ -196,8 +204,9 @@ public class WekaInMemoryLearner extends AbstractMachineLearner
 
     private static FastVector GetAttributeOptions(ArrayList<String> values)
     {
+        // The options are sorted so they appear in the same order as in the ARFF files that are created for the WekaLearner
         FastVector options = new FastVector();
-            for (String value : new HashSet<String>(values))
+            for (String value : Lists.SortStringList(new ArrayList<String>(new HashSet<String>(values))))
                 if (!value.equals(Settings.MISSING_VALUE_STRING))
                     options.addElement(value);
 
@@ -219,7 +228,15 @@ public class WekaInMemoryLearner extends AbstractMachineLearner
         return ASSearch.forName(algorithmParameters.get(2), algorithmParameters.get(3).split(" "));
     }
 
-    private FastVector GetAttributeVector(DataInstanceCollection dependentVariableInstances, ArrayList<String> dataPointNames, DataInstanceCollection ... collections) throws Exception
+    /** Creates a vector of Weka attributes that describes the specified data points. Each attribute is numeric or nominal, depending on the values observed across the collections.
+     *
+     * @param dependentVariableInstances Dependent variable data instances (may be null, in which case no class attribute is added)
+     * @param dataPointNames Names of the data points, in the order they should appear
+     * @param collections ML-Flex collections of instances from which data values should be examined
+     * @return Vector of Weka attributes
+     * @throws Exception
+     */
+    public static FastVector GetAttributeVector(DataInstanceCollection dependentVariableInstances, ArrayList<String> dataPointNames, DataInstanceCollection ... collections) throws Exception
     {
         FastVector attVector = new FastVector();
 
@@ -257,51 +274,4 @@ public class WekaInMemoryLearner extends AbstractMachineLearner
         saver.writeBatch();
 
     }
-
-    /** This method calculates the area under the curve for a set of predictions and is designed to support classification of more than two classes. This code was derived from Weka's source code.
-     *
-     * @param predictions Predictions that have been made
-     * @return Area under the curve, weighted by the proportion of instances for each class
-     * @throws Exception
-     */
-    //
-    public static double CalculateWeightedAreaUnderRoc(Predictions predictions) throws Exception
-    {
-        ArrayList<String> uniqueActualClasses = predictions.GetUniqueActualClasses();
-
-        if (uniqueActualClasses.size() == 0)
-            return Double.NaN;
-
-        if (predictions.Size() == 1)
-        {
-            if (predictions.Get(0).WasCorrect())
-                return 1.0;
-
-            return 0.5;
-        }
-
-        if (uniqueActualClasses.size() == 1)
-            return 0.5;
-
-        ArrayList<String> dependentVariableClasses = Utilities.ProcessorVault.DependentVariableDataProcessor.GetUniqueDependentVariableValues();
-
-        FastVector predictionVector = new FastVector();
-        for (Prediction prediction : predictions)
-            predictionVector.addElement(new NominalPrediction(dependentVariableClasses.indexOf(prediction.DependentVariableValue), Lists.ConvertToDoubleArray(prediction.ClassProbabilities)));
-
-        double aucTotal = 0;
-
-        for(int i = 0; i < dependentVariableClasses.size(); i++)
-        {
-            String dependentVariableClass = dependentVariableClasses.get(i);
-            
-            Instances result = new ThresholdCurve().getCurve(predictionVector, i);
-            double auc = ThresholdCurve.getROCArea(result);
-
-            if (!Instance.isMissingValue(auc))
-                aucTotal += (auc * new PredictionResults(predictions).GetNumActualsWithDependentVariableClass(dependentVariableClass));
-        }
-
-        return aucTotal / predictions.Size();
-    }
 }
\ No newline at end of file
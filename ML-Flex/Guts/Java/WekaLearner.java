@@ -17,16 +17,43 @@
 
 package mlflex;
 
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.ASSearch;
+import weka.attributeSelection.AttributeSelection;
+import weka.classifiers.Classifier;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 
-/** This class interfaces directly with the application programming interface of the Weka machine-learning software package. The Weka JAR file is packaged with ML-Flex, so this learner should work out of the box.
+/** This class interfaces directly with the application programming interface of the Weka machine-learning software package. The Weka JAR file is packaged with ML-Flex, so this learner should work out of the box. By default, Weka is invoked in a separate Java process for each analysis. If WEKA_IN_PROCESS is set to true in the experiment configuration, the same classifiers and options are instead run within the ML-Flex process, against Weka instances that are built in memory. This avoids the cost of starting a process and writing/parsing ARFF files. If WEKA_VERIFY_IN_PROCESS is also set to true, both approaches are used and any differences between them are logged (this is slower, so it is intended only for checking that the approaches produce the same results).
  * @author Stephen Piccolo
  */
-public class WekaLearner extends AbstractMachineLearner
+public class WekaLearner extends AbstractMachineLearner implements ITest
 {
     @Override
     protected ArrayList<String> SelectOrRankFeatures(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        if (!RunInProcess())
+            return SelectOrRankFeaturesInSeparateProcess(algorithmParameters, trainData, dependentVariableInstances);
+
+        ArrayList<String> features = SelectOrRankFeaturesInProcess(algorithmParameters, trainData, dependentVariableInstances);
+
+        if (VerifyInProcess())
+        {
+            ArrayList<String> separateProcessFeatures = SelectOrRankFeaturesInSeparateProcess(algorithmParameters, trainData, dependentVariableInstances);
+
+            if (!features.equals(separateProcessFeatures))
+                Utilities.Log.Info("Weka feature selection differed between in-process and separate-process execution for " + algorithmParameters.get(0) + ". In process: " + Lists.Join(features, ",") + ". Separate process: " + Lists.Join(separateProcessFeatures, ","));
+        }
+
+        return features;
+    }
+
+    private ArrayList<String> SelectOrRankFeaturesInSeparateProcess(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection dependentVariableInstances) throws Exception
     {
         AnalysisFileCreator fileCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, Utilities.GetUniqueID(), trainData, null, dependentVariableInstances).CreateArffFile();
         String arffFilePath = fileCreator.GetArffFilePath();
@@ -63,6 +90,19 @@ public class WekaLearner extends AbstractMachineLearner
 
     @Override
     protected ModelPredictions TrainTest(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        if (!RunInProcess())
+            return TrainTestInSeparateProcess(algorithmParameters, trainData, testData, dependentVariableInstances);
+
+        ModelPredictions modelPredictions = TrainTestInProcess(algorithmParameters, trainData, testData, dependentVariableInstances);
+
+        if (VerifyInProcess())
+            ComparePredictions(algorithmParameters.get(0), modelPredictions.Predictions, TrainTestInSeparateProcess(algorithmParameters, trainData, testData, dependentVariableInstances).Predictions);
+
+        return modelPredictions;
+    }
+
+    private ModelPredictions TrainTestInSeparateProcess(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
     {
         AnalysisFileCreator trainingFileCreator = new AnalysisFileCreator(Settings.TEMP_DATA_DIR, Utilities.GetUniqueID(), trainData, testData, dependentVariableInstances).CreateArffFile();
         String trainingArffFilePath = trainingFileCreator.GetArffFilePath();
@@ -123,4 +163,155 @@ public class WekaLearner extends AbstractMachineLearner
 
         return new ModelPredictions("", predictions);
     }
+
+    private ArrayList<String> SelectOrRankFeaturesInProcess(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        ArrayList<String> dataPointNames = Lists.SortStringList(trainData.GetDataPointNames());
+        FastVector attVector = WekaInMemoryLearner.GetAttributeVector(dependentVariableInstances, dataPointNames, trainData);
+        Instances instances = WekaInMemoryLearner.GetInstances(dependentVariableInstances, attVector, trainData);
+
+        // The evaluator options are followed by "-s" and the search method (with its options), just as on the Weka command line
+        int searchIndex = algorithmParameters.indexOf("-s");
+        ArrayList<String> evaluatorOptions = new ArrayList<String>(algorithmParameters.subList(1, searchIndex == -1 ? algorithmParameters.size() : searchIndex));
+        String[] searchOptions = Utils.splitOptions(searchIndex == -1 ? "weka.attributeSelection.BestFirst" : algorithmParameters.get(searchIndex + 1));
+        String searchClassName = searchOptions[0];
+        searchOptions[0] = "";
+
+        AttributeSelection attsel = new AttributeSelection();
+        attsel.setEvaluator(ASEvaluation.forName(algorithmParameters.get(0), evaluatorOptions.toArray(new String[0])));
+        attsel.setSearch(ASSearch.forName(searchClassName, searchOptions));
+        attsel.SelectAttributes(instances);
+
+        ArrayList<String> selectedAttributes = new ArrayList<String>();
+        for (int i : attsel.selectedAttributes())
+            if (i != instances.classIndex())
+                selectedAttributes.add(instances.attribute(i).name());
+
+        if (selectedAttributes.size() == 0)
+            throw new Exception("Weka found no selected attributes.");
+
+        return selectedAttributes;
+    }
+
+    private ModelPredictions TrainTestInProcess(ArrayList<String> algorithmParameters, DataInstanceCollection trainData, DataInstanceCollection testData, DataInstanceCollection dependentVariableInstances) throws Exception
+    {
+        ArrayList<String> dataPointNames = Lists.SortStringList(trainData.GetDataPointNames());
+        FastVector attVector = WekaInMemoryLearner.GetAttributeVector(dependentVariableInstances, dataPointNames, trainData, testData);
+
+        Instances wekaTrainingInstances = WekaInMemoryLearner.GetInstances(dependentVariableInstances, attVector, trainData);
+        Instances wekaTestInstances = WekaInMemoryLearner.GetInstances(dependentVariableInstances, attVector, testData);
+
+        ArrayList<String> classifierOptions = new ArrayList<String>(algorithmParameters.subList(1, algorithmParameters.size()));
+        Classifier classifier = Classifier.forName(algorithmParameters.get(0), classifierOptions.toArray(new String[0]));
+        classifier.buildClassifier(wekaTrainingInstances);
+
+        Predictions predictions = new Predictions();
+
+        for (int i=0; i<wekaTestInstances.numInstances(); i++)
+        {
+            Instance wekaTestInstance = wekaTestInstances.instance(i);
+
+            String predictedClass = wekaTestInstance.classAttribute().value((int)classifier.classifyInstance(wekaTestInstance));
+            ArrayList<Double> probabilities = Lists.CreateDoubleList(classifier.distributionForInstance(wekaTestInstance));
+
+            String testInstanceID = testData.Get(i).GetID();
+            predictions.Add(new Prediction(testInstanceID, dependentVariableInstances.Get(testInstanceID).GetDataPointValue(0), predictedClass, probabilities));
+        }
+
+        return new ModelPredictions("", predictions);
+    }
+
+    private boolean ComparePredictions(String classifierName, Predictions inProcessPredictions, Predictions separateProcessPredictions) throws Exception
+    {
+        boolean allMatch = inProcessPredictions.Size() == separateProcessPredictions.Size();
+
+        for (Prediction inProcessPrediction : inProcessPredictions)
+        {
+            Prediction separateProcessPrediction = separateProcessPredictions.GetSinglePrediction(inProcessPrediction.InstanceID);
+            boolean isMatch = inProcessPrediction.Prediction.equals(separateProcessPrediction.Prediction);
+
+            // Weka rounds the probabilities that it outputs on the command line to three decimal places
+            for (int i=0; i<inProcessPrediction.ClassProbabilities.size(); i++)
+                isMatch = isMatch && Math.abs(inProcessPrediction.ClassProbabilities.get(i) - separateProcessPrediction.ClassProbabilities.get(i)) <= 0.0005;
+
+            if (!isMatch)
+                Utilities.Log.Info("Weka predictions differed between in-process and separate-process execution for " + classifierName + ". In process: " + inProcessPrediction + ". Separate process: " + separateProcessPrediction);
+
+            allMatch = allMatch && isMatch;
+        }
+
+        return allMatch;
+    }
+
+    /** Trains a classifier on part of a small ARFF file and tests it on the rest, both within the ML-Flex process and in a separate Java process, and checks that the predicted classes and class probabilities are the same.
+     *
+     * @throws Exception
+     */
+    public void Test() throws Exception
+    {
+        ProcessorVault processorVault = Utilities.ProcessorVault;
+        String tempDataDir = Settings.TEMP_DATA_DIR;
+
+        try
+        {
+            Settings.TEMP_DATA_DIR = Files.CreateDirectoryIfNotExists(Settings.GUTS_DIR + "TempData/WekaLearnerTest/");
+
+            StringBuilder arff = new StringBuilder("@relation test\n\n@attribute x1 numeric\n@attribute x2 numeric\n@attribute class {A,B}\n\n@data\n");
+            double[][] values = {{1.2, 3.1}, {0.8, 2.7}, {1.9, 3.5}, {1.1, 1.4}, {2.6, 3.0}, {0.4, 2.2}, {3.1, 0.9}, {2.8, 1.6}, {3.9, 2.1}, {2.2, 0.4}, {3.4, 2.9}, {2.0, 0.7}, {1.5, 2.4}, {0.9, 3.3}, {2.9, 1.2}, {3.6, 0.5}, {2.4, 2.6}, {1.7, 1.1}};
+            for (int i = 0; i < values.length; i++)
+                arff.append(values[i][0] + "," + values[i][1] + "," + (i % 6 < 3 ? "A" : "B") + "\n");
+
+            String arffFilePath = Settings.TEMP_DATA_DIR + "test.arff";
+            Files.WriteTextToFile(arffFilePath, arff.toString());
+
+            ArffFileReader reader = new ArffFileReader(arffFilePath);
+            ArrayList<String> instanceIDs = new ArrayList<String>();
+            DataInstanceCollection instances = new DataInstanceCollection(reader.ReadData(false, 0, instanceIDs), instanceIDs);
+
+            instanceIDs = new ArrayList<String>();
+            DataMatrix dependentVariableMatrix = new ArffFileReader(arffFilePath).ReadData(true, 0, instanceIDs);
+            Files.DeleteFile(arffFilePath);
+
+            Utilities.ProcessorVault = new ProcessorVault();
+            Utilities.ProcessorVault.DependentVariableDataProcessor = new ArffDependentVariableDataProcessor("Test", "test.arff")
+            {
+                @Override
+                protected ArrayList<String> GetUniqueDependentVariableValues()
+                {
+                    return Lists.CreateStringList("A", "B");
+                }
+            };
+
+            dependentVariableMatrix.RenameColumn(reader.GetClassAttributeName(), Utilities.ProcessorVault.DependentVariableDataProcessor.GetDependentVariableDataPointName());
+            DataInstanceCollection dependentVariableInstances = new DataInstanceCollection(dependentVariableMatrix, instanceIDs);
+
+            DataInstanceCollection trainData = instances.CreateView(new ArrayList<String>(instanceIDs.subList(0, 12)), instances.GetDataPointNames());
+            DataInstanceCollection testData = instances.CreateView(new ArrayList<String>(instanceIDs.subList(12, instanceIDs.size())), instances.GetDataPointNames());
+
+            for (String classifierName : Lists.CreateStringList("weka.classifiers.bayes.NaiveBayes", "weka.classifiers.functions.Logistic"))
+            {
+                ArrayList<String> algorithmParameters = Lists.CreateStringList(classifierName);
+                Predictions inProcessPredictions = TrainTestInProcess(algorithmParameters, trainData, testData, dependentVariableInstances).Predictions;
+                Predictions separateProcessPredictions = TrainTestInSeparateProcess(algorithmParameters, trainData, testData, dependentVariableInstances).Predictions;
+
+                if (!ComparePredictions(classifierName, inProcessPredictions, separateProcessPredictions))
+                    throw new Exception("Weka predictions differed between in-process and separate-process execution for " + classifierName + ". In process: " + inProcessPredictions + ". Separate process: " + separateProcessPredictions);
+            }
+        }
+        finally
+        {
+            Utilities.ProcessorVault = processorVault;
+            Settings.TEMP_DATA_DIR = tempDataDir;
+        }
+    }
+
+    private static boolean RunInProcess() throws Exception
+    {
+        return Utilities.Config.GetBooleanValue("WEKA_IN_PROCESS", false);
+    }
+
+    private static boolean VerifyInProcess() throws Exception
+    {
+        return Utilities.Config.GetBooleanValue("WEKA_VERIFY_IN_PROCESS", false);
+    }
 }
\ No newline at end of file
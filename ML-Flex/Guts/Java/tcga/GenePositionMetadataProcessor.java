@@ -18,7 +18,7 @@
 package mlflex.tcga;
 
 import mlflex.AbstractMetadataProcessor;
-import mlflex.Files;
+import mlflex.DelimitedFileReader;
 import mlflex.Utilities;
 
 import java.util.ArrayList;
@@ -34,33 +34,49 @@ public class GenePositionMetadataProcessor extends AbstractMetadataProcessor
     {
         Utilities.Log.Info("Parsing known gene positions");
         HashMap<String, String> positionMap = new HashMap<String, String>();
-        for (ArrayList<String> row : Files.ParseDelimitedFile(GetSourceDataDir() + "knownGene.txt"))
+        DelimitedFileReader reader = new DelimitedFileReader(GetSourceDataDir() + "knownGene.txt");
+
+        try
         {
-            String ucscID = row.get(0);
-            String chromosome = row.get(1).replace("chr", "");
-            String startPosition = row.get(3);
-            String endPosition = row.get(4);
+            while (reader.NextRow())
+            {
+                String ucscID = reader.GetField(0);
+                String chromosome = reader.GetField(1).replace("chr", "");
+                String startPosition = reader.GetField(3);
+                String endPosition = reader.GetField(4);
 
-            positionMap.put(ucscID, FormatPosition(chromosome, startPosition, endPosition));
+                positionMap.put(ucscID, FormatPosition(chromosome, startPosition, endPosition));
+            }
+        }
+        finally
+        {
+            reader.Close();
         }
 
         Utilities.Log.Info("Parsing gene names");
-        ArrayList<ArrayList<String>> hgnc = Files.ParseDelimitedFile(GetSourceDataDir() + "hgnc.txt");
-        hgnc.remove(0);
-
         HashMap<String, String> genePositionList = new HashMap<String, String>();
 
-        for (ArrayList<String> row : hgnc)
+        // The first row is a header
+        reader = new DelimitedFileReader(GetSourceDataDir() + "hgnc.txt");
+
+        try
         {
-            if (row.size() < 3)
-                continue;
+            reader.NextRow();
+
+            while (reader.NextRow())
+            {
+                if (reader.GetNumFields() < 3)
+                    continue;
 
-            String geneName = row.get(0);
-            String ucscID = row.get(2);
-            String position = positionMap.get(ucscID);
+                String position = positionMap.get(reader.GetField(2));
 
-            if (position != null)
-                genePositionList.put(geneName, position);
+                if (position != null)
+                    genePositionList.put(reader.GetField(0), position);
+            }
+        }
+        finally
+        {
+            reader.Close();
         }
 
         return genePositionList;
@@ -61,26 +61,41 @@ public class TcgaClinicalTabDataParser
     {
         for (File file : Files.GetFilesInDirectoryRecursively(_processor.GetRawDataDir(), SOURCE_FILE_PATTERN))
         {
-            ArrayList<ArrayList<String>> rows = Files.ParseDelimitedFile(file.getAbsolutePath(), "\t");
-            ArrayList<String> header = Lists.TrimStrings(rows.remove(0));
+            DelimitedFileReader reader = new DelimitedFileReader(file.getAbsolutePath(), "\t", "#", 0);
 
-            for (ArrayList<String> row : rows)
+            try
             {
-                String patientID = FormatPatientID(row.get(0));
+                if (!reader.NextRow())
+                    throw new Exception("No header row could be found in " + file.getAbsolutePath() + ".");
 
-                for (int i = 1; i < header.size(); i++)
+                // The metadata for each column is found once, rather than for each row
+                ArrayList<String> header = Lists.TrimStrings(reader.GetFields());
+                ArrayList<DataValueMeta> headerMeta = new ArrayList<DataValueMeta>();
+                for (String columnName : header)
+                    headerMeta.add(FindDataValueMeta(columnName));
+
+                while (reader.NextRow())
                 {
-                    DataValueMeta meta = FindDataValueMeta(header.get(i));
+                    String patientID = FormatPatientID(reader.GetField(0));
 
-                    if (meta != null)
+                    for (int i = 1; i < header.size(); i++)
                     {
-                        String value = row.get(i);
+                        DataValueMeta meta = headerMeta.get(i);
+
+                        if (meta != null)
+                        {
+                            String value = reader.GetField(i);
 
-                        if (!meta.IsNullValue(value))
-                            _processor.SaveRawDataPoint(meta.Name, patientID, value);
+                            if (!meta.IsNullValue(value))
+                                _processor.SaveRawDataPoint(meta.Name, patientID, value);
+                        }
                     }
                 }
             }
+            finally
+            {
+                reader.Close();
+            }
         }
     }
 
@@ -19,7 +19,7 @@ package mlflex.ucimachinelearning;
 
 import mlflex.DataInstanceCollection;
 import mlflex.DataValues;
-import mlflex.Files;
+import mlflex.DelimitedFileReader;
 import mlflex.Lists;
 
 import java.util.ArrayList;
@@ -58,17 +58,25 @@ public class UciDelimitedFileParser
     {
         DataInstanceCollection instances = new DataInstanceCollection();
 
-        ArrayList<ArrayList<String>> data = Files.ParseDelimitedFile(_filePath);
-        for (int i=0; i<data.size(); i++)
+        DelimitedFileReader reader = new DelimitedFileReader(_filePath);
+
+        try
         {
-            ArrayList<String> row = GetRow(data, i);
-            DataValues instance = new DataValues(GetID(i, row));
+            for (int i=0; reader.NextRow(); i++)
+            {
+                ArrayList<String> row = GetRow(reader);
+                DataValues instance = new DataValues(GetID(i, row));
 
-            for (int j=0; j<row.size(); j++)
-                if (j != _idIndex && j != _classIndex)
-                    instance.AddDataPoint("DataPoint" + j, row.get(j));
+                for (int j=0; j<row.size(); j++)
+                    if (j != _idIndex && j != _classIndex)
+                        instance.AddDataPoint("DataPoint" + j, row.get(j));
 
-            instances.Add(instance);
+                instances.Add(instance);
+            }
+        }
+        finally
+        {
+            reader.Close();
         }
 
         return instances;
@@ -84,23 +92,31 @@ public class UciDelimitedFileParser
     {
         DataInstanceCollection instances = new DataInstanceCollection();
 
-        ArrayList<ArrayList<String>> data = Files.ParseDelimitedFile(_filePath);
-        for (int i=0; i<data.size(); i++)
-        {
-            ArrayList<String> row = GetRow(data, i);
-            DataValues instance = new DataValues(GetID(i, row));
+        DelimitedFileReader reader = new DelimitedFileReader(_filePath);
 
-            String dependentVariableClass = "Class_" + row.get(_classIndex);
-            instance.AddDataPoint(dependentVariableDataPointName, dependentVariableClass);
-            instances.Add(instance);
+        try
+        {
+            for (int i=0; reader.NextRow(); i++)
+            {
+                ArrayList<String> row = GetRow(reader);
+                DataValues instance = new DataValues(GetID(i, row));
+
+                String dependentVariableClass = "Class_" + row.get(_classIndex);
+                instance.AddDataPoint(dependentVariableDataPointName, dependentVariableClass);
+                instances.Add(instance);
+            }
+        }
+        finally
+        {
+            reader.Close();
         }
 
         return instances;
     }
 
-    private ArrayList<String> GetRow(ArrayList<ArrayList<String>> data, int i)
+    private ArrayList<String> GetRow(DelimitedFileReader reader)
     {
-        return Lists.CreateStringList(data.get(i).get(0).split(_delimiter));
+        return Lists.CreateStringList(reader.GetField(0).split(_delimiter));
     }
 
     private String GetID(int i, ArrayList<String> rowValues)
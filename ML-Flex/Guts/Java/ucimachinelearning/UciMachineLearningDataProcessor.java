@@ -71,13 +71,13 @@ public class UciMachineLearningDataProcessor extends AbstractDataProcessor
     @Override
     protected double GetProportionMissingPerInstanceOK()
     {
-        return 0.99;
+        return 1.00;
     }
 
     @Override
     protected double GetProportionMissingPerDataPointOK()
     {
-        return 0.99;
+        return 1.00;
     }
 
     @Override
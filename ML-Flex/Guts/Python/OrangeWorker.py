@@ -0,0 +1,96 @@
+# Copyright 2011 Stephen Piccolo
+# 
+# This file is part of ML-Flex.
+# 
+# ML-Flex is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation, either version 3 of the License, or
+# any later version.
+# 
+# ML-Flex is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+# 
+# You should have received a copy of the GNU General Public License
+# along with ML-Flex. If not, see <http://www.gnu.org/licenses/>.
+
+# This script is a long-running worker that is used by mlflex.OrangeLearner, so that Python is started and
+# the Orange modules are imported only once per worker (rather than once per request).
+#
+# Requests are read from standard input until it is closed. Each request has a header line (tab-delimited):
+#   trainTest <learner expression> <number of training-data lines> <number of test-data lines>
+#   rankFeatures <measure expression> <number of data lines>
+# followed by the data in Orange's tab-delimited format. For trainTest, the results are the class values
+# (first line), then the predicted class and the probability of each class for each test instance. For
+# rankFeatures, the results are the feature names, in ranked order. The results are written to standard
+# output, preceded by a line that indicates how many lines of results follow.
+
+import os
+import sys
+import tempfile
+import traceback
+
+import orange, orngTree, orngEnsemble, orngSVM, orngFSS
+
+def readLines(numLines):
+    return [sys.stdin.readline().rstrip("\n") for i in range(numLines)]
+
+def readData(lines):
+    # The data are stored temporarily on the local disk so that Orange parses its tab-delimited format (including the attribute types) itself
+    fileDescriptor, filePath = tempfile.mkstemp(suffix=".tab")
+    dataFile = os.fdopen(fileDescriptor, "w")
+    dataFile.write("\n".join(lines) + "\n")
+    dataFile.close()
+
+    try:
+        return orange.ExampleTable(filePath)
+    finally:
+        os.remove(filePath)
+
+def trainTest(learnerExpression, trainData, testData):
+    learner = eval(learnerExpression)
+    classifier = learner(trainData)
+    classValues = [str(value) for value in trainData.domain.classVar.values]
+
+    results = ["\t".join(classValues)]
+
+    for example in testData:
+        prediction, probabilities = classifier(orange.Example(trainData.domain, example), orange.GetBoth)
+        results.append("\t".join([str(prediction)] + [str(probabilities[i]) for i in range(len(classValues))]))
+
+    return results
+
+def rankFeatures(measureExpression, examples):
+    return [str(measure[0]) for measure in eval(measureExpression)]
+
+def runWorker():
+    sys.stdout.write("READY\n")
+    sys.stdout.flush()
+
+    while True:
+        header = sys.stdin.readline()
+        if not header:
+            break
+
+        headerItems = header.rstrip("\n").split("\t")
+
+        # All data lines are read before the request is processed, so the next request starts at the right place
+        dataBlocks = [readLines(int(numLines)) for numLines in headerItems[2:]]
+
+        try:
+            if headerItems[0] == "trainTest":
+                results = trainTest(headerItems[1], readData(dataBlocks[0]), readData(dataBlocks[1]))
+            elif headerItems[0] == "rankFeatures":
+                results = rankFeatures(headerItems[1], readData(dataBlocks[0]))
+            else:
+                raise Exception("Unsupported request: " + headerItems[0])
+
+            response = ["RESULT\t%i" % len(results)] + results
+        except Exception:
+            response = ["ERROR\t" + " ".join(traceback.format_exc().split())]
+
+        sys.stdout.write("\n".join(response) + "\n")
+        sys.stdout.flush()
+
+runWorker()